@@ -8,7 +8,7 @@ metadata:
     app: {{ .appName }}
 spec:
   replicas: {{ .replicasCount }}
-  progressDeadlineSeconds: 120
+  progressDeadlineSeconds: 300
   selector:
     matchLabels:
       app: {{ .appName }}
@@ -34,6 +34,29 @@ spec:
 {{- end }}
         ports:
         - containerPort: {{ .container.port }}
+{{- if .container.probes }}
+        # под принимает трафик только после прогрева (readiness), startupProbe дает время на запуск
+        startupProbe:
+          httpGet:
+            path: {{ .container.probes.livenessPath }}
+            port: {{ .container.port }}
+          periodSeconds: 5
+          failureThreshold: {{ .container.probes.startupFailureThreshold }}
+        livenessProbe:
+          httpGet:
+            path: {{ .container.probes.livenessPath }}
+            port: {{ .container.port }}
+          periodSeconds: 10
+        readinessProbe:
+          httpGet:
+            path: {{ .container.probes.readinessPath }}
+            port: {{ .container.port }}
+          periodSeconds: 5
+{{- end }}
+{{- if .container.resources }}
+        resources:
+{{ toYaml .container.resources | indent 12 }}
+{{- else }}
         resources:
             requests:
                 memory: 256M
@@ -41,6 +64,7 @@ spec:
             limits:
                 memory: 512M
                 cpu: 200m
+{{- end }}
 {{- if .container.env }}
         env:
 {{ toYaml .container.env | indent 8 }}
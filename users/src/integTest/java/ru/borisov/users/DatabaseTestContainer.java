@@ -29,7 +29,7 @@ public class DatabaseTestContainer {
     private static int containerPort = 5432;
     private static int localPort = 5434;
 
-    private static final PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer<>("postgres:15-alpine")
+    protected static final PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer<>("postgres:15-alpine")
             .withDatabaseName(DATABASE_NAME)
             .withUsername("postgres")
             .withPassword("password")
@@ -0,0 +1,119 @@
+package ru.borisov.users.cache;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.borisov.users.DatabaseTestContainer;
+import ru.borisov.users.UsersApplication;
+import ru.borisov.users.controller.request.UpdateUserInfoRequest;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.model.User;
+import ru.borisov.users.service.FollowService;
+import ru.borisov.users.service.UserService;
+
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheInvalidationBusTest extends DatabaseTestContainer {
+
+    private static final long TIMEOUT_MS = 10_000;
+
+    private static ConfigurableApplicationContext replica;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FollowService followService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void startReplica() {
+        postgreSQLContainer.start();
+        // вторая реплика сервиса в той же JVM с собственным кэшем второго уровня
+        replica = new SpringApplicationBuilder(UsersApplication.class)
+                .properties(
+                        "server.port=0",
+                        "users.warm-up.enabled=false",
+                        "spring.datasource.url=" + postgreSQLContainer.getJdbcUrl(),
+                        "spring.datasource.username=" + postgreSQLContainer.getUsername(),
+                        "spring.datasource.password=" + postgreSQLContainer.getPassword(),
+                        "spring.jpa.properties.hibernate.javax.cache.uri=classpath:ehcache-replica.xml")
+                .run();
+    }
+
+    @AfterAll
+    static void stopReplica() {
+        if (replica != null) {
+            replica.close();
+        }
+    }
+
+    @Test
+    void updateUserInfo_shouldEvictProfileOnOtherReplica() throws Exception {
+
+        // given
+        User user = saveUser("bus");
+        UserService replicaService = replica.getBean(UserService.class);
+        userService.getUserById(user.getId());
+        replicaService.getUserById(user.getId());
+
+        // изменение в обход приложения не видно реплике, пока запись лежит в кэше
+        jdbcTemplate.update("UPDATE users_scheme._user SET bio = 'direct' WHERE id = ?", user.getId());
+        assertThat(replicaService.getUserById(user.getId()).value().bio()).isNull();
+
+        // when
+        userService.updateUserInfo(UpdateUserInfoRequest.builder().bio("changed").build(), user.getId());
+
+        // then
+        assertThat(awaitProfile(replicaService, user.getId(), profile -> "changed".equals(profile.bio())))
+                .isTrue();
+    }
+
+    @Test
+    void follow_shouldEvictCountersOnOtherReplica() throws Exception {
+
+        // given
+        User from = saveUser("bus-from");
+        User to = saveUser("bus-to");
+        UserService replicaService = replica.getBean(UserService.class);
+        replicaService.getUserById(to.getId());
+
+        // when
+        followService.follow(from.getId(), to.getId());
+
+        // then
+        assertThat(awaitProfile(replicaService, to.getId(), profile -> profile.followersCount() == 1))
+                .isTrue();
+    }
+
+    private User saveUser(String prefix) {
+        String username = prefix + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return userRepository.save(User.builder()
+                .email(username + "@mail.ru")
+                .username(username)
+                .passwordHash("password")
+                .build());
+    }
+
+    private boolean awaitProfile(UserService service, UUID userId, Predicate<UserProfile> condition)
+            throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.test(service.getUserById(userId).value())) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,99 @@
+package ru.borisov.users.controller.api;
+
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.ExceptionControllerAdvice;
+import ru.borisov.users.exception.error.Code;
+import ru.borisov.users.exception.error.Error;
+import ru.borisov.users.exception.error.ErrorResponse;
+import ru.borisov.users.model.SkillType;
+import ru.borisov.users.service.SkillService;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(value = SkillController.class)
+@AutoConfigureMockMvc(addFilters = false)
+class SkillControllerTest {
+
+    private static final String SKILLS_URL = "/api/skills";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private SkillService skillService;
+
+    @MockBean
+    private ExceptionControllerAdvice exceptionControllerAdvice;
+
+    @Test
+    void findSkills_shouldReturn200AndMatches_whenPrefixGiven() throws Exception {
+        // given
+        SkillView java = new SkillView(UUID.randomUUID(), "java", SkillType.HARD_SKILL);
+        SkillView javascript = new SkillView(UUID.randomUUID(), "javascript", SkillType.HARD_SKILL);
+        when(skillService.findSkillsByPrefix("jav", 5)).thenReturn(List.of(java, javascript));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(SKILLS_URL)
+                .param("prefix", "jav")
+                .param("limit", "5"));
+
+        // then
+        resultActions.andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.length()", Matchers.equalTo(2)))
+                .andExpect(jsonPath("$.data[0].title", Matchers.equalTo("java")))
+                .andExpect(jsonPath("$.data[1].id", Matchers.equalTo(javascript.id().toString())));
+    }
+
+    @Test
+    void findSkills_shouldUseDefaults_whenNoParams() throws Exception {
+        // given
+        when(skillService.findSkillsByPrefix("", 20)).thenReturn(List.of());
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.get(SKILLS_URL));
+
+        // then
+        resultActions.andExpect(status().isOk())
+                .andExpect(jsonPath("$.data", Matchers.empty()));
+    }
+
+    @Test
+    void findSkills_shouldReturn400_whenLimitOutOfRange() throws Exception {
+        // given
+        when(skillService.findSkillsByPrefix("jav", 1000)).thenThrow(CommonException.class);
+        when(exceptionControllerAdvice.handleCommonException(new CommonException())).thenReturn(
+                new ResponseEntity<>(ErrorResponse.builder()
+                        .error(Error.builder()
+                                .code(Code.BAD_REQUEST)
+                                .build())
+                        .build(), HttpStatus.BAD_REQUEST));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(SKILLS_URL)
+                .param("prefix", "jav")
+                .param("limit", "1000"));
+
+        // then
+        resultActions.andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$['error'].code", Matchers.equalTo(Code.BAD_REQUEST.toString())));
+    }
+}
@@ -13,27 +13,46 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import ru.borisov.users.cache.Cached;
+import ru.borisov.users.cache.ProfileJsonCache;
 import ru.borisov.users.controller.request.AddSkillRequest;
 import ru.borisov.users.controller.request.RegisterUserRequest;
+import ru.borisov.users.controller.request.ReplaceSkillsRequest;
 import ru.borisov.users.controller.request.UpdateUserInfoRequest;
+import ru.borisov.users.controller.request.UserIdsRequest;
 import ru.borisov.users.controller.response.ApiResponse;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.DirectoryFacets;
+import ru.borisov.users.controller.response.FollowResult;
+import ru.borisov.users.controller.response.FollowStatus;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.controller.response.UserDirectoryPage;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.controller.response.UsernameAvailability;
+import ru.borisov.users.controller.response.UsersByIdsResponse;
 import ru.borisov.users.exception.CommonException;
 import ru.borisov.users.exception.ExceptionControllerAdvice;
 import ru.borisov.users.exception.error.Code;
 import ru.borisov.users.exception.error.Error;
 import ru.borisov.users.exception.error.ErrorResponse;
+import ru.borisov.users.model.AgeBucket;
 import ru.borisov.users.model.Gender;
-import ru.borisov.users.model.Skill;
 import ru.borisov.users.model.SkillType;
 import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSummary;
 import ru.borisov.users.service.FollowService;
 import ru.borisov.users.service.SkillService;
+import ru.borisov.users.service.UserExportService;
 import ru.borisov.users.service.UserServiceImpl;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Stream;
@@ -63,12 +82,23 @@ class UserControllerTest {
     @MockBean
     private FollowService followService;
 
+    @MockBean
+    private UserExportService userExportService;
+
+    @MockBean
+    private ProfileJsonCache profileJsonCache;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
     private User user;
     private User followingUser;
 
     @BeforeEach
     void setUp() {
+        // настоящий кэш на каждый тест, чтобы ответы не переживали тест в общем контексте
+        ProfileJsonCache cache = new ProfileJsonCache(Jackson2ObjectMapperBuilder.json().build(), 100, Duration.ofMinutes(1));
+        when(profileJsonCache.get(any(), any())).thenAnswer(invocation ->
+                cache.get(invocation.getArgument(0), invocation.getArgument(1)));
+
         user =
                 User.builder()
                         .id(UUID.fromString("5c9bb861-b952-44f1-90d6-9584a86782dc"))
@@ -114,7 +144,7 @@ class UserControllerTest {
     void createUser_shouldReturn201_whenUserNotExist(RegisterUserRequest request) throws Exception {
         // given
         String requestJson = objectMapper.writeValueAsString(request);
-        when(userService.registerUser(request)).thenReturn(user);
+        when(userService.registerUser(request)).thenReturn(UserProfile.from(user));
 
         // when
         ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
@@ -161,7 +191,7 @@ class UserControllerTest {
                 .build();
         user.setLastName("NewLastName");
         user.setBio("New bio");
-        when(userService.updateUserInfo(request, user.getId())).thenReturn(user);
+        when(userService.updateUserInfo(request, user.getId())).thenReturn(UserProfile.from(user));
         String requestJson = """
                 {
                   "lastName": "NewLastName",
@@ -189,10 +219,7 @@ class UserControllerTest {
                 .skillType(SkillType.HARD_SKILL)
                 .build();
         when(skillService.addSkillToUser(request, user.getId())).thenReturn(
-                Skill.builder()
-                        .title(request.getTitle().toLowerCase())
-                        .skillType(request.getSkillType())
-                        .build()
+                new SkillView(UUID.randomUUID(), request.getTitle().toLowerCase(), request.getSkillType())
         );
         String requestJson = """
                 {
@@ -213,6 +240,31 @@ class UserControllerTest {
                 .andExpect(jsonPath("$['data'].skillType", Matchers.equalTo(request.getSkillType().toString())));
     }
 
+    @Test
+    void replaceUserSkills_shouldReturn200AndResultingSkills_whenUserExist() throws Exception {
+        // given
+        ReplaceSkillsRequest request = ReplaceSkillsRequest.builder()
+                .skills(List.of(new AddSkillRequest("java8", SkillType.HARD_SKILL),
+                        new AddSkillRequest("sql", SkillType.HARD_SKILL)))
+                .build();
+        when(skillService.replaceUserSkills(request, user.getId())).thenReturn(List.of(
+                new SkillView(UUID.randomUUID(), "java8", SkillType.HARD_SKILL),
+                new SkillView(UUID.randomUUID(), "sql", SkillType.HARD_SKILL)));
+        String requestJson = objectMapper.writeValueAsString(request);
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .put(USERS_URL + "/" + user.getId() + "/skills")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(requestJson));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$['data'].length()", Matchers.equalTo(2)))
+                .andExpect(jsonPath("$['data'][0].title", Matchers.equalTo("java8")))
+                .andExpect(jsonPath("$['data'][1].title", Matchers.equalTo("sql")));
+    }
+
     @Test
     void addSkillToUser_shouldReturn400_whenInvalidRequest() throws Exception {
         // given
@@ -429,18 +481,100 @@ class UserControllerTest {
     }
 
 
+    @Test
+    void followAll_shouldReturn200AndStatusPerUser() throws Exception {
+        // given
+        UUID missingUserId = UUID.randomUUID();
+        UserIdsRequest request = new UserIdsRequest(List.of(followingUser.getId(), missingUserId));
+        when(followService.followAll(user.getId(), request)).thenReturn(List.of(
+                new FollowResult(followingUser.getId(), FollowStatus.FOLLOWED),
+                new FollowResult(missingUserId, FollowStatus.USER_NOT_FOUND)));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .post(USERS_URL + "/" + user.getId() + "/follow:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.length()", Matchers.equalTo(2)))
+                .andExpect(jsonPath("$.data[0].status", Matchers.equalTo(FollowStatus.FOLLOWED.toString())))
+                .andExpect(jsonPath("$.data[1].status", Matchers.equalTo(FollowStatus.USER_NOT_FOUND.toString())));
+    }
+
+    @Test
+    void getFollowState_shouldReturn200AndStatePerUser() throws Exception {
+        // given
+        UUID otherUserId = UUID.randomUUID();
+        UserIdsRequest request = new UserIdsRequest(List.of(followingUser.getId(), otherUserId));
+        Map<UUID, Boolean> state = new LinkedHashMap<>();
+        state.put(followingUser.getId(), true);
+        state.put(otherUserId, false);
+        when(followService.getFollowState(user.getId(), request)).thenReturn(state);
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .post(USERS_URL + "/" + user.getId() + "/follow-state")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.following['" + followingUser.getId() + "']", Matchers.equalTo(true)))
+                .andExpect(jsonPath("$.data.following['" + otherUserId + "']", Matchers.equalTo(false)));
+    }
+
+    @Test
+    void getUsersByIds_shouldReturn200AndMissingIds() throws Exception {
+        // given
+        UUID missingUserId = UUID.randomUUID();
+        UserIdsRequest request = new UserIdsRequest(List.of(user.getId(), missingUserId));
+        when(userService.getUsersByIds(request))
+                .thenReturn(new UsersByIdsResponse(List.of(UserProfile.from(user)), List.of(missingUserId)));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL)
+                .param("ids", user.getId().toString(), missingUserId.toString()));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.users.length()", Matchers.equalTo(1)))
+                .andExpect(jsonPath("$.data.users[0].username", Matchers.equalTo(user.getUsername())))
+                .andExpect(jsonPath("$.data.missingIds[0]", Matchers.equalTo(missingUserId.toString())));
+        verify(userService, never()).getUsers(anyInt(), any());
+    }
+
     @Test
     void getUserById_shouldReturn200_whenUserExists() throws Exception {
         // given
-        when(userService.getUserById(user.getId())).thenReturn(user);
+        when(userService.getUserById(user.getId())).thenReturn(Cached.fresh(UserProfile.from(user)));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/" + user.getId()));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$['data'].username", Matchers.equalTo(user.getUsername())));
+    }
+
+    @Test
+    void getUserById_shouldServeCachedJson_onRepeatedReads() throws Exception {
+        // given
+        when(userService.getUserById(user.getId())).thenReturn(Cached.fresh(UserProfile.from(user)));
 
         // when
+        mockMvc.perform(MockMvcRequestBuilders.get(USERS_URL + "/" + user.getId()));
         ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
                 .get(USERS_URL + "/" + user.getId()));
 
         // then
         resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$['data'].username", Matchers.equalTo(user.getUsername())));
+        verify(userService, times(1)).getUserById(user.getId());
     }
 
     @Test
@@ -466,10 +600,85 @@ class UserControllerTest {
                         user.getId() + " не существует!")));
     }
 
+    @Test
+    void getUserByUsername_shouldReturn200_whenUserExists() throws Exception {
+        // given
+        when(userService.getUserByUsername(user.getUsername())).thenReturn(Cached.fresh(UserProfile.from(user)));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/by-username/" + user.getUsername()));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.id", Matchers.equalTo(user.getId().toString())))
+                .andExpect(jsonPath("$.stale").doesNotExist());
+    }
+
+    @Test
+    void checkUsernameAvailability_shouldReturn200AndAvailability() throws Exception {
+        // given
+        when(userService.checkUsernameAvailability("free"))
+                .thenReturn(new UsernameAvailability("free", true));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/availability")
+                .param("username", "free"));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.username", Matchers.equalTo("free")))
+                .andExpect(jsonPath("$.data.available", Matchers.equalTo(true)));
+    }
+
+    @Test
+    void findUsersBySkills_shouldReturn200AndPage() throws Exception {
+        // given
+        UserSummary summary = new UserSummary(user.getId(), user.getUsername(), null, null, null);
+        when(skillService.findUsersBySkills(List.of("java", "kubernetes"), List.of("php"), 20, null))
+                .thenReturn(new CursorPage<>(List.of(summary), null));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/by-skills")
+                .param("skills", "java", "kubernetes")
+                .param("without", "php"));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.items[0].id", Matchers.equalTo(user.getId().toString())))
+                .andExpect(jsonPath("$.data.nextCursor", Matchers.nullValue()));
+    }
+
+    @Test
+    void searchDirectory_shouldReturn200AndFacets() throws Exception {
+        // given
+        UserSummary summary = new UserSummary(user.getId(), user.getUsername(), null, null, null);
+        when(userService.searchDirectory("Якутск", Gender.MALE, AgeBucket.FROM_25_TO_34, 20, null))
+                .thenReturn(new UserDirectoryPage(List.of(summary), null, new DirectoryFacets(
+                        Map.of("Якутск", 1L), Map.of(Gender.MALE, 1L), Map.of(AgeBucket.FROM_25_TO_34, 1L))));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/directory")
+                .param("city", "Якутск")
+                .param("gender", "MALE")
+                .param("age", "FROM_25_TO_34"));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.items[0].id", Matchers.equalTo(user.getId().toString())))
+                .andExpect(jsonPath("$.data.facets.cities['Якутск']", Matchers.equalTo(1)))
+                .andExpect(jsonPath("$.data.facets.genders.MALE", Matchers.equalTo(1)))
+                .andExpect(jsonPath("$.data.facets.ages.FROM_25_TO_34", Matchers.equalTo(1)));
+    }
+
     @Test
     void getUserFollowers_shouldReturn200AndEmptyData_whenThereAreNoFollowers() throws Exception {
         // given
-        when(userService.getUserFollowers(user.getId())).thenReturn(new HashSet<>());
+        when(userService.getUserFollowers(user.getId(), 20, null))
+                .thenReturn(Cached.fresh(new CursorPage<>(List.of(), null)));
 
         // when
         ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
@@ -479,16 +688,36 @@ class UserControllerTest {
         resultActions.andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.content().json("""
                         {
-                          "data": [
-                          ]
+                          "data": {
+                            "items": [
+                            ],
+                            "nextCursor": null
+                          }
                         }
                         """));
     }
 
+    @Test
+    void getUserFollowers_shouldFlagStaleData_whenServedFromCache() throws Exception {
+        // given
+        UserSummary follower = new UserSummary(UUID.randomUUID(), "follower", null, null, null);
+        when(userService.getUserFollowers(user.getId(), 20, null))
+                .thenReturn(Cached.stale(new CursorPage<>(List.of(follower), null)));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/" + user.getId() + "/followers"));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.stale", Matchers.equalTo(true)))
+                .andExpect(jsonPath("$.data.items[0].username", Matchers.equalTo(follower.username())));
+    }
+
     @Test
     void getUserFollowers_shouldReturn404_whenUserNotExist() throws Exception {
         // given
-        doThrow(CommonException.class).when(userService).getUserFollowers(user.getId());
+        doThrow(CommonException.class).when(userService).getUserFollowers(user.getId(), 20, null);
         when(exceptionControllerAdvice.handleCommonException(new CommonException())).thenReturn(
                 new ResponseEntity<>(ErrorResponse.builder()
                         .error(Error.builder()
@@ -511,63 +740,76 @@ class UserControllerTest {
     @Test
     void getUserFollowing_shouldReturn200AndFollowing_whenUserExists() throws Exception {
         // given
-        User following1 = User.builder()
-                .id(UUID.randomUUID())
-                .username("following1")
-                .passwordHash("12345")
-                .email("following1@example.com")
-                .following(new HashSet<>())
-                .followers(new HashSet<>())
-                .build();
-        User following2 = User.builder()
-                .id(UUID.randomUUID())
-                .username("following2")
-                .passwordHash("12345")
-                .email("following2@example.com")
-                .following(new HashSet<>())
-                .followers(new HashSet<>())
-                .build();
-        Set<User> following = Set.of(following1, following2);
-        when(userService.getUserFollowing(user.getId())).thenReturn(following);
+        UserSummary following1 = new UserSummary(UUID.randomUUID(), "following1", null, null, null);
+        UserSummary following2 = new UserSummary(UUID.randomUUID(), "following2", null, null, null);
+        List<UserSummary> following = List.of(following1, following2);
+        when(userService.getUserFollowing(user.getId(), 2, null))
+                .thenReturn(Cached.fresh(new CursorPage<>(following, "next-cursor")));
 
         // when
         ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
-                .get(USERS_URL + "/" + user.getId() + "/following"));
+                .get(USERS_URL + "/" + user.getId() + "/following")
+                .param("limit", "2"));
 
         // then
         resultActions.andExpect(MockMvcResultMatchers.status().isOk())
-                .andExpect(jsonPath("$.data.length()", Matchers.equalTo(following.size())))
-                .andExpect(jsonPath("$.data[*].username", Matchers.containsInAnyOrder(
-                        following1.getUsername(), following2.getUsername())));
+                .andExpect(jsonPath("$.data.items.length()", Matchers.equalTo(following.size())))
+                .andExpect(jsonPath("$.data.items[*].username", Matchers.containsInAnyOrder(
+                        following1.username(), following2.username())))
+                .andExpect(jsonPath("$.data.nextCursor", Matchers.equalTo("next-cursor")));
     }
 
     @Test
-    void getAllUsers_shouldReturn200AndEmptyList_whenNoUsersExist() throws Exception {
-        List<User> users = new ArrayList<>();
-        when(userService.getAllUsers()).thenReturn(users);
+    void getUsers_shouldReturn200AndEmptyPage_whenNoUsersExist() throws Exception {
+        // given
+        when(userService.getUsers(20, null)).thenReturn(new CursorPage<>(List.of(), null));
 
         // when
         ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.get(USERS_URL));
 
         // then
         resultActions.andExpect(MockMvcResultMatchers.status().isOk())
-                .andExpect(jsonPath("$.data.length()", Matchers.equalTo(users.size())));
+                .andExpect(jsonPath("$.data.items.length()", Matchers.equalTo(0)))
+                .andExpect(jsonPath("$.data.nextCursor", Matchers.nullValue()));
     }
 
     @Test
-    void getAllUsers_shouldReturn200AndUserList_whenUsersExist() throws Exception {
+    void getUsers_shouldReturn200AndUserPage_whenUsersExist() throws Exception {
         // given
-        List<User> users = List.of(user, followingUser);
-        when(userService.getAllUsers()).thenReturn(users);
+        List<UserSummary> users = List.of(toSummary(user), toSummary(followingUser));
+        String after = "cursor";
+        String nextCursor = "next-cursor";
+        when(userService.getUsers(2, after)).thenReturn(new CursorPage<>(users, nextCursor));
 
         // when
-        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.get(USERS_URL));
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.get(USERS_URL)
+                .param("limit", "2")
+                .param("after", after));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.items.length()", Matchers.equalTo(users.size())))
+                .andExpect(jsonPath("$.data.items.[0].username", Matchers.equalTo(user.getUsername())))
+                .andExpect(jsonPath("$.data.items.[1].username", Matchers.equalTo(followingUser.getUsername())))
+                .andExpect(jsonPath("$.data.nextCursor", Matchers.equalTo(nextCursor)));
+    }
+
+    @Test
+    void exportUsers_shouldReturn200AndNdjson() throws Exception {
+        // given
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(0);
+            out.write("{\"username\":\"testUser\"}\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(userExportService).exportUsers(any(OutputStream.class));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders.get(USERS_URL + "/export"));
 
         // then
         resultActions.andExpect(MockMvcResultMatchers.status().isOk())
-                .andExpect(jsonPath("$.data.length()", Matchers.equalTo(users.size())))
-                .andExpect(jsonPath("$.data.[0].username", Matchers.equalTo(user.getUsername())))
-                .andExpect(jsonPath("$.data.[1].username", Matchers.equalTo(followingUser.getUsername())));
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.content().string("{\"username\":\"testUser\"}\n"));
     }
 
     @Test
@@ -609,6 +851,11 @@ class UserControllerTest {
                 .andExpect(jsonPath("$.error.message", Matchers.equalTo("Пользователя с id=" + user.getId() + " не существует!")));
     }
 
+    private static UserSummary toSummary(User user) {
+        return new UserSummary(user.getId(), user.getUsername(), user.getFirstName(),
+                user.getLastName(), user.getProfileImage());
+    }
+
     private static Stream<RegisterUserRequest> validUserRequest() {
         return Stream.of(
                 RegisterUserRequest.builder() // Валидный запрос
@@ -635,4 +882,56 @@ class UserControllerTest {
                         .build()
         );
     }
+
+    @Test
+    void searchUsers_shouldReturn200AndMatchedUsers() throws Exception {
+        // given
+        UserSummary summary = new UserSummary(user.getId(), user.getUsername(), null, null, null);
+        when(userService.searchUsers("петров", 20, null))
+                .thenReturn(new CursorPage<>(List.of(summary), null));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/search")
+                .param("q", "петров"));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.items[0].id", Matchers.equalTo(user.getId().toString())))
+                .andExpect(jsonPath("$.data.nextCursor", Matchers.nullValue()));
+    }
+
+    @Test
+    void suggestUsers_shouldReturn200AndSuggestions() throws Exception {
+        // given
+        UserSummary summary = new UserSummary(user.getId(), user.getUsername(), null, null, null);
+        when(userService.suggestUsers("bor", 10)).thenReturn(List.of(summary));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/typeahead")
+                .param("q", "bor"));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data[0].username", Matchers.equalTo(user.getUsername())));
+    }
+
+    @Test
+    void getMutualFollows_shouldReturn200AndMutualUsers() throws Exception {
+        // given
+        UUID friendId = UUID.randomUUID();
+        UserSummary friend = new UserSummary(friendId, "friend", null, null, null);
+        when(followService.getMutualFollows(user.getId(), 20, null))
+                .thenReturn(new CursorPage<>(List.of(friend), null));
+
+        // when
+        ResultActions resultActions = mockMvc.perform(MockMvcRequestBuilders
+                .get(USERS_URL + "/" + user.getId() + "/mutual"));
+
+        // then
+        resultActions.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.data.items[0].id", Matchers.equalTo(friendId.toString())))
+                .andExpect(jsonPath("$.data.nextCursor", Matchers.nullValue()));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package ru.borisov.users.health;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import ru.borisov.users.DatabaseTestContainer;
+import ru.borisov.users.cache.Cached;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.service.UserService;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@TestPropertySource(properties = {
+        "users.stale-cache.profile-fresh-ttl=1s",
+        "users.stale-cache.follow-page-fresh-ttl=1s",
+        "users.db-health.probe-interval=PT0.2S",
+        "users.db-health.probe-timeout=200ms"
+})
+class StaleServingTest extends DatabaseTestContainer {
+
+    private static final long TIMEOUT_MS = 15_000;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private DatabaseHealthMonitor databaseHealthMonitor;
+
+    @Test
+    void reads_shouldServeStaleData_whileDatabaseIsPaused() throws Exception {
+
+        // given
+        User user = saveUser("stale");
+        User uncached = saveUser("stale-miss");
+        userService.getUserById(user.getId());
+        userService.getUserFollowers(user.getId(), 20, null);
+        // ждем, пока значения перестанут быть свежими
+        Thread.sleep(1_100);
+
+        pauseDatabase();
+        try {
+            assertThat(await(() -> !databaseHealthMonitor.isHealthy())).isTrue();
+
+            // when
+            long start = System.nanoTime();
+            Cached<UserProfile> profile = userService.getUserById(user.getId());
+            Cached<CursorPage<UserSummary>> followers = userService.getUserFollowers(user.getId(), 20, null);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // then
+            assertThat(profile.stale()).isTrue();
+            assertThat(profile.value().username()).isEqualTo(user.getUsername());
+            assertThat(followers.stale()).isTrue();
+            assertThat(followers.value().items()).isEmpty();
+            // в БД не ходили
+            assertThat(elapsedMs).isLessThan(500);
+            assertThatThrownBy(() -> userService.getUserById(uncached.getId()))
+                    .isInstanceOfSatisfying(CommonException.class,
+                            e -> assertThat(e.getHttpStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        } finally {
+            unpauseDatabase();
+        }
+
+        assertThat(await(databaseHealthMonitor::isHealthy)).isTrue();
+        assertThat(await(() -> !userService.getUserById(user.getId()).stale())).isTrue();
+        assertThat(userService.getUserById(uncached.getId()).value().username()).isEqualTo(uncached.getUsername());
+    }
+
+    private User saveUser(String prefix) {
+        String username = prefix + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return userRepository.save(User.builder()
+                .email(username + "@mail.ru")
+                .username(username)
+                .passwordHash("password")
+                .build());
+    }
+
+    private static void pauseDatabase() {
+        postgreSQLContainer.getDockerClient().pauseContainerCmd(postgreSQLContainer.getContainerId()).exec();
+    }
+
+    private static void unpauseDatabase() {
+        postgreSQLContainer.getDockerClient().unpauseContainerCmd(postgreSQLContainer.getContainerId()).exec();
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
@@ -1,13 +1,16 @@
 package ru.borisov.users.repository;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
 import ru.borisov.users.DatabaseTestContainer;
 import ru.borisov.users.model.Skill;
 import ru.borisov.users.model.SkillType;
+import ru.borisov.users.repository.projection.SkillUpsert;
 
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class SkillRepositoryTest extends DatabaseTestContainer {
 
@@ -37,4 +40,47 @@ class SkillRepositoryTest extends DatabaseTestContainer {
         // Then
         assertThat(skillNotExist).isEmpty();
     }
+
+    @Test
+    void upsertSkill_shouldInsertSkill_whenTitleIsNew() {
+
+        // when
+        SkillUpsert upsert = skillRepository.upsertSkill("Kubernetes", SkillType.HARD_SKILL);
+
+        // Then
+        assertThat(upsert.inserted()).isTrue();
+        assertThat(skillRepository.findById(upsert.id()))
+                .hasValueSatisfying(skill -> assertThat(skill.getTitle()).isEqualTo("kubernetes"));
+    }
+
+    @Test
+    void upsertSkill_shouldReturnExistingSkill_whenTitleDiffersOnlyInCase() {
+
+        // given
+        SkillUpsert first = skillRepository.upsertSkill("terraform", SkillType.HARD_SKILL);
+
+        // when
+        SkillUpsert second = skillRepository.upsertSkill("TerraForm", SkillType.SOFT_SKILL);
+
+        // Then
+        assertThat(second.inserted()).isFalse();
+        assertThat(second.id()).isEqualTo(first.id());
+    }
+
+    @Test
+    void save_shouldFail_whenTitleDiffersOnlyInCase() {
+
+        // given
+        skillRepository.save(Skill.builder()
+                .title("ansible")
+                .skillType(SkillType.HARD_SKILL)
+                .build());
+
+        // Then
+        assertThatThrownBy(() -> skillRepository.saveAndFlush(Skill.builder()
+                .title("Ansible")
+                .skillType(SkillType.HARD_SKILL)
+                .build()))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
 }
\ No newline at end of file
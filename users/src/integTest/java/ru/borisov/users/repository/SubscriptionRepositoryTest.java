@@ -2,11 +2,16 @@ package ru.borisov.users.repository;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
 import ru.borisov.users.DatabaseTestContainer;
 import ru.borisov.users.model.Subscription;
 import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSummary;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -14,17 +19,20 @@ class SubscriptionRepositoryTest extends DatabaseTestContainer {
 
     private User to;
     private User from;
+    private String suffix;
 
     @BeforeEach
     void setUp() {
+        // данные в контейнере общие для всех тестов, а ник пользователя уникален
+        suffix = "-" + UUID.randomUUID().toString().substring(0, 8);
         to = User.builder()
-                .email("to@mail.ru")
-                .username("to")
+                .email("to" + suffix + "@mail.ru")
+                .username("to" + suffix)
                 .passwordHash("password")
                 .build();
         from = User.builder()
-                .email("from@mail.ru")
-                .username("from")
+                .email("from" + suffix + "@mail.ru")
+                .username("from" + suffix)
                 .passwordHash("password")
                 .build();
     }
@@ -54,8 +62,8 @@ class SubscriptionRepositoryTest extends DatabaseTestContainer {
 
         // given
         User other = User.builder()
-                .email("other@mail.ru")
-                .username("other")
+                .email("other" + suffix + "@mail.ru")
+                .username("other" + suffix)
                 .passwordHash("password")
                 .build();
         userRepository.save(to);
@@ -74,4 +82,76 @@ class SubscriptionRepositoryTest extends DatabaseTestContainer {
         // Then
         assertThat(followerOptional).isEmpty();
     }
+
+    @Test
+    void findFollowers_shouldReturnFollowerSummaries_pageByPage() {
+
+        // given
+        User other = User.builder()
+                .email("other-follower" + suffix + "@mail.ru")
+                .username("other-follower" + suffix)
+                .passwordHash("password")
+                .build();
+        userRepository.save(to);
+        userRepository.save(from);
+        userRepository.save(other);
+        followerRepository.save(Subscription.builder().from(from).to(to).build());
+        followerRepository.save(Subscription.builder().from(other).to(to).build());
+
+        // when
+        List<UserSummary> firstPage = followerRepository.findFollowers(to.getId(), PageRequest.of(0, 1));
+        List<UserSummary> secondPage = followerRepository.findFollowersAfter(
+                to.getId(), firstPage.get(0).id(), PageRequest.of(0, 1));
+
+        // Then
+        assertThat(firstPage).hasSize(1);
+        assertThat(secondPage).hasSize(1);
+        assertThat(List.of(firstPage.get(0).id(), secondPage.get(0).id()))
+                .containsExactlyInAnyOrder(from.getId(), other.getId());
+    }
+
+    @Test
+    void insertSubscriptions_shouldSkipExistingSubscriptions() {
+
+        // given
+        User other = User.builder()
+                .email("batch-other" + suffix + "@mail.ru")
+                .username("batch-other" + suffix)
+                .passwordHash("password")
+                .build();
+        userRepository.save(to);
+        userRepository.save(from);
+        userRepository.save(other);
+        followerRepository.save(Subscription.builder().from(from).to(to).build());
+
+        // when
+        List<UUID> inserted = followerRepository.insertSubscriptions(from.getId(), List.of(to.getId(), other.getId()));
+        List<UUID> deleted = followerRepository.deleteSubscriptions(from.getId(), List.of(to.getId(), other.getId()));
+
+        // Then
+        assertThat(inserted).containsExactly(other.getId());
+        assertThat(deleted).containsExactlyInAnyOrder(to.getId(), other.getId());
+        assertThat(followerRepository.findByFromAndTo(from, to)).isEmpty();
+    }
+
+    @Test
+    void findFollowedIds_shouldReturnOnlyFollowedCandidates() {
+
+        // given
+        User other = User.builder()
+                .email("state-other" + suffix + "@mail.ru")
+                .username("state-other" + suffix)
+                .passwordHash("password")
+                .build();
+        userRepository.save(to);
+        userRepository.save(from);
+        userRepository.save(other);
+        followerRepository.save(Subscription.builder().from(from).to(to).build());
+
+        // when
+        Set<UUID> followed = followerRepository.findFollowedIds(from.getId(), List.of(to.getId(), other.getId()));
+
+        // Then
+        assertThat(followed).containsExactly(to.getId());
+    }
 }
\ No newline at end of file
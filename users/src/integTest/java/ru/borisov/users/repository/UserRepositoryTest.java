@@ -1,10 +1,28 @@
 package ru.borisov.users.repository;
 
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import ru.borisov.users.DatabaseTestContainer;
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
+import ru.borisov.users.model.Skill;
 import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSearchHit;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
 
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class UserRepositoryTest extends DatabaseTestContainer {
@@ -13,9 +31,9 @@ class UserRepositoryTest extends DatabaseTestContainer {
     void existsByUsername_shouldReturnTrue_wenUserExists() {
 
         // given
-        String username = "user";
+        String username = "user-" + UUID.randomUUID().toString().substring(0, 8);
         User user = User.builder()
-                .email("test@mail.ru")
+                .email(username + "@mail.ru")
                 .username(username)
                 .passwordHash("password")
                 .build();
@@ -43,9 +61,9 @@ class UserRepositoryTest extends DatabaseTestContainer {
     @Test
     void existsByUsername_shouldReturnFalse_afterSoftDelete() {
         // given
-        String username = "user";
+        String username = "user-" + UUID.randomUUID().toString().substring(0, 8);
         User user = User.builder()
-                .email("test@mail.ru")
+                .email(username + "@mail.ru")
                 .username(username)
                 .passwordHash("password")
                 .build();
@@ -58,4 +76,179 @@ class UserRepositoryTest extends DatabaseTestContainer {
         // then
         assertFalse(userExists);
     }
+
+    @Test
+    void saveAndFlush_shouldRejectDuplicateUsername_ofActiveUser() {
+        // given
+        String username = "dup-" + UUID.randomUUID().toString().substring(0, 8);
+        userRepository.save(User.builder()
+                .email(username + "@mail.ru")
+                .username(username)
+                .passwordHash("password")
+                .build());
+
+        // then
+        assertThrows(DataIntegrityViolationException.class, () -> {
+            // when
+            userRepository.saveAndFlush(User.builder()
+                    .email(username + "-2@mail.ru")
+                    .username(username)
+                    .passwordHash("password")
+                    .build());
+        });
+    }
+
+    @Test
+    void save_shouldAllowUsername_ofSoftDeletedUser() {
+        // given
+        String username = "reuse-" + UUID.randomUUID().toString().substring(0, 8);
+        User deleted = userRepository.save(User.builder()
+                .email(username + "@mail.ru")
+                .username(username)
+                .passwordHash("password")
+                .build());
+        userRepository.delete(deleted);
+
+        // when
+        userRepository.save(User.builder()
+                .email(username + "-2@mail.ru")
+                .username(username)
+                .passwordHash("password")
+                .build());
+
+        // then
+        assertTrue(userRepository.existsByUsername(username));
+    }
+
+    @Test
+    void findSummariesAfter_shouldReturnUsersOrderedById_afterCursor() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            userRepository.save(User.builder()
+                    .email("page" + i + "@mail.ru")
+                    .username("page" + i)
+                    .passwordHash("password")
+                    .build());
+        }
+        List<UserSummary> firstPage = userRepository.findSummaries(PageRequest.of(0, 2));
+
+        // when
+        List<UserSummary> secondPage = userRepository.findSummariesAfter(
+                firstPage.get(firstPage.size() - 1).id(), PageRequest.of(0, 2));
+
+        // then
+        assertEquals(2, firstPage.size());
+        assertFalse(secondPage.isEmpty());
+        assertTrue(secondPage.stream().noneMatch(firstPage::contains));
+    }
+
+    @Test
+    void findAllWithSkillsByIdIn_shouldFetchSkillsInSameQuery() {
+        // given
+        Skill skill = Skill.builder()
+                .title("multi-get-skill")
+                .build();
+        User user = userRepository.save(User.builder()
+                .email("multi-get@mail.ru")
+                .username("multi-get")
+                .passwordHash("password")
+                .skills(new HashSet<>(Set.of(skill)))
+                .build());
+
+        // when
+        List<User> users = userRepository.findAllWithSkillsByIdIn(List.of(user.getId(), UUID.randomUUID()));
+
+        // then
+        assertEquals(1, users.size());
+        assertTrue(Hibernate.isInitialized(users.get(0).getSkills()));
+        assertEquals(1, users.get(0).getSkills().size());
+    }
+
+    @Test
+    void findDirectoryPage_shouldFilterByCityGenderAndAge_withKeysetPaging() {
+        // given
+        String city = "city-" + UUID.randomUUID().toString().substring(0, 8);
+        LocalDate today = LocalDate.now();
+        User first = directoryUser(city, Gender.FEMALE, today.minusYears(30));
+        User second = directoryUser(city, Gender.FEMALE, today.minusYears(25));
+        directoryUser(city, Gender.FEMALE, today.minusYears(35)); // другая возрастная группа
+        directoryUser(city, Gender.MALE, today.minusYears(30));
+        List<UUID> expected = Stream.of(first.getId(), second.getId()).sorted().toList();
+
+        // when
+        List<UserSummary> firstPage = userRepository.findDirectoryPage(
+                city, Gender.FEMALE, AgeBucket.FROM_25_TO_34, today, null, PageRequest.of(0, 1));
+        List<UserSummary> secondPage = userRepository.findDirectoryPage(
+                city, Gender.FEMALE, AgeBucket.FROM_25_TO_34, today, firstPage.get(0).id(), PageRequest.of(0, 10));
+
+        // then
+        assertEquals(List.of(expected.get(0)), firstPage.stream().map(UserSummary::id).toList());
+        assertEquals(List.of(expected.get(1)), secondPage.stream().map(UserSummary::id).toList());
+    }
+
+    @Test
+    void searchByText_shouldRankNameMatchesAboveBio_withKeysetPaging() {
+        // given
+        String token = "petrov" + UUID.randomUUID().toString().substring(0, 8).replace("-", "");
+        User byName = searchUser(token, null);
+        User byBio = searchUser(null, "друг пользователя " + token);
+        searchUser(null, "не относится к запросу");
+
+        // when
+        List<UserSearchHit> firstPage = userRepository.searchByText(token, null, PageRequest.of(0, 1));
+        UserSearchHit last = firstPage.get(0);
+        List<UserSearchHit> secondPage = userRepository.searchByText(
+                token, new CursorUtils.RankedKey(last.rank(), last.id()), PageRequest.of(0, 10));
+
+        // then
+        assertEquals(List.of(byName.getId()), firstPage.stream().map(UserSearchHit::id).toList());
+        assertEquals(List.of(byBio.getId()), secondPage.stream().map(UserSearchHit::id).toList());
+    }
+
+    @Test
+    void findByUsernameSimilarTo_shouldFindSubstringAndSimilarUsernames_mostSimilarFirst() {
+        // given
+        String suffix = UUID.randomUUID().toString().substring(0, 6);
+        User exact = searchUsername("qzx" + suffix);
+        User containing = searchUsername("the_qzx" + suffix + "_fan");
+        User deleted = searchUsername("qzx" + suffix + "_old");
+        userRepository.delete(deleted);
+
+        // when
+        List<UserSummary> result = userRepository.findByUsernameSimilarTo("qzx" + suffix, 10);
+
+        // then
+        assertEquals(List.of(exact.getId(), containing.getId()), result.stream().map(UserSummary::id).toList());
+    }
+
+    private User searchUsername(String username) {
+        return userRepository.save(User.builder()
+                .email(username + "@mail.ru")
+                .username(username)
+                .passwordHash("password")
+                .build());
+    }
+
+    private User searchUser(String lastName, String bio) {
+        String username = "fts-" + UUID.randomUUID().toString().substring(0, 8);
+        return userRepository.save(User.builder()
+                .email(username + "@mail.ru")
+                .username(username)
+                .passwordHash("password")
+                .lastName(lastName)
+                .bio(bio)
+                .build());
+    }
+
+    private User directoryUser(String city, Gender gender, LocalDate birthDate) {
+        String username = "dir-" + UUID.randomUUID().toString().substring(0, 8);
+        return userRepository.save(User.builder()
+                .email(username + "@mail.ru")
+                .username(username)
+                .passwordHash("password")
+                .city(city)
+                .gender(gender)
+                .birthDate(birthDate)
+                .build());
+    }
 }
\ No newline at end of file
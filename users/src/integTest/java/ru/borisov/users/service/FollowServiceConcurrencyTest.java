@@ -0,0 +1,153 @@
+package ru.borisov.users.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.borisov.users.DatabaseTestContainer;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FollowServiceConcurrencyTest extends DatabaseTestContainer {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private FollowService followService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User from;
+    private User to;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        from = userRepository.save(User.builder()
+                .email("from-" + suffix + "@mail.ru")
+                .username("from-" + suffix)
+                .passwordHash("password")
+                .build());
+        to = userRepository.save(User.builder()
+                .email("to-" + suffix + "@mail.ru")
+                .username("to-" + suffix)
+                .passwordHash("password")
+                .build());
+    }
+
+    @Test
+    void follow_shouldCreateSingleSubscription_whenCalledConcurrently() throws Exception {
+
+        // when
+        List<Throwable> failures = runConcurrently(() -> followService.follow(from.getId(), to.getId()));
+
+        // then
+        assertThat(failures).hasSize(THREADS - 1);
+        assertThat(failures).allSatisfy(this::assertConflict);
+        assertThat(subscriptionCount()).isEqualTo(1);
+        assertThat(followersCount(to.getId())).isEqualTo(1);
+        assertThat(followingCount(from.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void unfollow_shouldDeleteSingleSubscription_whenCalledConcurrently() throws Exception {
+
+        // given
+        followService.follow(from.getId(), to.getId());
+
+        // when
+        List<Throwable> failures = runConcurrently(() -> followService.unfollow(from.getId(), to.getId()));
+
+        // then
+        assertThat(failures).hasSize(THREADS - 1);
+        assertThat(failures).allSatisfy(this::assertConflict);
+        assertThat(subscriptionCount()).isZero();
+        assertThat(followersCount(to.getId())).isZero();
+        assertThat(followingCount(from.getId())).isZero();
+    }
+
+    @Test
+    void removeUserById_shouldReleaseCounters_andRejectUnfollow() {
+
+        // given
+        followService.follow(from.getId(), to.getId());
+        followService.follow(to.getId(), from.getId());
+
+        // when
+        userService.removeUserById(to.getId());
+        CommonException unfollow = assertThrows(CommonException.class,
+                () -> followService.unfollow(from.getId(), to.getId()));
+
+        // then
+        assertThat(unfollow.getHttpStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(subscriptionCount()).isEqualTo(1);
+        assertThat(followersCount(from.getId())).isZero();
+        assertThat(followingCount(from.getId())).isZero();
+    }
+
+    private List<Throwable> runConcurrently(Runnable action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    action.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            List<Throwable> failures = new ArrayList<>();
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                }
+            }
+            return failures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertConflict(Throwable failure) {
+        assertThat(failure).isInstanceOf(CommonException.class);
+        assertThat(((CommonException) failure).getHttpStatus()).isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    private int subscriptionCount() {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM users_scheme.subscription WHERE from_user_fk = ? AND to_user_fk = ?",
+                Integer.class, from.getId(), to.getId());
+    }
+
+    private int followersCount(UUID userId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT followers_count FROM users_scheme._user WHERE id = ?", Integer.class, userId);
+    }
+
+    private int followingCount(UUID userId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT following_count FROM users_scheme._user WHERE id = ?", Integer.class, userId);
+    }
+}
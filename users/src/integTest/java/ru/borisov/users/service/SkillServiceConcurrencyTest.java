@@ -0,0 +1,101 @@
+package ru.borisov.users.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.borisov.users.DatabaseTestContainer;
+import ru.borisov.users.controller.request.AddSkillRequest;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.model.SkillType;
+import ru.borisov.users.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SkillServiceConcurrencyTest extends DatabaseTestContainer {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    private SkillService skillService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private List<User> users;
+    private String title;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        title = "Rust-" + suffix;
+        users = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            users.add(userRepository.save(User.builder()
+                    .email("skill-" + i + "-" + suffix + "@mail.ru")
+                    .username("skill-" + i + "-" + suffix)
+                    .passwordHash("password")
+                    .build()));
+        }
+    }
+
+    @Test
+    void addSkillToUser_shouldCreateSingleSkill_whenSameNewSkillAddedConcurrently() throws Exception {
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SkillView>> futures = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        List<UUID> skillIds = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                UUID userId = users.get(i).getId();
+                // разный регистр названия должен приводить к одному навыку
+                AddSkillRequest request = AddSkillRequest.builder()
+                        .title(i % 2 == 0 ? title : title.toUpperCase())
+                        .skillType(SkillType.HARD_SKILL)
+                        .build();
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return skillService.addSkillToUser(request, userId);
+                }));
+            }
+            start.countDown();
+            for (Future<SkillView> future : futures) {
+                try {
+                    skillIds.add(future.get().id());
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // then
+        assertThat(failures).isEmpty();
+        assertThat(skillIds).hasSize(THREADS).containsOnly(skillIds.get(0));
+        assertThat(skillCount()).isEqualTo(1);
+        assertThat(userSkillCount(skillIds.get(0))).isEqualTo(THREADS);
+    }
+
+    private int skillCount() {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM users_scheme.skill WHERE lower(title) = lower(?)", Integer.class, title);
+    }
+
+    private int userSkillCount(UUID skillId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM users_scheme.user_skill WHERE skill_id = ?", Integer.class, skillId);
+    }
+}
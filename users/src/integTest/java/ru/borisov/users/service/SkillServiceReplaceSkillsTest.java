@@ -0,0 +1,107 @@
+package ru.borisov.users.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.borisov.users.DatabaseTestContainer;
+import ru.borisov.users.controller.request.AddSkillRequest;
+import ru.borisov.users.controller.request.ReplaceSkillsRequest;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.model.SkillType;
+import ru.borisov.users.model.User;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SkillServiceReplaceSkillsTest extends DatabaseTestContainer {
+
+    @Autowired
+    private SkillService skillService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+    private String suffix;
+
+    @BeforeEach
+    void setUp() {
+        suffix = UUID.randomUUID().toString().substring(0, 8);
+        user = userRepository.save(User.builder()
+                .email("replace-" + suffix + "@mail.ru")
+                .username("replace-" + suffix)
+                .passwordHash("password")
+                .build());
+    }
+
+    @Test
+    void replaceUserSkills_shouldReplaceSkillSetAndRefreshProfile() {
+
+        // given
+        skillService.replaceUserSkills(request("go-" + suffix, "sql-" + suffix), user.getId());
+        userService.getUserById(user.getId());
+
+        // when
+        List<SkillView> skills = skillService.replaceUserSkills(
+                request("SQL-" + suffix, "rust-" + suffix), user.getId());
+
+        // then
+        assertThat(skills).extracting(SkillView::title)
+                .containsExactly("rust-" + suffix, "sql-" + suffix);
+        assertThat(userSkillTitles()).containsExactlyInAnyOrder("rust-" + suffix, "sql-" + suffix);
+        UserProfile profile = userService.getUserById(user.getId()).value();
+        assertThat(profile.skills()).extracting(SkillView::title)
+                .containsExactlyInAnyOrder("rust-" + suffix, "sql-" + suffix);
+    }
+
+    @Test
+    void replaceUserSkills_shouldRemoveAllSkills_whenSetIsEmpty() {
+
+        // given
+        skillService.replaceUserSkills(request("docker-" + suffix), user.getId());
+
+        // when
+        List<SkillView> skills = skillService.replaceUserSkills(request(), user.getId());
+
+        // then
+        assertThat(skills).isEmpty();
+        assertThat(userSkillTitles()).isEmpty();
+        // сам навык остается в справочнике
+        assertThat(skillRepository.findByTitleIgnoreCase("docker-" + suffix)).isPresent();
+    }
+
+    @Test
+    void replaceUserSkills_shouldThrowException_whenUserNotExist() {
+
+        // then
+        assertThatThrownBy(() -> skillService.replaceUserSkills(request("ghost-" + suffix), UUID.randomUUID()))
+                .isInstanceOf(CommonException.class);
+        assertThat(skillRepository.findByTitleIgnoreCase("ghost-" + suffix)).isEmpty();
+    }
+
+    private static ReplaceSkillsRequest request(String... titles) {
+        return ReplaceSkillsRequest.builder()
+                .skills(Arrays.stream(titles)
+                        .map(title -> new AddSkillRequest(title, SkillType.HARD_SKILL))
+                        .toList())
+                .build();
+    }
+
+    private List<String> userSkillTitles() {
+        return jdbcTemplate.queryForList("""
+                SELECT s.title
+                FROM users_scheme.user_skill us
+                         JOIN users_scheme.skill s ON s.id = us.skill_id
+                WHERE us.user_id = ?""", String.class, user.getId());
+    }
+}
@@ -0,0 +1,109 @@
+package ru.borisov.users.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import ru.borisov.users.DatabaseTestContainer;
+import ru.borisov.users.controller.request.AddSkillRequest;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.model.SkillType;
+import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSummary;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SkillUserSearchTest extends DatabaseTestContainer {
+
+    @Autowired
+    private SkillService skillService;
+
+    @Autowired
+    private UserService userService;
+
+    private String suffix;
+    private User backend;
+    private User fullstack;
+    private User legacy;
+
+    @BeforeEach
+    void setUp() {
+        suffix = UUID.randomUUID().toString().substring(0, 8);
+        backend = user("backend");
+        fullstack = user("fullstack");
+        legacy = user("legacy");
+        addSkills(backend, "java", "kubernetes");
+        addSkills(fullstack, "java", "kubernetes", "php");
+        addSkills(legacy, "java", "php");
+    }
+
+    @Test
+    void findUsersBySkills_shouldApplyAndNotQuery() {
+
+        // when
+        CursorPage<UserSummary> page = skillService.findUsersBySkills(
+                List.of(title("java"), title("kubernetes")), List.of(title("php")), 20, null);
+
+        // then
+        assertThat(page.items()).extracting(UserSummary::id).containsExactly(backend.getId());
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void findUsersBySkills_shouldFollowSkillChangesAndRemovals() {
+
+        // given
+        SkillView php = skillService.addSkillToUser(request("php"), backend.getId());
+        skillService.removeSkillFromUser(fullstack.getId(), php.id());
+        userService.removeUserById(legacy.getId());
+
+        // when
+        CursorPage<UserSummary> page = skillService.findUsersBySkills(
+                List.of(title("php")), List.of(), 20, null);
+
+        // then
+        assertThat(page.items()).extracting(UserSummary::id).containsExactly(backend.getId());
+    }
+
+    @Test
+    void findUsersBySkills_shouldPageWithCursor() {
+
+        // when
+        CursorPage<UserSummary> first = skillService.findUsersBySkills(List.of(title("java")), List.of(), 2, null);
+        CursorPage<UserSummary> second = skillService.findUsersBySkills(
+                List.of(title("java")), List.of(), 2, first.nextCursor());
+
+        // then
+        assertThat(first.items()).hasSize(2);
+        assertThat(first.nextCursor()).isNotNull();
+        assertThat(second.items()).hasSize(1);
+        assertThat(second.nextCursor()).isNull();
+        assertThat(second.items()).doesNotContainAnyElementsOf(first.items());
+    }
+
+    private User user(String name) {
+        return userRepository.save(User.builder()
+                .email(name + "-" + suffix + "@mail.ru")
+                .username(name + "-" + suffix)
+                .passwordHash("password")
+                .build());
+    }
+
+    private void addSkills(User user, String... skills) {
+        for (String skill : skills) {
+            skillService.addSkillToUser(request(skill), user.getId());
+        }
+    }
+
+    private AddSkillRequest request(String skill) {
+        return new AddSkillRequest(title(skill), SkillType.HARD_SKILL);
+    }
+
+    // навыки уникальны для теста: база общая для всех тестов
+    private String title(String skill) {
+        return skill + "-" + suffix;
+    }
+}
@@ -0,0 +1,190 @@
+package ru.borisov.users.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import ru.borisov.users.DatabaseTestContainer;
+import ru.borisov.users.cache.UserEntityCache;
+import ru.borisov.users.controller.request.RegisterUserRequest;
+import ru.borisov.users.controller.request.UpdateUserInfoRequest;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.model.Skill;
+import ru.borisov.users.model.SkillType;
+import ru.borisov.users.model.User;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class UserServiceStatementCountTest extends DatabaseTestContainer {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FollowService followService;
+
+    @Autowired
+    private UserProfileLoader userProfileLoader;
+
+    @Autowired
+    private UserEntityCache userEntityCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Statistics statistics;
+    private String suffix;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        suffix = UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Test
+    void userProfileLoader_shouldServeProfileFromSecondLevelCache() throws Exception {
+
+        // given
+        User user = saveUserWithSkills("count-");
+        entityManagerFactory.getCache().evictAll();
+        statistics.clear();
+
+        // when
+        userProfileLoader.load(user.getId());
+        long coldStatements = statistics.getPrepareStatementCount();
+        statistics.clear();
+        UserProfile profile = userProfileLoader.load(user.getId());
+        String json = objectMapper.writeValueAsString(profile);
+
+        // then
+        assertThat(profile.skills()).hasSize(2);
+        assertThat(json).contains("count-java-" + suffix);
+        // промах: пользователь и коллекция навыков, попадание: ни одного запроса
+        assertThat(coldStatements).isEqualTo(2);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getSecondLevelCacheHitCount()).isPositive();
+    }
+
+    @Test
+    void getUserById_shouldServeProfileFromProfileCaches_thenFromSecondLevelCache() {
+
+        // given
+        User user = saveUserWithSkills("layers-");
+        entityManagerFactory.getCache().evictAll();
+        userService.getUserById(user.getId());
+        statistics.clear();
+
+        // when
+        UserProfile cached = userService.getUserById(user.getId()).value();
+        long cachedSecondLevelHits = statistics.getSecondLevelCacheHitCount();
+        long cachedStatements = statistics.getPrepareStatementCount();
+        // сбрасываются только готовые профили, кэш второго уровня остается
+        userEntityCache.invalidateProfile(user.getId());
+        statistics.clear();
+        UserProfile reloaded = userService.getUserById(user.getId()).value();
+
+        // then
+        assertThat(cached.skills()).hasSize(2);
+        assertThat(reloaded.skills()).hasSize(2);
+        // повторное чтение отдает кэш готовых профилей, до Hibernate оно не доходит
+        assertThat(cachedStatements).isZero();
+        assertThat(cachedSecondLevelHits).isZero();
+        // после сброса профилей - кэш второго уровня без запросов в БД
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getSecondLevelCacheHitCount()).isPositive();
+    }
+
+    @Test
+    void registerUser_shouldInsertOnly_whenUsernameIsNew() throws Exception {
+
+        // given
+        RegisterUserRequest request = RegisterUserRequest.builder()
+                .username("register-" + suffix)
+                .email("register-" + suffix + "@mail.ru")
+                .password("password")
+                .build();
+        statistics.clear();
+
+        // when
+        UserProfile profile = userService.registerUser(request);
+        objectMapper.writeValueAsString(profile);
+
+        // then
+        assertThat(profile.id()).isNotNull();
+        // фильтр ников знает, что ник свободен, поэтому existsByUsername не выполняется
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void updateUserInfo_shouldIssueOnlyUpdate_whenUserIsCached() throws Exception {
+
+        // given
+        User user = userRepository.save(User.builder()
+                .email("update-" + suffix + "@mail.ru")
+                .username("update-" + suffix)
+                .passwordHash("password")
+                .build());
+        UpdateUserInfoRequest request = UpdateUserInfoRequest.builder()
+                .city("Якутск")
+                .bio("updated")
+                .build();
+        userService.getUserById(user.getId());
+        statistics.clear();
+
+        // when
+        UserProfile profile = userService.updateUserInfo(request, user.getId());
+        objectMapper.writeValueAsString(profile);
+
+        // then
+        assertThat(profile.city()).isEqualTo("Якутск");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(userService.getUserById(user.getId()).value().bio()).isEqualTo("updated");
+    }
+
+    @Test
+    void follow_shouldEvictCachedCounters() {
+
+        // given
+        User from = userRepository.save(User.builder()
+                .email("cache-from-" + suffix + "@mail.ru")
+                .username("cache-from-" + suffix)
+                .passwordHash("password")
+                .build());
+        User to = userRepository.save(User.builder()
+                .email("cache-to-" + suffix + "@mail.ru")
+                .username("cache-to-" + suffix)
+                .passwordHash("password")
+                .build());
+        userService.getUserById(to.getId());
+
+        // when
+        followService.follow(from.getId(), to.getId());
+
+        // then
+        assertThat(userService.getUserById(to.getId()).value().followersCount()).isEqualTo(1);
+        assertThat(userService.getUserById(from.getId()).value().followingCount()).isEqualTo(1);
+    }
+
+    private User saveUserWithSkills(String prefix) {
+        return userRepository.save(User.builder()
+                .email(prefix + suffix + "@mail.ru")
+                .username(prefix + suffix)
+                .passwordHash("password")
+                .skills(new HashSet<>(Set.of(
+                        Skill.builder().title(prefix + "java-" + suffix).skillType(SkillType.HARD_SKILL).build(),
+                        Skill.builder().title(prefix + "sql-" + suffix).skillType(SkillType.HARD_SKILL).build())))
+                .build());
+    }
+}
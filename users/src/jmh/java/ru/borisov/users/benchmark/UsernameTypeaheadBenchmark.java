@@ -0,0 +1,136 @@
+package ru.borisov.users.benchmark;
+
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.borisov.users.repository.UserRepositoryCustomImpl;
+import ru.borisov.users.repository.projection.UserSummary;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Задержка подсказок по нику на таблице из нескольких миллионов пользователей.
+// Нужна отдельная пустая БД (по умолчанию users_bench на localhost): схема накатывается тем же changelog,
+// что и у приложения, таблица заполняется один раз и переиспользуется между запусками.
+// Параметры подключения: -Dbench.db.url, -Dbench.db.username, -Dbench.db.password
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UsernameTypeaheadBenchmark {
+
+    private static final String SCHEMA = "users_scheme";
+    private static final String[] SYLLABLES = {"bor", "iv", "an", "ser", "gei", "ole", "g", "max", "dim", "a",
+            "kat", "ya", "pet", "rov", "sky", "dev", "pro", "zak", "har", "olga", "nik", "ita", "lex", "sha"};
+
+    @Param({"3000000"})
+    private int rows;
+
+    // подстрока, часть ника целиком и опечатка
+    @Param({"bor", "ivanpetrov", "olgga"})
+    private String query;
+
+    private SingleConnectionDataSource dataSource;
+    private UserRepositoryCustomImpl repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = new SingleConnectionDataSource(
+                System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/users_bench"),
+                System.getProperty("bench.db.username", "postgres"),
+                System.getProperty("bench.db.password", "password"),
+                true);
+        try (Connection connection = dataSource.getConnection()) {
+            migrate(connection);
+            seed(connection);
+        }
+        repository = new UserRepositoryCustomImpl(null, new NamedParameterJdbcTemplate(dataSource));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<UserSummary> typeahead() {
+        return repository.findByUsernameSimilarTo(query, 10);
+    }
+
+    // то же, что делает preliquibase-хук и Liquibase при старте приложения
+    private static void migrate(Connection connection) throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE SCHEMA IF NOT EXISTS " + SCHEMA);
+            statement.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm SCHEMA public");
+        }
+        Database database = DatabaseFactory.getInstance()
+                .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        database.setDefaultSchemaName(SCHEMA);
+        new Liquibase("db/changelog/db.changelog-master.yaml", new ClassLoaderResourceAccessor(), database)
+                .update(new Contexts());
+    }
+
+    // Ники собираются из слогов, поэтому у подстрок есть и частые, и редкие совпадения, как у живых ников
+    private void seed(Connection connection) throws SQLException {
+        int existing = count(connection);
+        if (existing >= rows) {
+            return;
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement("""
+                INSERT INTO users_scheme._user (username, email, password_hash)
+                VALUES (?, ?, 'bench')""")) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = existing; i < rows; i++) {
+                StringBuilder username = new StringBuilder();
+                int parts = 2 + random.nextInt(3);
+                for (int p = 0; p < parts; p++) {
+                    username.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+                }
+                username.append(i);
+                insert.setString(1, username.toString());
+                insert.setString(2, username + "@bench.local");
+                insert.addBatch();
+                if (i % 10_000 == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE users_scheme._user");
+        }
+    }
+
+    private static int count(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT count(*) FROM users_scheme._user")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
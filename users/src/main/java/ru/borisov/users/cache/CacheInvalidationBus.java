@@ -0,0 +1,231 @@
+package ru.borisov.users.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Шина инвалидации локальных кэшей между репликами поверх Postgres LISTEN/NOTIFY.
+// Формат сообщения: nodeId|region|key1,key2,...
+@Component
+@Log4j2
+public class CacheInvalidationBus {
+
+    private static final String CHANNEL = "users_cache_invalidation";
+    private static final String SEPARATOR = "|";
+    private static final String KEY_SEPARATOR = ",";
+    // лимит payload у NOTIFY 8000 байт, оставляем запас под nodeId и регион
+    private static final int MAX_PAYLOAD_BYTES = 7000;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, RegionHandler> handlers = new ConcurrentHashMap<>();
+    // полные перестроения после переподключения: слушатель только раздает их и сразу возвращается к каналу
+    private final ExecutorService rebuildExecutor = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "cache-invalidation-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final boolean enabled;
+    private final Duration pollTimeout;
+    private final Duration reconnectDelay;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    public CacheInvalidationBus(JdbcTemplate jdbcTemplate,
+                                DataSourceProperties dataSourceProperties,
+                                @Value("${users.cache-bus.enabled}") boolean enabled,
+                                @Value("${users.cache-bus.poll-timeout}") Duration pollTimeout,
+                                @Value("${users.cache-bus.reconnect-delay}") Duration reconnectDelay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.enabled = enabled;
+        this.pollTimeout = pollTimeout;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    public void register(String region, Consumer<String> evict, Runnable evictAll) {
+        handlers.put(region, new RegionHandler(region, evict, evictAll));
+    }
+
+    // NOTIFY внутри транзакции доставляется только после коммита, вне транзакции - сразу
+    public void publish(String region, Collection<?> keys) {
+
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        StringBuilder chunk = new StringBuilder();
+        for (Object key : keys) {
+            String value = key.toString();
+            if (!chunk.isEmpty() && chunk.length() + value.length() + 1 > MAX_PAYLOAD_BYTES) {
+                notify(region, chunk.toString());
+                chunk.setLength(0);
+            }
+            if (!chunk.isEmpty()) {
+                chunk.append(KEY_SEPARATOR);
+            }
+            chunk.append(value);
+        }
+        notify(region, chunk.toString());
+    }
+
+    @PostConstruct
+    void start() {
+
+        if (!enabled) {
+            log.info("Шина инвалидации кэшей отключена");
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "cache-invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    void stop() {
+
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+        rebuildExecutor.shutdownNow();
+    }
+
+    private void notify(String region, String keys) {
+        String payload = nodeId + SEPARATOR + region + SEPARATOR + keys;
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, payload);
+    }
+
+    private void listen() {
+
+        boolean reconnect = false;
+        while (running) {
+            // отдельное соединение вне пула: LISTEN держит его все время работы сервиса
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                log.info("Узел {} подписан на канал инвалидации кэшей {}", nodeId, CHANNEL);
+                if (reconnect) {
+                    // пока соединения не было, сообщения могли потеряться
+                    invalidateAll();
+                }
+                reconnect = true;
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollTimeout.toMillis());
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Потеряно соединение шины инвалидации кэшей, переподключение через {}", reconnectDelay, e);
+                try {
+                    Thread.sleep(reconnectDelay.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+
+        String[] parts = payload.split("\\" + SEPARATOR, 3);
+        if (parts.length != 3) {
+            log.warn("Некорректное сообщение шины инвалидации: {}", payload);
+            return;
+        }
+        if (nodeId.equals(parts[0])) {
+            return;
+        }
+        RegionHandler handler = handlers.get(parts[1]);
+        if (handler == null) {
+            return;
+        }
+        for (String key : parts[2].split(KEY_SEPARATOR)) {
+            try {
+                handler.evict.accept(key);
+            } catch (RuntimeException e) {
+                log.error("Ошибка инвалидации ключа {} в регионе {}", key, parts[1], e);
+            }
+        }
+    }
+
+    private void invalidateAll() {
+        handlers.values().forEach(this::scheduleEvictAll);
+    }
+
+    // Одно перестроение региона за раз: повторный запрос во время перестроения запускает еще одно после него
+    private void scheduleEvictAll(RegionHandler handler) {
+
+        handler.pending.set(true);
+        if (handler.rebuilding.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> runEvictAll(handler));
+        }
+    }
+
+    private void runEvictAll(RegionHandler handler) {
+
+        do {
+            while (handler.pending.getAndSet(false)) {
+                try {
+                    handler.evictAll.run();
+                } catch (RuntimeException e) {
+                    log.error("Ошибка полной инвалидации региона {}", handler.region, e);
+                }
+            }
+            handler.rebuilding.set(false);
+            // запрос мог прийти между последней проверкой и снятием флага
+        } while (handler.pending.get() && handler.rebuilding.compareAndSet(false, true));
+    }
+
+    private static final class RegionHandler {
+
+        private final String region;
+        private final Consumer<String> evict;
+        private final Runnable evictAll;
+        private final AtomicBoolean rebuilding = new AtomicBoolean();
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        private RegionHandler(String region, Consumer<String> evict, Runnable evictAll) {
+            this.region = region;
+            this.evict = evict;
+            this.evictAll = evictAll;
+        }
+    }
+}
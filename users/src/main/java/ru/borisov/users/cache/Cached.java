@@ -0,0 +1,18 @@
+package ru.borisov.users.cache;
+
+// Значение из кэша с признаком устаревания: stale=true, если его не удалось или не успели обновить из БД
+public record Cached<T>(T value, boolean stale) {
+
+    public static <T> Cached<T> fresh(T value) {
+        return new Cached<>(value, false);
+    }
+
+    public static <T> Cached<T> stale(T value) {
+        return new Cached<>(value, true);
+    }
+
+    // для SuccessResponse: поле stale выводится только у устаревших ответов
+    public Boolean staleFlag() {
+        return stale ? Boolean.TRUE : null;
+    }
+}
@@ -0,0 +1,158 @@
+package ru.borisov.users.cache;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+// Неизменяемый список смежности в формате CSR вне кучи: offsets[node]..offsets[node + 1] - отрезок targets
+// с отсортированными соседями узла. Прямой буфер адресуется int, поэтому ребер не больше ~536 млн.
+// Занимает 4 * (ребра + узлы + 1) байт
+final class CsrAdjacency {
+
+    static final CsrAdjacency EMPTY = new CsrAdjacency(0, 0);
+
+    private static final int MAX_EDGES = Integer.MAX_VALUE / Integer.BYTES;
+
+    private final int nodes;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+
+    private CsrAdjacency(int nodes, int edges) {
+        this.nodes = nodes;
+        this.offsets = DirectBuffers.allocate(((long) nodes + 1) * Integer.BYTES).asIntBuffer();
+        this.targets = DirectBuffers.allocate((long) edges * Integer.BYTES).asIntBuffer();
+    }
+
+    // Строит CSR из пар (from << 32 | to); reverse - по входящим ребрам (to -> from)
+    static CsrAdjacency build(LongBuffer edges, int count, int nodes, boolean reverse) {
+
+        CsrAdjacency csr = new CsrAdjacency(nodes, count);
+        IntBuffer offsets = csr.offsets;
+        // степени узлов сдвигом на один, затем префиксные суммы - начала отрезков
+        for (int i = 0; i < count; i++) {
+            int node = source(edges.get(i), reverse) + 1;
+            offsets.put(node, offsets.get(node) + 1);
+        }
+        for (int node = 1; node <= nodes; node++) {
+            offsets.put(node, offsets.get(node) + offsets.get(node - 1));
+        }
+        // offsets[node] используется как позиция записи; после заполнения это конец отрезка, сдвигаем обратно
+        for (int i = 0; i < count; i++) {
+            long edge = edges.get(i);
+            int node = source(edge, reverse);
+            int position = offsets.get(node);
+            csr.targets.put(position, target(edge, reverse));
+            offsets.put(node, position + 1);
+        }
+        for (int node = nodes; node > 0; node--) {
+            offsets.put(node, offsets.get(node - 1));
+        }
+        offsets.put(0, 0);
+
+        int[] row = new int[0];
+        for (int node = 0; node < nodes; node++) {
+            int start = csr.start(node);
+            int degree = csr.end(node) - start;
+            if (degree > 1) {
+                if (row.length < degree) {
+                    row = new int[degree];
+                }
+                csr.targets.get(start, row, 0, degree);
+                Arrays.sort(row, 0, degree);
+                csr.targets.put(start, row, 0, degree);
+            }
+        }
+        return csr;
+    }
+
+    // Новый CSR из base с примененными изменениями delta. Первый проход считает ребра, второй - записывает
+    static CsrAdjacency merge(CsrAdjacency base, EdgeDelta delta, int nodes) {
+
+        long edges = 0;
+        for (int node = 0; node < nodes; node++) {
+            edges = mergeRow(base, delta, node, null, edges);
+        }
+        if (edges > MAX_EDGES) {
+            throw new IllegalStateException("Граф подписок не помещается в CSR: " + edges + " ребер");
+        }
+        CsrAdjacency merged = new CsrAdjacency(nodes, (int) edges);
+        long position = 0;
+        for (int node = 0; node < nodes; node++) {
+            merged.offsets.put(node, (int) position);
+            position = mergeRow(base, delta, node, merged.targets, position);
+        }
+        merged.offsets.put(nodes, (int) position);
+        return merged;
+    }
+
+    int start(int node) {
+        return node < nodes ? offsets.get(node) : 0;
+    }
+
+    int end(int node) {
+        return node < nodes ? offsets.get(node + 1) : 0;
+    }
+
+    int targetAt(int index) {
+        return targets.get(index);
+    }
+
+    // Позиция первого соседа node, не меньшего target
+    int lowerBound(int node, int target) {
+        int low = start(node);
+        int high = end(node);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (targets.get(middle) < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    boolean contains(int node, int target) {
+        int index = lowerBound(node, target);
+        return index < end(node) && targets.get(index) == target;
+    }
+
+    long sizeInBytes() {
+        return (long) (offsets.capacity() + targets.capacity()) * Integer.BYTES;
+    }
+
+    private static long mergeRow(CsrAdjacency base, EdgeDelta delta, int node, IntBuffer out, long position) {
+
+        int i = base.start(node);
+        int baseEnd = base.end(node);
+        int j = delta.lowerBound(node, 0);
+        int deltaEnd = delta.end(node);
+        while (i < baseEnd || j < deltaEnd) {
+            int fromBase = i < baseEnd ? base.targetAt(i) : Integer.MAX_VALUE;
+            int fromDelta = j < deltaEnd ? delta.toAt(j) : Integer.MAX_VALUE;
+            int target = Math.min(fromBase, fromDelta);
+            boolean present = true;
+            if (fromBase == target) {
+                i++;
+            }
+            if (fromDelta == target) {
+                present = delta.presentAt(j++);
+            }
+            if (present) {
+                if (out != null) {
+                    out.put((int) position, target);
+                }
+                position++;
+            }
+        }
+        return position;
+    }
+
+    private static int source(long edge, boolean reverse) {
+        return reverse ? (int) edge : (int) (edge >>> 32);
+    }
+
+    private static int target(long edge, boolean reverse) {
+        return reverse ? (int) (edge >>> 32) : (int) edge;
+    }
+}
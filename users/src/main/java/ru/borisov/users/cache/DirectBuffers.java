@@ -0,0 +1,19 @@
+package ru.borisov.users.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Прямые буферы графа подписок вне кучи. Память выведенного из работы буфера возвращается после его сборки GC;
+// при нехватке прямой памяти JDK сам вызывает System.gc(), поэтому -XX:+DisableExplicitGC не включаем
+final class DirectBuffers {
+
+    private DirectBuffers() {
+    }
+
+    static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Прямой буфер не может быть больше 2 ГБ: запрошено " + bytes + " байт");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,283 @@
+package ru.borisov.users.cache;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.borisov.users.controller.response.DirectoryFacets;
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Счетчики пользователей по ячейкам город x пол x возрастная группа. Фасеты каталога суммируются по ячейкам
+// в памяти вместо GROUP BY на каждый запрос. Изменения профилей применяются инкрементально здесь и на остальных
+// репликах через шину инвалидации; раз в сутки счетчики пересчитываются заново, потому что люди взрослеют
+@Component
+@Log4j2
+public class DirectoryFacetCounter {
+
+    static final String REGION = "directory-facets";
+    private static final String FIELD_SEPARATOR = ".";
+    // сколько раз подряд пересчитываются ячейки, изменившиеся во время предыдущего пересчета
+    private static final int MAX_RECOUNT_PASSES = 3;
+
+    // Город нормализуется так же, как в normalizeCity: пробелы по краям отбрасываются, пустой город - без города
+    private static final String SELECT_CELLS = """
+            SELECT NULLIF(btrim(city), ''), gender, birth_date, count(*)
+            FROM users_scheme._user
+            WHERE NOT deleted
+            GROUP BY NULLIF(btrim(city), ''), gender, birth_date""";
+
+    private static final String COUNT_CELL = """
+            SELECT count(*)
+            FROM users_scheme._user
+            WHERE NOT deleted""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheInvalidationBus bus;
+    private final int cityFacetSize;
+
+    private final Object rebuildLock = new Object();
+    private volatile Map<FacetCell, AtomicLong> cells = new ConcurrentHashMap<>();
+    // ячейки, изменившиеся во время пересчета: снимок запроса мог как учесть, так и не учесть их изменения
+    private Set<FacetCell> changedDuringRebuild;
+
+    public DirectoryFacetCounter(JdbcTemplate jdbcTemplate,
+                                 CacheInvalidationBus bus,
+                                 @Value("${users.directory.city-facet-size}") int cityFacetSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bus = bus;
+        this.cityFacetSize = cityFacetSize;
+        bus.register(REGION, this::applyKey, this::rebuild);
+    }
+
+    public static FacetCell cellOf(String city, Gender gender, LocalDate birthDate) {
+        return new FacetCell(normalizeCity(city), gender, AgeBucket.of(birthDate, LocalDate.now()));
+    }
+
+    // Как NULLIF(btrim(city), '') в Postgres: btrim по умолчанию срезает только пробелы
+    public static String normalizeCity(String city) {
+        if (city == null) {
+            return null;
+        }
+        int start = 0;
+        int end = city.length();
+        while (start < end && city.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && city.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return start == end ? null : city.substring(start, end);
+    }
+
+    // Пользователь перешел из ячейки from в ячейку to; null - пользователя не было или больше нет
+    public void moved(FacetCell from, FacetCell to) {
+
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(2);
+        if (from != null && !from.isEmpty()) {
+            keys.add(encode(-1, from));
+        }
+        if (to != null && !to.isEmpty()) {
+            keys.add(encode(1, to));
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        Runnable apply = () -> keys.forEach(this::applyKey);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+        bus.publish(REGION, keys);
+    }
+
+    // Фасет по каждому полю считается с учетом фильтров по двум другим полям
+    public DirectoryFacets facets(String city, Gender gender, AgeBucket age) {
+
+        Map<String, Long> cities = new HashMap<>();
+        Map<Gender, Long> genders = new EnumMap<>(Gender.class);
+        Map<AgeBucket, Long> ages = new EnumMap<>(AgeBucket.class);
+        cells.forEach((cell, counter) -> {
+            long count = counter.get();
+            if (count <= 0) {
+                return;
+            }
+            boolean cityMatches = city == null || city.equals(cell.city());
+            boolean genderMatches = gender == null || gender == cell.gender();
+            boolean ageMatches = age == null || age == cell.age();
+            if (cell.city() != null && genderMatches && ageMatches) {
+                cities.merge(cell.city(), count, Long::sum);
+            }
+            if (cell.gender() != null && cityMatches && ageMatches) {
+                genders.merge(cell.gender(), count, Long::sum);
+            }
+            if (cell.age() != null && cityMatches && genderMatches) {
+                ages.merge(cell.age(), count, Long::sum);
+            }
+        });
+
+        Map<String, Long> topCities = new LinkedHashMap<>();
+        cities.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(cityFacetSize)
+                .forEach(entry -> topCities.put(entry.getKey(), entry.getValue()));
+        return new DirectoryFacets(topCities, genders, ages);
+    }
+
+    // Изменение, пришедшее во время пересчета, могло попасть в снимок запроса, а могло и нет. Поэтому
+    // ячейки с такими изменениями после замены счетчиков пересчитываются отдельными запросами, пока
+    // изменения не перестанут приходить
+    @EventListener(ApplicationStartedEvent.class)
+    @Scheduled(cron = "${users.directory.facets-rebuild-cron}")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            LocalDate today = LocalDate.now();
+            try {
+                Set<FacetCell> changed = replaceCells(countAll(today));
+                for (int pass = 1; !changed.isEmpty(); pass++) {
+                    if (pass > MAX_RECOUNT_PASSES) {
+                        log.warn("Ячейки фасетов продолжают меняться во время пересчета, {} ячеек будут уточнены "
+                                + "при следующем пересчете", changed.size());
+                        break;
+                    }
+                    changed.forEach(cell -> cells.computeIfAbsent(cell, c -> new AtomicLong()).set(count(cell, today)));
+                    changed = restartTracking(pass < MAX_RECOUNT_PASSES);
+                }
+            } finally {
+                restartTracking(false);
+            }
+            log.info("Фасеты каталога пользователей пересчитаны: {} ячеек", cells::size);
+        }
+    }
+
+    private Map<FacetCell, AtomicLong> countAll(LocalDate today) {
+
+        synchronized (this) {
+            changedDuringRebuild = ConcurrentHashMap.newKeySet();
+        }
+        Map<FacetCell, AtomicLong> rebuilt = new ConcurrentHashMap<>();
+        jdbcTemplate.query(SELECT_CELLS, row -> {
+            String genderValue = row.getString(2);
+            Date birthDate = row.getDate(3);
+            FacetCell cell = new FacetCell(
+                    row.getString(1),
+                    genderValue == null ? null : Gender.valueOf(genderValue),
+                    birthDate == null ? null : AgeBucket.of(birthDate.toLocalDate(), today));
+            if (!cell.isEmpty()) {
+                rebuilt.computeIfAbsent(cell, c -> new AtomicLong()).addAndGet(row.getLong(4));
+            }
+        });
+        return rebuilt;
+    }
+
+    private synchronized Set<FacetCell> replaceCells(Map<FacetCell, AtomicLong> rebuilt) {
+        cells = rebuilt;
+        return restartTracking(true);
+    }
+
+    // Возвращает ячейки, изменившиеся с прошлого вызова, и при track продолжает отслеживать изменения
+    private synchronized Set<FacetCell> restartTracking(boolean track) {
+        Set<FacetCell> changed = changedDuringRebuild == null ? Set.of() : changedDuringRebuild;
+        changedDuringRebuild = track ? ConcurrentHashMap.newKeySet() : null;
+        return changed;
+    }
+
+    private long count(FacetCell cell, LocalDate today) {
+
+        StringBuilder sql = new StringBuilder(COUNT_CELL);
+        List<Object> args = new ArrayList<>();
+        if (cell.city() == null) {
+            sql.append(" AND NULLIF(btrim(city), '') IS NULL");
+        } else {
+            sql.append(" AND btrim(city) = ?");
+            args.add(cell.city());
+        }
+        if (cell.gender() == null) {
+            sql.append(" AND gender IS NULL");
+        } else {
+            sql.append(" AND gender = ?");
+            args.add(cell.gender().name());
+        }
+        if (cell.age() == null) {
+            sql.append(" AND birth_date IS NULL");
+        } else {
+            sql.append(" AND birth_date <= ?");
+            args.add(Date.valueOf(cell.age().bornNotAfter(today)));
+            LocalDate bornAfter = cell.age().bornAfter(today);
+            if (bornAfter != null) {
+                sql.append(" AND birth_date > ?");
+                args.add(Date.valueOf(bornAfter));
+            }
+        }
+        Long count = jdbcTemplate.queryForObject(sql.toString(), Long.class, args.toArray());
+        return count == null ? 0 : count;
+    }
+
+    private void applyKey(String key) {
+        int delta = key.charAt(0) == '-' ? -1 : 1;
+        FacetCell cell = decode(key.substring(1));
+        markChanged(cell);
+        cells.computeIfAbsent(cell, c -> new AtomicLong()).addAndGet(delta);
+    }
+
+    private synchronized void markChanged(FacetCell cell) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(cell);
+        }
+    }
+
+    // Ключ шины: знак, затем город в Base64url (в названии могут быть запятые), пол и возрастная группа
+    private static String encode(int delta, FacetCell cell) {
+        String city = cell.city() == null ? ""
+                : Base64.getUrlEncoder().withoutPadding().encodeToString(cell.city().getBytes(StandardCharsets.UTF_8));
+        return (delta < 0 ? "-" : "+")
+                + city + FIELD_SEPARATOR
+                + (cell.gender() == null ? "" : cell.gender().name()) + FIELD_SEPARATOR
+                + (cell.age() == null ? "" : cell.age().name());
+    }
+
+    private static FacetCell decode(String value) {
+        String[] parts = value.split("\\" + FIELD_SEPARATOR, -1);
+        return new FacetCell(
+                parts[0].isEmpty() ? null : new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8),
+                parts[1].isEmpty() ? null : Gender.valueOf(parts[1]),
+                parts[2].isEmpty() ? null : AgeBucket.valueOf(parts[2]));
+    }
+
+    public record FacetCell(String city, Gender gender, AgeBucket age) {
+
+        boolean isEmpty() {
+            return city == null && gender == null && age == null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.borisov.users.cache;
+
+import java.util.Arrays;
+
+// Последние изменения ребер поверх неизменяемого CSR: отсортированные ключи (from << 32 | to) и состояние
+// ребра после изменения. Ребра одного узла лежат подряд, поэтому соседи узла находятся бинарным поиском.
+// Не потокобезопасен, доступ - под замком FollowGraphIndex
+final class EdgeDelta {
+
+    static final int ABSENT = -1;
+    static final int REMOVED = 0;
+    static final int PRESENT = 1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private boolean[] present = new boolean[INITIAL_CAPACITY];
+    private int size;
+
+    void put(int from, int to, boolean state) {
+
+        long key = key(from, to);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            present[index] = state;
+            return;
+        }
+        int at = -index - 1;
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            present = Arrays.copyOf(present, size * 2);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(present, at, present, at + 1, size - at);
+        keys[at] = key;
+        present[at] = state;
+        size++;
+    }
+
+    // Переносит изменения более новой дельты поверх этой
+    void putAll(EdgeDelta newer) {
+        for (int i = 0; i < newer.size; i++) {
+            put((int) (newer.keys[i] >>> 32), (int) newer.keys[i], newer.present[i]);
+        }
+    }
+
+    int state(int from, int to) {
+        int index = Arrays.binarySearch(keys, 0, size, key(from, to));
+        if (index < 0) {
+            return ABSENT;
+        }
+        return present[index] ? PRESENT : REMOVED;
+    }
+
+    // Позиция первого изменения ребра from -> x, где x >= to
+    int lowerBound(int from, int to) {
+        int index = Arrays.binarySearch(keys, 0, size, key(from, to));
+        return index >= 0 ? index : -index - 1;
+    }
+
+    int end(int from) {
+        return lowerBound(from + 1, 0);
+    }
+
+    int toAt(int index) {
+        return (int) keys[index];
+    }
+
+    boolean presentAt(int index) {
+        return present[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // номера неотрицательные, поэтому порядок ключей - по from, затем по to
+    private static long key(int from, int to) {
+        return (long) from << 32 | to;
+    }
+}
@@ -0,0 +1,490 @@
+package ru.borisov.users.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.error.Code;
+
+import java.nio.LongBuffer;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+// Граф подписок в памяти процесса: плотные номера пользователей из UserOrdinalRegistry, исходящие и входящие
+// ребра - отсортированные int-массивы в CSR вне кучи, свежие изменения - в небольших дельтах поверх CSR,
+// которые периодически вливаются в новый CSR. Проверка подписки и обход соседей не выделяют память.
+// Загружается при старте, обновляется после коммита здесь и на остальных репликах через шину инвалидации.
+// Память вне кучи: пара CSR - 8 байт на подписку и 8 на пользователя, буфер загрузки - еще 8 байт на подписку;
+// при уплотнении и перезагрузке рядом живет вторая пара. Итого до ~24 байт на подписку и 16 на пользователя,
+// бюджет -XX:MaxDirectMemorySize считается в k8s вместе с off-heap Ehcache. Если граф не поместился,
+// индекс остается незагруженным, и вызывающие идут в БД
+@Component
+@Log4j2
+public class FollowGraphIndex {
+
+    static final String REGION = "follow-graph";
+    private static final int FETCH_SIZE = 1000;
+    private static final int SCAN_BATCH = 256;
+    private static final int INITIAL_EDGES = 1 << 16;
+    private static final char FOLLOW = '+';
+    private static final char UNFOLLOW = '-';
+    private static final char REMOVE_USER = 'x';
+    private static final char EDGE_SEPARATOR = '>';
+
+    private static final String SELECT_ALL = """
+            SELECT s.from_user_fk, s.to_user_fk
+            FROM users_scheme.subscription s
+                     JOIN users_scheme._user f ON f.id = s.from_user_fk
+                     JOIN users_scheme._user t ON t.id = s.to_user_fk
+            WHERE NOT f.deleted AND NOT t.deleted""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final CacheInvalidationBus bus;
+    private final UserOrdinalRegistry ordinals;
+    private final int compactThreshold;
+
+    // StampedLock не выделяет память на захват чтения. Все слои меняются только под write lock
+    private final StampedLock lock = new StampedLock();
+    private final Layers following = new Layers();
+    private final Layers followers = new Layers();
+    // используется только внутри synchronized rebuild
+    private final EdgeBuffer loadBuffer = new EdgeBuffer();
+    private volatile boolean loaded;
+    // ведутся ли дельты: после неудачной загрузки изменения не копятся до следующей перезагрузки
+    private boolean tracking = true;
+
+    public FollowGraphIndex(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            CacheInvalidationBus bus,
+                            UserOrdinalRegistry ordinals,
+                            MeterRegistry meterRegistry,
+                            @Value("${users.follow-graph.compact-threshold}") int compactThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.bus = bus;
+        this.ordinals = ordinals;
+        this.compactThreshold = compactThreshold;
+        Gauge.builder("users.follow.graph.bytes", this, FollowGraphIndex::sizeInBytes)
+                .register(meterRegistry);
+        bus.register(REGION, this::applyKey, this::rebuild);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean follows(UUID userId, UUID targetId) {
+
+        checkLoaded();
+        int from = ordinals.indexOf(userId);
+        int to = ordinals.indexOf(targetId);
+        if (from < 0 || to < 0) {
+            return false;
+        }
+        long stamp = lock.readLock();
+        try {
+            return following.contains(from, to);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Взаимные подписки пользователя в порядке id. after - последний пользователь предыдущей страницы или null.
+    // Подписки обходятся целиком: номера у каждой реплики свои и с порядком id не совпадают
+    public List<UUID> mutual(UUID userId, UUID after, int limit) {
+
+        checkLoaded();
+        IdPage page = new IdPage(after, limit);
+        int user = ordinals.indexOf(userId);
+        if (user < 0) {
+            return page.toList();
+        }
+        int[] batch = new int[SCAN_BATCH];
+        long stamp = lock.readLock();
+        try {
+            int cursor = -1;
+            int count;
+            do {
+                count = following.scan(user, cursor, batch);
+                for (int i = 0; i < count; i++) {
+                    if (following.contains(batch[i], user)) {
+                        page.offer(ordinals.userAt(batch[i]));
+                    }
+                }
+                if (count > 0) {
+                    cursor = batch[count - 1];
+                }
+            } while (count == batch.length);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return page.toList();
+    }
+
+    // Изменение подписок: локально после коммита, остальным репликам - NOTIFY, который
+    // Postgres доставит тоже только после коммита
+    public void followed(UUID userId, Collection<UUID> targetIds) {
+        changed(userId, targetIds, true);
+    }
+
+    public void unfollowed(UUID userId, Collection<UUID> targetIds) {
+        changed(userId, targetIds, false);
+    }
+
+    public void userRemoved(UUID userId) {
+        afterCommit(() -> removeUser(userId));
+        bus.publish(REGION, List.of(REMOVE_USER + userId.toString()));
+    }
+
+    // Снимок БД читается поверх замороженных дельт: до загрузки чтения видят прежний граф,
+    // изменения во время чтения копятся в новых дельтах и остаются поверх нового CSR
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void rebuild() {
+
+        long stamp = lock.writeLock();
+        try {
+            tracking = true;
+            following.freeze();
+            followers.freeze();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        EdgeBuffer edges = loadBuffer;
+        edges.clear();
+        int nodes;
+        CsrAdjacency out;
+        CsrAdjacency in;
+        try {
+            // курсор с fetch size работает только внутри транзакции
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(SELECT_ALL);
+                statement.setFetchSize(FETCH_SIZE);
+                return statement;
+            }, row -> edges.add(
+                    ordinals.ordinalOf(row.getObject(1, UUID.class)),
+                    ordinals.ordinalOf(row.getObject(2, UUID.class)))));
+            nodes = ordinals.size();
+            out = CsrAdjacency.build(edges.edges, edges.size, nodes, false);
+            in = CsrAdjacency.build(edges.edges, edges.size, nodes, true);
+        } catch (OutOfMemoryError | IllegalStateException e) {
+            // прямой памяти не хватило: сервис работает дальше без графа
+            unload();
+            log.error("Граф подписок не помещается в память вне кучи (-XX:MaxDirectMemorySize), "
+                    + "проверки подписок идут в БД до следующей перезагрузки графа", e);
+            return;
+        }
+
+        replaceBases(out, in);
+        loaded = true;
+        log.info("Граф подписок загружен: {} пользователей, {} подписок", nodes, edges.size);
+    }
+
+    // Вливает накопившиеся дельты в новый CSR. Слияние идет без замка по замороженным слоям,
+    // новые изменения в это время пишутся в свежие дельты
+    @Scheduled(fixedDelayString = "${users.follow-graph.compact-interval}")
+    public synchronized void compact() {
+
+        if (!loaded) {
+            return;
+        }
+        CsrAdjacency outBase;
+        CsrAdjacency inBase;
+        EdgeDelta outDelta;
+        EdgeDelta inDelta;
+        long stamp = lock.writeLock();
+        try {
+            if (following.active.size() < compactThreshold) {
+                return;
+            }
+            following.freeze();
+            followers.freeze();
+            outBase = following.base;
+            inBase = followers.base;
+            outDelta = following.frozen;
+            inDelta = followers.frozen;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        int nodes = ordinals.size();
+        CsrAdjacency out;
+        CsrAdjacency in;
+        try {
+            out = CsrAdjacency.merge(outBase, outDelta, nodes);
+            in = CsrAdjacency.merge(inBase, inDelta, nodes);
+        } catch (OutOfMemoryError | IllegalStateException e) {
+            // граф остается прежним, замороженные дельты вольются при следующем уплотнении
+            log.warn("Не хватило памяти вне кучи на уплотнение графа подписок", e);
+            return;
+        }
+
+        replaceBases(out, in);
+        log.debug("Граф подписок уплотнен: {} изменений влито в CSR", outDelta::size);
+    }
+
+    // Сбрасывает граф, чтобы выведенные CSR и буфер загрузки забрал GC
+    private void unload() {
+
+        long stamp = lock.writeLock();
+        try {
+            loaded = false;
+            tracking = false;
+            following.clear();
+            followers.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        loadBuffer.release();
+    }
+
+    private void replaceBases(CsrAdjacency out, CsrAdjacency in) {
+
+        long stamp = lock.writeLock();
+        try {
+            following.replaceBase(out);
+            followers.replaceBase(in);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void changed(UUID userId, Collection<UUID> targetIds, boolean present) {
+
+        if (targetIds.isEmpty()) {
+            return;
+        }
+        List<UUID> targets = List.copyOf(targetIds);
+        afterCommit(() -> targets.forEach(targetId -> apply(userId, targetId, present)));
+        char type = present ? FOLLOW : UNFOLLOW;
+        bus.publish(REGION, targets.stream()
+                .map(targetId -> type + userId.toString() + EDGE_SEPARATOR + targetId)
+                .toList());
+    }
+
+    private void applyKey(String key) {
+
+        if (key.charAt(0) == REMOVE_USER) {
+            removeUser(UUID.fromString(key.substring(1)));
+            return;
+        }
+        int separator = key.indexOf(EDGE_SEPARATOR);
+        apply(UUID.fromString(key.substring(1, separator)),
+                UUID.fromString(key.substring(separator + 1)),
+                key.charAt(0) == FOLLOW);
+    }
+
+    private void apply(UUID userId, UUID targetId, boolean present) {
+
+        int from = ordinals.ordinalOf(userId);
+        int to = ordinals.ordinalOf(targetId);
+        long stamp = lock.writeLock();
+        try {
+            if (tracking) {
+                following.put(from, to, present);
+                followers.put(to, from, present);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void removeUser(UUID userId) {
+
+        int user = ordinals.indexOf(userId);
+        if (user < 0) {
+            return;
+        }
+        int[] batch = new int[SCAN_BATCH];
+        long stamp = lock.writeLock();
+        try {
+            if (tracking) {
+                removeEdges(following, followers, user, batch);
+                removeEdges(followers, following, user, batch);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Удаляет ребра node в direction и зеркальные им в reverse. Удаления пишутся в текущую дельту,
+    // следующая порция соседей читается после последнего обработанного
+    private static void removeEdges(Layers direction, Layers reverse, int node, int[] batch) {
+        int after = -1;
+        int count;
+        do {
+            count = direction.scan(node, after, batch);
+            for (int i = 0; i < count; i++) {
+                direction.put(node, batch[i], false);
+                reverse.put(batch[i], node, false);
+            }
+            if (count > 0) {
+                after = batch[count - 1];
+            }
+        } while (count == batch.length);
+    }
+
+    private void checkLoaded() {
+        if (!loaded) {
+            throw new CommonException(Code.SERVICE_UNAVAILABLE,
+                    "Граф подписок еще загружается, повторите запрос позже",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private long sizeInBytes() {
+        long stamp = lock.readLock();
+        try {
+            return following.base.sizeInBytes() + followers.base.sizeInBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // Слои одного направления: CSR, замороженная на время слияния дельта и текущая дельта.
+    // Состояние ребра определяет верхний слой, в котором оно есть
+    private static final class Layers {
+
+        private CsrAdjacency base = CsrAdjacency.EMPTY;
+        private EdgeDelta frozen;
+        private EdgeDelta active = new EdgeDelta();
+
+        void put(int from, int to, boolean present) {
+            active.put(from, to, present);
+        }
+
+        boolean contains(int from, int to) {
+            int state = active.state(from, to);
+            if (state == EdgeDelta.ABSENT && frozen != null) {
+                state = frozen.state(from, to);
+            }
+            return state == EdgeDelta.ABSENT ? base.contains(from, to) : state == EdgeDelta.PRESENT;
+        }
+
+        // Слияние трех отсортированных последовательностей соседей: CSR, замороженной и текущей дельты
+        int scan(int node, int after, int[] into) {
+
+            int i = base.lowerBound(node, after + 1);
+            int baseEnd = base.end(node);
+            int j = frozen == null ? 0 : frozen.lowerBound(node, after + 1);
+            int frozenEnd = frozen == null ? 0 : frozen.end(node);
+            int k = active.lowerBound(node, after + 1);
+            int activeEnd = active.end(node);
+            int count = 0;
+            while (count < into.length && (i < baseEnd || j < frozenEnd || k < activeEnd)) {
+                int fromBase = i < baseEnd ? base.targetAt(i) : Integer.MAX_VALUE;
+                int fromFrozen = j < frozenEnd ? frozen.toAt(j) : Integer.MAX_VALUE;
+                int fromActive = k < activeEnd ? active.toAt(k) : Integer.MAX_VALUE;
+                int target = Math.min(fromBase, Math.min(fromFrozen, fromActive));
+                boolean present = true;
+                if (fromBase == target) {
+                    i++;
+                }
+                if (fromFrozen == target) {
+                    present = frozen.presentAt(j++);
+                }
+                if (fromActive == target) {
+                    present = active.presentAt(k++);
+                }
+                if (present) {
+                    into[count++] = target;
+                }
+            }
+            return count;
+        }
+
+        void freeze() {
+            if (frozen == null) {
+                frozen = active;
+            } else {
+                // предыдущее слияние не завершилось: изменения не теряем
+                frozen.putAll(active);
+            }
+            active = new EdgeDelta();
+        }
+
+        void replaceBase(CsrAdjacency merged) {
+            base = merged;
+            frozen = null;
+        }
+
+        void clear() {
+            base = CsrAdjacency.EMPTY;
+            frozen = null;
+            active = new EdgeDelta();
+        }
+    }
+
+    // Ребра при загрузке копятся вне кучи парами (from << 32 | to). Буфер один на все перезагрузки:
+    // растет только вместе с графом, и каждая перезагрузка не оставляет GC новый буфер на сотни мегабайт
+    private static final class EdgeBuffer {
+
+        // прямой буфер адресуется int
+        private static final int MAX_EDGES = Integer.MAX_VALUE / Long.BYTES;
+        private static final LongBuffer EMPTY_EDGES = LongBuffer.allocate(0);
+
+        private LongBuffer edges = EMPTY_EDGES;
+        private int size;
+
+        void add(int from, int to) {
+            if (size == edges.capacity()) {
+                grow();
+            }
+            edges.put(size++, (long) from << 32 | to);
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void release() {
+            edges = EMPTY_EDGES;
+            size = 0;
+        }
+
+        private void grow() {
+            if (size == MAX_EDGES) {
+                throw new IllegalStateException("Граф подписок не помещается в буфер загрузки: больше "
+                        + MAX_EDGES + " ребер");
+            }
+            LongBuffer grown = allocate((int) Math.max(INITIAL_EDGES, Math.min((long) size * 2, MAX_EDGES)));
+            grown.put(0, edges, 0, size);
+            edges = grown;
+        }
+
+        private static LongBuffer allocate(int capacity) {
+            return DirectBuffers.allocate((long) capacity * Long.BYTES).asLongBuffer();
+        }
+    }
+}
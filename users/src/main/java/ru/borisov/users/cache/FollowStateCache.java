@@ -0,0 +1,93 @@
+package ru.borisov.users.cache;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Component
+public class FollowStateCache {
+
+    private static final String CACHE_NAME = "follow-state";
+
+    private final Cache<String, Boolean> cache;
+    private final CacheInvalidationBus bus;
+
+    // размер и TTL кэша заданы в ehcache.xml
+    public FollowStateCache(CacheManager cacheManager, CacheInvalidationBus bus) {
+
+        this.cache = cacheManager.getCache(CACHE_NAME, String.class, Boolean.class);
+        if (cache == null) {
+            throw new IllegalStateException("Кэш " + CACHE_NAME + " не объявлен в ehcache.xml");
+        }
+        this.bus = bus;
+        bus.register(CACHE_NAME, cache::remove, cache::removeAll);
+    }
+
+    // Возвращает состояние подписки для всех кандидатов, недостающие значения загружает одним запросом
+    public Map<UUID, Boolean> getAll(UUID viewerId,
+                                     Collection<UUID> candidateIds,
+                                     Function<Collection<UUID>, Set<UUID>> loader) {
+
+        Map<String, UUID> keys = candidateIds.stream()
+                .collect(Collectors.toMap(id -> key(viewerId, id), id -> id, (a, b) -> a, LinkedHashMap::new));
+        Map<String, Boolean> cached = cache.getAll(keys.keySet());
+
+        Map<UUID, Boolean> result = new LinkedHashMap<>();
+        Map<String, UUID> missing = new LinkedHashMap<>();
+        keys.forEach((key, id) -> {
+            Boolean state = cached.get(key);
+            if (state == null) {
+                missing.put(key, id);
+            }
+            result.put(id, state);
+        });
+
+        if (!missing.isEmpty()) {
+            Set<UUID> followed = loader.apply(missing.values());
+            Map<String, Boolean> loaded = new HashMap<>();
+            missing.forEach((key, id) -> {
+                boolean state = followed.contains(id);
+                loaded.put(key, state);
+                result.put(id, state);
+            });
+            cache.putAll(loaded);
+        }
+        return result;
+    }
+
+    // Внутри транзакции сбрасываем кэш только после коммита, чтобы не закэшировать состояние до изменения.
+    // Остальные реплики получат NOTIFY тоже только после коммита
+    public void evict(UUID viewerId, Collection<UUID> candidateIds) {
+
+        Set<String> keys = candidateIds.stream()
+                .map(id -> key(viewerId, id))
+                .collect(Collectors.toSet());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.removeAll(keys);
+                }
+            });
+        } else {
+            cache.removeAll(keys);
+        }
+        bus.publish(CACHE_NAME, keys);
+    }
+
+    private static String key(UUID viewerId, UUID candidateId) {
+        return viewerId + ":" + candidateId;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.borisov.users.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Count-min sketch для оценки частоты обращений к ключу. Счетчики периодически делятся пополам,
+// чтобы частота отражала недавнюю нагрузку, а не всю историю
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final AtomicIntegerArray table;
+    private final AtomicInteger additions = new AtomicInteger();
+    private final int width;
+    private final int mask;
+    private final int sampleSize;
+
+    FrequencySketch(int width) {
+        if (width <= 0 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("Ширина sketch должна быть степенью двойки: " + width);
+        }
+        this.width = width;
+        this.mask = width - 1;
+        this.sampleSize = width * 10;
+        this.table = new AtomicIntegerArray(DEPTH * width);
+    }
+
+    // Увеличивает счетчики ключа и возвращает новую оценку частоты
+    int increment(Object key) {
+
+        int hash = key.hashCode();
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, table.incrementAndGet(row * width + index(hash, row)));
+        }
+        if (additions.incrementAndGet() == sampleSize) {
+            age();
+        }
+        return estimate;
+    }
+
+    // Деление пополам не атомарно относительно параллельных инкрементов, для приближенной оценки это допустимо
+    private void age() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, table.get(i) >>> 1);
+        }
+        additions.set(0);
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return h & mask;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.borisov.users.cache;
+
+import org.ehcache.UserManagedCache;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.builders.UserManagedCacheBuilder;
+
+import java.time.Duration;
+
+// Локальные кэши в heap: ehcache ограничивает число записей, при переполнении вытесняет давно не читанные
+// и удаляет записи старше ttl. Значения хранятся по ссылке, без копирования и сериализации
+final class HeapCaches {
+
+    private HeapCaches() {
+    }
+
+    static <K, V> UserManagedCache<K, V> create(Class<K> keyType, Class<V> valueType, long maxEntries, Duration ttl) {
+        return UserManagedCacheBuilder.newUserManagedCacheBuilder(keyType, valueType)
+                .withResourcePools(ResourcePoolsBuilder.heap(maxEntries))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(ttl))
+                .build(true);
+    }
+}
@@ -0,0 +1,148 @@
+package ru.borisov.users.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.ehcache.UserManagedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.borisov.users.controller.response.UserProfile;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.StreamSupport;
+
+// Защита от "горячих" профилей: параллельные запросы одного id разделяют одну загрузку (single-flight),
+// а часто запрашиваемые профили ненадолго закрепляются в локальном кэше
+@Component
+@Log4j2
+public class HotProfileCache {
+
+    private final Map<UUID, Load> inFlight = new ConcurrentHashMap<>();
+    // просроченные и вытесненные при переполнении записи ehcache удаляет сам
+    private final UserManagedCache<UUID, UserProfile> pinned;
+
+    private final FrequencySketch sketch;
+    private final int hotThreshold;
+
+    private final Counter pinnedHits;
+    private final Counter coalesced;
+    private final Counter loads;
+
+    public HotProfileCache(MeterRegistry meterRegistry,
+                           @Value("${users.hot-profiles.sketch-width}") int sketchWidth,
+                           @Value("${users.hot-profiles.hot-threshold}") int hotThreshold,
+                           @Value("${users.hot-profiles.pin-ttl}") Duration pinTtl,
+                           @Value("${users.hot-profiles.max-pinned}") int maxPinned) {
+        this.sketch = new FrequencySketch(sketchWidth);
+        this.hotThreshold = hotThreshold;
+        this.pinned = HeapCaches.create(UUID.class, UserProfile.class, maxPinned, pinTtl);
+
+        this.pinnedHits = lookups(meterRegistry, "pinned");
+        this.coalesced = lookups(meterRegistry, "coalesced");
+        this.loads = lookups(meterRegistry, "loaded");
+        // итератор ehcache пропускает просроченные записи, а закрепленных не больше max-pinned
+        meterRegistry.gauge("users.profile.pinned", Tags.empty(), pinned,
+                cache -> StreamSupport.stream(cache.spliterator(), false).count());
+    }
+
+    public UserProfile get(UUID id, Function<UUID, UserProfile> loader) {
+
+        int frequency = sketch.increment(id);
+
+        UserProfile hit = pinned.get(id);
+        if (hit != null) {
+            pinnedHits.increment();
+            return hit;
+        }
+
+        Load mine = new Load();
+        Load existing = inFlight.putIfAbsent(id, mine);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing.future);
+        }
+
+        try {
+            loads.increment();
+            UserProfile profile = loader.apply(id);
+            mine.future.complete(profile);
+            if (frequency >= hotThreshold) {
+                pin(id, profile, mine);
+            }
+            return profile;
+        } catch (RuntimeException | Error e) {
+            mine.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+
+    // Загрузку этого id больше не разделяем с новыми запросами и не закрепляем ее результат:
+    // она могла прочитать профиль до изменения. Загрузки других id не затрагиваются
+    public void invalidate(UUID id) {
+        Load load = inFlight.remove(id);
+        if (load != null) {
+            load.invalidated = true;
+        }
+        pinned.remove(id);
+    }
+
+    public void invalidateAll() {
+        inFlight.keySet().forEach(this::invalidate);
+        pinned.clear();
+    }
+
+    @PreDestroy
+    void close() {
+        pinned.close();
+    }
+
+    // Флаг проверяется после записи: если инвалидация пришла позже проверки, ее remove выполнится
+    // уже после нашего put и удалит запись сам
+    private void pin(UUID id, UserProfile profile, Load load) {
+
+        if (load.invalidated) {
+            return;
+        }
+        pinned.put(id, profile);
+        if (load.invalidated) {
+            pinned.remove(id, profile);
+            return;
+        }
+        log.debug("Профиль {} закреплен как горячий", id);
+    }
+
+    private static UserProfile await(CompletableFuture<UserProfile> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // ошибку загрузки (например, USER_NOT_FOUND) получают все ожидающие запросы
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("users.profile.lookups")
+                .description("Обращения к профилям пользователей по способу получения")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static final class Load {
+
+        private final CompletableFuture<UserProfile> future = new CompletableFuture<>();
+        private volatile boolean invalidated;
+    }
+}
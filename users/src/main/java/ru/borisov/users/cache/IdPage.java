@@ -0,0 +1,49 @@
+package ru.borisov.users.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+// Страница из limit наименьших id, больших курсора after. Порядок и курсор задаются самим id, а не номерами
+// UserOrdinalRegistry: номера у каждой реплики свои, и страница не должна зависеть от того, какая реплика ответила
+final class IdPage {
+
+    // Порядок uuid в Postgres - побайтовый, то есть беззнаковый; UUID.compareTo сравнивает половины со знаком.
+    // Страницы из памяти и из БД (ORDER BY id) должны совпадать, поэтому сравниваем как Postgres
+    static final Comparator<UUID> ORDER = (left, right) -> {
+        int high = Long.compareUnsigned(left.getMostSignificantBits(), right.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(left.getLeastSignificantBits(), right.getLeastSignificantBits());
+    };
+
+    private final UUID after;
+    private final int limit;
+    // наибольший из отобранных id на вершине: его вытесняет любой меньший кандидат
+    private final PriorityQueue<UUID> selected;
+
+    IdPage(UUID after, int limit) {
+        this.after = after;
+        this.limit = limit;
+        this.selected = new PriorityQueue<>(limit, ORDER.reversed());
+    }
+
+    void offer(UUID id) {
+
+        if (after != null && ORDER.compare(id, after) <= 0) {
+            return;
+        }
+        if (selected.size() < limit) {
+            selected.add(id);
+        } else if (ORDER.compare(id, selected.peek()) < 0) {
+            selected.poll();
+            selected.add(id);
+        }
+    }
+
+    List<UUID> toList() {
+        List<UUID> ids = new ArrayList<>(selected);
+        ids.sort(ORDER);
+        return ids;
+    }
+}
@@ -0,0 +1,59 @@
+package ru.borisov.users.cache;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+// Идущие сейчас загрузки по ключам. Инвалидация помечает только загрузки своего ключа: их результат
+// в кэш не попадает, а загрузки остальных ключей кэшируются как обычно
+final class PendingLoads<K> {
+
+    private final Map<K, Set<Load>> loads = new ConcurrentHashMap<>();
+
+    Load begin(K key) {
+        Load load = new Load();
+        loads.compute(key, (k, current) -> {
+            Set<Load> pending = current != null ? current : new HashSet<>();
+            pending.add(load);
+            return pending;
+        });
+        return load;
+    }
+
+    void end(K key, Load load) {
+        loads.computeIfPresent(key, (k, pending) -> {
+            pending.remove(load);
+            return pending.isEmpty() ? null : pending;
+        });
+    }
+
+    void invalidate(K key) {
+        loads.computeIfPresent(key, (k, pending) -> {
+            pending.forEach(load -> load.invalidated = true);
+            return pending;
+        });
+    }
+
+    void invalidateAll() {
+        loads.keySet().forEach(this::invalidate);
+    }
+
+    void invalidateIf(Predicate<? super K> condition) {
+        loads.keySet().stream()
+                .filter(condition)
+                .forEach(this::invalidate);
+    }
+
+    // Флаг нужно проверять после записи в кэш: если инвалидация пришла позже проверки,
+    // ее удаление выполнится уже после записи
+    static final class Load {
+
+        private volatile boolean invalidated;
+
+        boolean isInvalidated() {
+            return invalidated;
+        }
+    }
+}
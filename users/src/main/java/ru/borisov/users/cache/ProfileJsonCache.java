@@ -0,0 +1,102 @@
+package ru.borisov.users.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.ehcache.UserManagedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.borisov.users.controller.response.SuccessResponse;
+import ru.borisov.users.controller.response.UserProfile;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.function.Function;
+
+// Готовый UTF-8 JSON ответа GET /api/users/{id}: повторные чтения отдают байты без сборки ответа и Jackson
+@Component
+public class ProfileJsonCache {
+
+    private final UserManagedCache<UUID, Entry> entries;
+    private final PendingLoads<UUID> pendingLoads = new PendingLoads<>();
+
+    private final ObjectMapper objectMapper;
+
+    public ProfileJsonCache(ObjectMapper objectMapper,
+                            @Value("${users.profile-json.max-entries}") int maxEntries,
+                            @Value("${users.profile-json.ttl}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.entries = HeapCaches.create(UUID.class, Entry.class, maxEntries, ttl);
+    }
+
+    public byte[] get(UUID id, Function<UUID, Cached<UserProfile>> loader) {
+
+        Entry cached = entries.get(id);
+        if (cached != null) {
+            return cached.json();
+        }
+
+        // загрузка регистрируется до чтения: инвалидация, пришедшая во время нее, не даст закэшировать ответ
+        PendingLoads.Load load = pendingLoads.begin(id);
+        try {
+            Cached<UserProfile> loaded = loader.apply(id);
+            byte[] json = serialize(loaded);
+            // устаревший профиль не кэшируем: следующий запрос должен снова попробовать получить актуальный
+            if (!loaded.stale()) {
+                store(id, new Entry(loaded.value().updatedAt(), json), load);
+            }
+            return json;
+        } finally {
+            pendingLoads.end(id, load);
+        }
+    }
+
+    public void invalidate(UUID id) {
+        pendingLoads.invalidate(id);
+        entries.remove(id);
+    }
+
+    public void invalidateAll() {
+        pendingLoads.invalidateAll();
+        entries.clear();
+    }
+
+    @PreDestroy
+    void close() {
+        entries.close();
+    }
+
+    private void store(UUID id, Entry entry, PendingLoads.Load load) {
+
+        if (load.isInvalidated()) {
+            return;
+        }
+        // при гонке двух загрузок оставляем более свежую версию
+        Entry current = entries.putIfAbsent(id, entry);
+        while (current != null && entry.isNewerThan(current) && !entries.replace(id, current, entry)) {
+            current = entries.putIfAbsent(id, entry);
+        }
+        if (load.isInvalidated()) {
+            entries.remove(id, entry);
+        }
+    }
+
+    private byte[] serialize(Cached<UserProfile> profile) {
+        try {
+            return objectMapper.writeValueAsBytes(SuccessResponse.builder()
+                    .data(profile.value())
+                    .stale(profile.staleFlag())
+                    .build());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать профиль пользователя " + profile.value().id(), e);
+        }
+    }
+
+    private record Entry(LocalDateTime version, byte[] json) {
+
+        boolean isNewerThan(Entry other) {
+            return other.version() == null || (version != null && version.isAfter(other.version()));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.borisov.users.cache;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.repository.SkillRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+
+// Справочник навыков в памяти: отсортированный массив нормализованных названий.
+// Поиск по префиксу и по точному названию - бинарный поиск без обращения к БД.
+// Навыки неизменяемы, поэтому справочник только пополняется: локально после коммита и на остальных репликах через шину
+@Component
+@Log4j2
+public class SkillCatalogue {
+
+    static final String REGION = "skill";
+
+    private final SkillRepository skillRepository;
+    private final CacheInvalidationBus bus;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public SkillCatalogue(SkillRepository skillRepository, CacheInvalidationBus bus) {
+        this.skillRepository = skillRepository;
+        this.bus = bus;
+        bus.register(REGION, key -> load(UUID.fromString(key)), this::refresh);
+    }
+
+    public Optional<SkillView> findByTitle(String title) {
+
+        Snapshot current = snapshot;
+        int index = Arrays.binarySearch(current.titles(), normalize(title));
+        return index >= 0 ? Optional.of(current.skills()[index]) : Optional.empty();
+    }
+
+    public List<SkillView> findByPrefix(String prefix, int limit) {
+
+        Snapshot current = snapshot;
+        String normalized = normalize(prefix);
+        int index = Arrays.binarySearch(current.titles(), normalized);
+        // первая позиция, не меньшая префикса
+        int from = index >= 0 ? index : -index - 1;
+        List<SkillView> result = new ArrayList<>(Math.min(limit, current.titles().length - from));
+        for (int i = from; i < current.titles().length && result.size() < limit; i++) {
+            if (!current.titles()[i].startsWith(normalized)) {
+                break;
+            }
+            result.add(current.skills()[i]);
+        }
+        return result;
+    }
+
+    public int size() {
+        return snapshot.titles().length;
+    }
+
+    // Новый навык появляется в справочнике только после коммита, чтобы не раздать id откаченной записи.
+    // NOTIFY отправляется внутри транзакции: Postgres сам доставит его только после коммита
+    public void added(SkillView skill) {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(skill);
+                }
+            });
+        } else {
+            add(skill);
+        }
+        bus.publish(REGION, List.of(skill.id()));
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void refresh() {
+
+        List<SkillView> skills = skillRepository.findAll().stream()
+                .map(SkillView::from)
+                .toList();
+        snapshot = Snapshot.of(skills);
+        log.info("Справочник навыков загружен: {} навыков", skills::size);
+    }
+
+    private void load(UUID id) {
+        skillRepository.findById(id)
+                .map(SkillView::from)
+                .ifPresent(this::add);
+    }
+
+    private synchronized void add(SkillView skill) {
+
+        Snapshot current = snapshot;
+        String title = normalize(skill.title());
+        int index = Arrays.binarySearch(current.titles(), title);
+        if (index >= 0) {
+            return;
+        }
+        int position = -index - 1;
+        int length = current.titles().length;
+        String[] titles = new String[length + 1];
+        SkillView[] skills = new SkillView[length + 1];
+        System.arraycopy(current.titles(), 0, titles, 0, position);
+        System.arraycopy(current.skills(), 0, skills, 0, position);
+        titles[position] = title;
+        skills[position] = skill;
+        System.arraycopy(current.titles(), position, titles, position + 1, length - position);
+        System.arraycopy(current.skills(), position, skills, position + 1, length - position);
+        snapshot = new Snapshot(titles, skills);
+    }
+
+    // Единая форма названия навыка: в ней навыки хранятся, ищутся и сравниваются
+    public static String normalize(String title) {
+        return title.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record Snapshot(String[] titles, SkillView[] skills) {
+
+        static final Snapshot EMPTY = new Snapshot(new String[0], new SkillView[0]);
+
+        static Snapshot of(List<SkillView> skills) {
+            SkillView[] sorted = skills.stream()
+                    .sorted(Comparator.comparing(skill -> normalize(skill.title())))
+                    .toArray(SkillView[]::new);
+            String[] titles = Arrays.stream(sorted)
+                    .map(skill -> normalize(skill.title()))
+                    .toArray(String[]::new);
+            return new Snapshot(titles, sorted);
+        }
+    }
+}
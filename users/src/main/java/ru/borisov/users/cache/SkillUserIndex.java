@@ -0,0 +1,306 @@
+package ru.borisov.users.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.error.Code;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Инвертированный индекс навык -> сжатое множество номеров пользователей (Roaring bitmap).
+// Булевы запросы по навыкам считаются пересечением битовых множеств в памяти вместо self-join по user_skill.
+// Загружается при старте, обновляется после коммита здесь и на остальных репликах через шину инвалидации.
+// Номера свои, а не из UserOrdinalRegistry: пользователи из загрузки нумеруются в порядке id, и страница
+// отбирается рангом в битовом множестве. Пользователи, впервые получившие навык после загрузки, нумеруются
+// в хвосте по порядку появления, их совпадения перебираются до следующей перезагрузки
+@Component
+@Log4j2
+public class SkillUserIndex {
+
+    static final String REGION = "user-skill";
+    private static final int FETCH_SIZE = 1000;
+
+    private static final String SELECT_ALL = """
+            SELECT us.user_id, us.skill_id
+            FROM users_scheme.user_skill us
+                     JOIN users_scheme._user u ON u.id = us.user_id
+            WHERE NOT u.deleted
+            ORDER BY us.user_id""";
+
+    private static final String SELECT_USER = """
+            SELECT us.skill_id
+            FROM users_scheme.user_skill us
+                     JOIN users_scheme._user u ON u.id = us.user_id
+            WHERE us.user_id = ? AND NOT u.deleted""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final CacheInvalidationBus bus;
+
+    // RoaringBitmap не потокобезопасен: чтение под read lock, изменения под write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<UUID, RoaringBitmap> bitmaps = new HashMap<>();
+    // номера 0..ordered.length - 1 в порядке id, массив не меняется до следующей перезагрузки
+    private UUID[] ordered = new UUID[0];
+    // номера от ordered.length - пользователи, появившиеся после загрузки
+    private List<UUID> tail = new ArrayList<>();
+    private Map<UUID, Integer> tailOrdinals = new HashMap<>();
+    private volatile boolean loaded;
+    // пользователи, изменившиеся во время перестроения индекса
+    private Set<UUID> changedDuringRebuild;
+
+    public SkillUserIndex(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          CacheInvalidationBus bus,
+                          MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.bus = bus;
+        Gauge.builder("users.skill.index.bytes", this, SkillUserIndex::sizeInBytes)
+                .register(meterRegistry);
+        bus.register(REGION, key -> reload(UUID.fromString(key)), this::rebuild);
+    }
+
+    // Пользователи, у которых есть все навыки из all и нет ни одного из none, в порядке id.
+    // after - последний пользователь предыдущей страницы или null. Из упорядоченной части берется не больше
+    // limit совпадений начиная с ранга курсора, хвост перебирается целиком
+    public List<UUID> search(Collection<UUID> all, Collection<UUID> none, UUID after, int limit) {
+
+        if (!loaded) {
+            throw new CommonException(Code.SERVICE_UNAVAILABLE,
+                    "Индекс навыков еще загружается, повторите запрос позже",
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        IdPage page = new IdPage(after, limit);
+        lock.readLock().lock();
+        try {
+            RoaringBitmap[] required = new RoaringBitmap[all.size()];
+            int i = 0;
+            for (UUID skillId : all) {
+                RoaringBitmap users = bitmaps.get(skillId);
+                if (users == null) {
+                    return List.of();
+                }
+                required[i++] = users;
+            }
+            RoaringBitmap matches = required.length == 1 ? required[0].clone() : FastAggregation.and(required);
+            for (UUID skillId : none) {
+                RoaringBitmap excluded = bitmaps.get(skillId);
+                if (excluded != null) {
+                    matches.andNot(excluded);
+                }
+            }
+
+            int start = 0;
+            if (after != null) {
+                int index = Arrays.binarySearch(ordered, after, IdPage.ORDER);
+                start = index >= 0 ? index + 1 : -index - 1;
+            }
+            PeekableIntIterator iterator = matches.getIntIterator();
+            iterator.advanceIfNeeded(start);
+            int taken = 0;
+            while (taken < limit && iterator.hasNext() && iterator.peekNext() < ordered.length) {
+                page.offer(ordered[iterator.next()]);
+                taken++;
+            }
+            iterator.advanceIfNeeded(ordered.length);
+            while (iterator.hasNext()) {
+                page.offer(tail.get(iterator.next() - ordered.length));
+            }
+            return page.toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Изменение навыков пользователя: локально после коммита, остальным репликам - NOTIFY, который
+    // Postgres доставит тоже только после коммита
+    public void changed(UUID userId, Collection<UUID> added, Collection<UUID> removed) {
+
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> apply(userId, added, removed));
+        bus.publish(REGION, List.of(userId));
+    }
+
+    public void userRemoved(UUID userId) {
+        afterCommit(() -> removeUser(userId));
+        bus.publish(REGION, List.of(userId));
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void rebuild() {
+
+        synchronized (this) {
+            changedDuringRebuild = ConcurrentHashMap.newKeySet();
+        }
+        Map<UUID, RoaringBitmap> rebuilt = new HashMap<>();
+        List<UUID> users = new ArrayList<>();
+        AtomicLong count = new AtomicLong();
+        // курсор с fetch size работает только внутри транзакции
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_ALL);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, row -> {
+            // строки идут по user_id, поэтому номер пользователя - его ранг по id
+            UUID userId = row.getObject(1, UUID.class);
+            int last = users.size() - 1;
+            if (last < 0 || !users.get(last).equals(userId)) {
+                if (last >= 0 && IdPage.ORDER.compare(users.get(last), userId) > 0) {
+                    throw new IllegalStateException("Связи пользователь-навык пришли не в порядке user_id");
+                }
+                users.add(userId);
+            }
+            rebuilt.computeIfAbsent(row.getObject(2, UUID.class), skillId -> new RoaringBitmap())
+                    .add(users.size() - 1);
+            count.incrementAndGet();
+        }));
+        rebuilt.values().forEach(RoaringBitmap::runOptimize);
+
+        Set<UUID> changed;
+        synchronized (this) {
+            lock.writeLock().lock();
+            try {
+                bitmaps = rebuilt;
+                ordered = users.toArray(new UUID[0]);
+                tail = new ArrayList<>();
+                tailOrdinals = new HashMap<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+            loaded = true;
+        }
+        // изменения, прочитанные или нет курсором, перечитываем заново
+        changed.forEach(this::reload);
+        log.info("Индекс навыков загружен: {} связей пользователь-навык, {} навыков", count::get, rebuilt::size);
+    }
+
+    private void reload(UUID userId) {
+        Set<UUID> skills = new HashSet<>(jdbcTemplate.queryForList(SELECT_USER, UUID.class, userId));
+        markChanged(userId);
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinalOf(userId);
+            bitmaps.forEach((skillId, users) -> {
+                if (!skills.contains(skillId)) {
+                    users.remove(ordinal);
+                }
+            });
+            skills.forEach(skillId -> bitmaps.computeIfAbsent(skillId, id -> new RoaringBitmap()).add(ordinal));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(UUID userId, Collection<UUID> added, Collection<UUID> removed) {
+        markChanged(userId);
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinalOf(userId);
+            added.forEach(skillId -> bitmaps.computeIfAbsent(skillId, id -> new RoaringBitmap()).add(ordinal));
+            removed.forEach(skillId -> {
+                RoaringBitmap users = bitmaps.get(skillId);
+                if (users != null) {
+                    users.remove(ordinal);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeUser(UUID userId) {
+        markChanged(userId);
+        lock.writeLock().lock();
+        try {
+            int ordinal = indexOf(userId);
+            if (ordinal >= 0) {
+                bitmaps.values().forEach(users -> users.remove(ordinal));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Под write lock: пользователю не из загрузки выдается номер в хвосте
+    private int ordinalOf(UUID userId) {
+        int ordinal = indexOf(userId);
+        if (ordinal >= 0) {
+            return ordinal;
+        }
+        ordinal = ordered.length + tail.size();
+        tail.add(userId);
+        tailOrdinals.put(userId, ordinal);
+        return ordinal;
+    }
+
+    private int indexOf(UUID userId) {
+        int index = Arrays.binarySearch(ordered, userId, IdPage.ORDER);
+        if (index >= 0) {
+            return index;
+        }
+        return tailOrdinals.getOrDefault(userId, -1);
+    }
+
+    private synchronized void markChanged(UUID userId) {
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.add(userId);
+        }
+    }
+
+    private long sizeInBytes() {
+        lock.readLock().lock();
+        try {
+            return bitmaps.values().stream()
+                    .mapToLong(RoaringBitmap::getLongSizeInBytes)
+                    .sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package ru.borisov.users.cache;
+
+import lombok.extern.log4j.Log4j2;
+import org.ehcache.Cache;
+import org.ehcache.UserManagedCache;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.TransactionException;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.error.Code;
+import ru.borisov.users.health.DatabaseHealthMonitor;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Последнее удачно прочитанное из БД значение. После fresh-ttl оно отдается с признаком stale и обновляется
+// в фоне, а пока БД недоступна - отдается без обращения к ней вплоть до stale-ttl
+@Log4j2
+public class StaleWhileRevalidateCache<K, V> implements AutoCloseable {
+
+    // записи старше stale-ttl ehcache удаляет сам, при переполнении вытесняет давно не читанные
+    private final UserManagedCache<K, Entry<V>> entries;
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+    private final PendingLoads<K> pendingLoads = new PendingLoads<>();
+
+    private final String name;
+    private final DatabaseHealthMonitor databaseHealthMonitor;
+    private final Executor refreshExecutor;
+    private final long freshTtlNanos;
+    private final long staleTtlNanos;
+
+    @SuppressWarnings("unchecked")
+    public StaleWhileRevalidateCache(String name,
+                                     DatabaseHealthMonitor databaseHealthMonitor,
+                                     Executor refreshExecutor,
+                                     Duration freshTtl,
+                                     Duration staleTtl,
+                                     int maxEntries) {
+        this.name = name;
+        this.databaseHealthMonitor = databaseHealthMonitor;
+        this.refreshExecutor = refreshExecutor;
+        this.freshTtlNanos = freshTtl.toNanos();
+        this.staleTtlNanos = staleTtl.toNanos();
+        this.entries = (UserManagedCache<K, Entry<V>>) (UserManagedCache<?, ?>)
+                HeapCaches.create(Object.class, Entry.class, maxEntries, staleTtl);
+    }
+
+    public Cached<V> get(K key, Function<K, V> loader) {
+
+        long now = System.nanoTime();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.isFresh(now)) {
+            return Cached.fresh(entry.value());
+        }
+        boolean usable = entry != null && now - entry.loadedAt() < staleTtlNanos;
+
+        if (!databaseHealthMonitor.isHealthy()) {
+            if (usable) {
+                return Cached.stale(entry.value());
+            }
+            throw unavailable();
+        }
+        // после изменения данных старое значение годится только на время недоступности БД
+        if (usable && !entry.invalidated()) {
+            refreshAsync(key, loader);
+            return Cached.stale(entry.value());
+        }
+        try {
+            return Cached.fresh(load(key, loader));
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Не удалось прочитать {} по ключу {} из БД", name, key, e);
+            if (usable) {
+                return Cached.stale(entry.value());
+            }
+            throw unavailable();
+        }
+    }
+
+    // Значение перестает считаться свежим, но остается запасным на случай недоступности БД
+    public void invalidate(K key) {
+        pendingLoads.invalidate(key);
+        markInvalidated(key);
+    }
+
+    public void invalidateAll() {
+        invalidateIf(key -> true);
+    }
+
+    // Полный проход по кэшу: для инвалидации группы ключей, которую нельзя перечислить заранее
+    public void invalidateIf(Predicate<? super K> condition) {
+        pendingLoads.invalidateIf(condition);
+        for (Cache.Entry<K, Entry<V>> cached : entries) {
+            if (condition.test(cached.getKey())) {
+                markInvalidated(cached.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        entries.close();
+    }
+
+    private V load(K key, Function<K, V> loader) {
+
+        PendingLoads.Load pending = pendingLoads.begin(key);
+        try {
+            long start = System.nanoTime();
+            V value;
+            try {
+                value = loader.apply(key);
+            } catch (DataAccessException | TransactionException e) {
+                databaseHealthMonitor.recordFailure();
+                throw e;
+            } catch (RuntimeException e) {
+                // БД ответила, но значения больше нет (например, пользователь удален)
+                databaseHealthMonitor.recordSuccess(System.nanoTime() - start);
+                entries.remove(key);
+                throw e;
+            }
+            long loadedAt = System.nanoTime();
+            databaseHealthMonitor.recordSuccess(loadedAt - start);
+
+            // значение, прочитанное до инвалидации своего ключа, в кэш не попадает
+            if (!pending.isInvalidated()) {
+                entries.put(key, new Entry<>(value, loadedAt, loadedAt + freshTtlNanos, false));
+                if (pending.isInvalidated()) {
+                    markInvalidated(key);
+                }
+            }
+            return value;
+        } finally {
+            pendingLoads.end(key, pending);
+        }
+    }
+
+    private void markInvalidated(K key) {
+        Entry<V> entry = entries.get(key);
+        // не удалось - значение только что заменили, новое проверит свою загрузку само
+        if (entry != null && !entry.invalidated()) {
+            entries.replace(key, entry, entry.asInvalidated());
+        }
+    }
+
+    private void refreshAsync(K key, Function<K, V> loader) {
+
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(key, loader);
+                } catch (RuntimeException e) {
+                    log.debug("Фоновое обновление {} по ключу {} не удалось", name, key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    private static CommonException unavailable() {
+        return new CommonException(Code.SERVICE_UNAVAILABLE,
+                "База данных временно недоступна, повторите запрос позже",
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private record Entry<V>(V value, long loadedAt, long freshUntil, boolean invalidated) {
+
+        boolean isFresh(long now) {
+            return !invalidated && now - freshUntil < 0;
+        }
+
+        Entry<V> asInvalidated() {
+            return new Entry<>(value, loadedAt, freshUntil, true);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.borisov.users.cache;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.service.FollowPageKey;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Инвалидация User, его навыков в кэше второго уровня, закрепленных профилей, готового JSON
+// и страниц подписок: локально и на остальных репликах
+@Component
+public class UserEntityCache {
+
+    static final String REGION = "user";
+    static final String FOLLOW_PAGE_REGION = "follow-page";
+    private static final String SKILLS_ROLE = User.class.getName() + ".skills";
+
+    private final SessionFactory sessionFactory;
+    private final CacheInvalidationBus bus;
+    private final HotProfileCache hotProfileCache;
+    private final ProfileJsonCache profileJsonCache;
+    private final StaleWhileRevalidateCache<UUID, UserProfile> profileStaleCache;
+    private final StaleWhileRevalidateCache<FollowPageKey, CursorPage<UserSummary>> followPageStaleCache;
+
+    public UserEntityCache(EntityManagerFactory entityManagerFactory,
+                           CacheInvalidationBus bus,
+                           HotProfileCache hotProfileCache,
+                           ProfileJsonCache profileJsonCache,
+                           StaleWhileRevalidateCache<UUID, UserProfile> profileStaleCache,
+                           StaleWhileRevalidateCache<FollowPageKey, CursorPage<UserSummary>> followPageStaleCache) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.bus = bus;
+        this.hotProfileCache = hotProfileCache;
+        this.profileJsonCache = profileJsonCache;
+        this.profileStaleCache = profileStaleCache;
+        this.followPageStaleCache = followPageStaleCache;
+        bus.register(REGION, key -> evictLocally(UUID.fromString(key)), this::evictAllLocally);
+        bus.register(FOLLOW_PAGE_REGION, key -> evictFollowPagesLocally(Set.of(UUID.fromString(key))),
+                followPageStaleCache::invalidateAll);
+    }
+
+    // Для изменений через Hibernate: кэш второго уровня он обновляет сам, сбрасываем только готовые
+    // профили и оповещаем остальные реплики
+    public void invalidateProfile(UUID userId) {
+        afterCommitToo(() -> invalidateProfileLocally(userId));
+        bus.publish(REGION, List.of(userId));
+    }
+
+    // Для изменений в обход Hibernate. Остальным репликам NOTIFY доставляется Postgres'ом только после коммита
+    public void evict(Collection<UUID> userIds) {
+
+        if (userIds.isEmpty()) {
+            return;
+        }
+        afterCommitToo(() -> userIds.forEach(this::evictLocally));
+        bus.publish(REGION, userIds);
+    }
+
+    // Подписка меняет страницы подписок одного пользователя и подписчиков другого,
+    // поэтому сбрасываются все закэшированные страницы обоих
+    public void evictFollowPages(Collection<UUID> userIds) {
+
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Set<UUID> ids = Set.copyOf(userIds);
+        afterCommitToo(() -> evictFollowPagesLocally(ids));
+        bus.publish(FOLLOW_PAGE_REGION, ids);
+    }
+
+    // Сбрасываем сразу и повторно после коммита, чтобы в кэш не вернулось значение, прочитанное до коммита
+    private static void afterCommitToo(Runnable eviction) {
+
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        }
+    }
+
+    // От внутреннего кэша к внешнему: JSON, загружаемый после его инвалидации, не получит старый профиль
+    // из кэшей под ним
+    private void invalidateProfileLocally(UUID userId) {
+        hotProfileCache.invalidate(userId);
+        profileStaleCache.invalidate(userId);
+        profileJsonCache.invalidate(userId);
+    }
+
+    private void evictLocally(UUID userId) {
+        invalidateProfileLocally(userId);
+        sessionFactory.getCache().evictEntityData(User.class, userId);
+        sessionFactory.getCache().evictCollectionData(SKILLS_ROLE, userId);
+    }
+
+    private void evictFollowPagesLocally(Set<UUID> userIds) {
+        followPageStaleCache.invalidateIf(key -> userIds.contains(key.userId()));
+    }
+
+    private void evictAllLocally() {
+        hotProfileCache.invalidateAll();
+        profileStaleCache.invalidateAll();
+        profileJsonCache.invalidateAll();
+        sessionFactory.getCache().evictEntityData(User.class);
+        sessionFactory.getCache().evictCollectionData(SKILLS_ROLE);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.borisov.users.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Плотные int-номера пользователей для битовых индексов. Номер выдается один раз и не переиспользуется,
+// в порядке первого обращения. Номера у каждой реплики свои: наружу они не отдаются, и порядок выдачи
+// по ним не строится
+@Component
+public class UserOrdinalRegistry {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<UUID, Integer> ordinals = new ConcurrentHashMap<>();
+    private volatile UUID[] users = new UUID[INITIAL_CAPACITY];
+    private int size;
+
+    public int ordinalOf(UUID userId) {
+        Integer ordinal = ordinals.get(userId);
+        return ordinal != null ? ordinal : assign(userId);
+    }
+
+    public OptionalInt find(UUID userId) {
+        Integer ordinal = ordinals.get(userId);
+        return ordinal != null ? OptionalInt.of(ordinal) : OptionalInt.empty();
+    }
+
+    // Без упаковки в OptionalInt для горячих путей: -1, если номер не выдан
+    public int indexOf(UUID userId) {
+        Integer ordinal = ordinals.get(userId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    public UUID userAt(int ordinal) {
+        return users[ordinal];
+    }
+
+    public int size() {
+        return ordinals.size();
+    }
+
+    private synchronized int assign(UUID userId) {
+
+        Integer existing = ordinals.get(userId);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == users.length) {
+            users = Arrays.copyOf(users, size * 2);
+        }
+        int ordinal = size++;
+        users[ordinal] = userId;
+        ordinals.put(userId, ordinal);
+        return ordinal;
+    }
+}
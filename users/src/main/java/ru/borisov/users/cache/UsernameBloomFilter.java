@@ -0,0 +1,125 @@
+package ru.borisov.users.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Фильтр Блума занятых ников: отрицательный ответ означает, что ник точно свободен, и в БД можно не ходить.
+// Загружается при старте, пополняется при регистрации здесь и на остальных репликах через шину инвалидации
+@Component
+@Log4j2
+public class UsernameBloomFilter {
+
+    static final String REGION = "username";
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final CacheInvalidationBus bus;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final Counter negatives;
+    private final Counter positives;
+
+    private volatile BloomFilter filter;
+    // до первой загрузки фильтру нельзя верить, все проверки идут в БД
+    private volatile boolean loaded;
+    // ники, зарегистрированные во время перестроения фильтра
+    private Set<String> registeredDuringRebuild;
+
+    public UsernameBloomFilter(JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               CacheInvalidationBus bus,
+                               MeterRegistry meterRegistry,
+                               @Value("${users.username-filter.expected-insertions}") long expectedInsertions,
+                               @Value("${users.username-filter.false-positive-rate}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.bus = bus;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.negatives = meterRegistry.counter("users.username.filter", "result", "negative");
+        this.positives = meterRegistry.counter("users.username.filter", "result", "maybe");
+        bus.register(REGION, key -> add(decode(key)), this::rebuild);
+    }
+
+    // false - ник точно не занят, true - возможно занят, нужна проверка в БД
+    public boolean mightBeTaken(String username) {
+
+        if (!loaded || filter.mightContain(username)) {
+            positives.increment();
+            return true;
+        }
+        negatives.increment();
+        return false;
+    }
+
+    public void markTaken(String username) {
+        add(username);
+        bus.publish(REGION, List.of(encode(username)));
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void rebuild() {
+
+        synchronized (this) {
+            registeredDuringRebuild = ConcurrentHashMap.newKeySet();
+        }
+        BloomFilter rebuilt = new BloomFilter(expectedInsertions, falsePositiveRate);
+        AtomicLong count = new AtomicLong();
+        // курсор с fetch size работает только внутри транзакции
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT username FROM users_scheme._user WHERE NOT deleted");
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, row -> {
+            rebuilt.put(row.getString(1));
+            count.incrementAndGet();
+        }));
+
+        synchronized (this) {
+            registeredDuringRebuild.forEach(rebuilt::put);
+            registeredDuringRebuild = null;
+            filter = rebuilt;
+            loaded = true;
+        }
+        log.info("Фильтр занятых ников загружен: {} ников", count::get);
+        if (count.get() > expectedInsertions) {
+            log.warn("Ников больше, чем рассчитан фильтр ({}), доля ложных срабатываний растет", expectedInsertions);
+        }
+    }
+
+    private synchronized void add(String username) {
+        filter.put(username);
+        if (registeredDuringRebuild != null) {
+            registeredDuringRebuild.add(username);
+        }
+    }
+
+    // в нике могут быть запятые, которые шина использует как разделитель ключей
+    private static String encode(String username) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(username.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String key) {
+        return new String(Base64.getUrlDecoder().decode(key), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,65 @@
+package ru.borisov.users.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import ru.borisov.users.cache.StaleWhileRevalidateCache;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.health.DatabaseHealthMonitor;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.service.FollowPageKey;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class CacheConfig {
+
+    // Тот же ehcache.xml, что использует кэш второго уровня Hibernate
+    @Bean
+    public CacheManager jCacheManager(@Value("${spring.jpa.properties.hibernate.javax.cache.provider}") String provider,
+                                      @Value("${spring.jpa.properties.hibernate.javax.cache.uri}") Resource config) throws IOException {
+        CachingProvider cachingProvider = Caching.getCachingProvider(provider);
+        // Hibernate запрашивает менеджер с classloader'ом провайдера по умолчанию, поэтому получаем тот же экземпляр
+        return cachingProvider.getCacheManager(config.getURI(), cachingProvider.getDefaultClassLoader());
+    }
+
+    // Фоновое обновление устаревших значений: ограниченная очередь, лишние задачи отбрасываются
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor cacheRefreshExecutor(@Value("${users.stale-cache.refresh-threads}") int threads,
+                                                   @Value("${users.stale-cache.refresh-queue}") int queueSize) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize));
+    }
+
+    @Bean
+    public StaleWhileRevalidateCache<UUID, UserProfile> profileStaleCache(
+            DatabaseHealthMonitor databaseHealthMonitor,
+            ThreadPoolExecutor cacheRefreshExecutor,
+            @Value("${users.stale-cache.profile-fresh-ttl}") Duration freshTtl,
+            @Value("${users.stale-cache.stale-ttl}") Duration staleTtl,
+            @Value("${users.stale-cache.max-entries}") int maxEntries) {
+        return new StaleWhileRevalidateCache<>("профиль", databaseHealthMonitor, cacheRefreshExecutor,
+                freshTtl, staleTtl, maxEntries);
+    }
+
+    @Bean
+    public StaleWhileRevalidateCache<FollowPageKey, CursorPage<UserSummary>> followPageStaleCache(
+            DatabaseHealthMonitor databaseHealthMonitor,
+            ThreadPoolExecutor cacheRefreshExecutor,
+            @Value("${users.stale-cache.follow-page-fresh-ttl}") Duration freshTtl,
+            @Value("${users.stale-cache.stale-ttl}") Duration staleTtl,
+            @Value("${users.stale-cache.max-entries}") int maxEntries) {
+        return new StaleWhileRevalidateCache<>("страница подписок", databaseHealthMonitor, cacheRefreshExecutor,
+                freshTtl, staleTtl, maxEntries);
+    }
+}
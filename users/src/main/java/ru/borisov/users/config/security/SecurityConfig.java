@@ -28,7 +28,7 @@ public class SecurityConfig {
                 .authorizeHttpRequests()
                 .requestMatchers("/swagger-ui/**", "/swagger-ui.html", "/v3/api-docs/**",
                         "/actuator/**",
-                        "/api/users/**")
+                        "/api/users/**", "/api/skills/**")
                 .permitAll()
                 .anyRequest().authenticated();
 
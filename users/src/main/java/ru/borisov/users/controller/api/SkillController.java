@@ -0,0 +1,41 @@
+package ru.borisov.users.controller.api;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.borisov.users.controller.response.Response;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.controller.response.SuccessResponse;
+import ru.borisov.users.service.SkillService;
+
+@RestController
+@RequestMapping("/api/skills")
+@RequiredArgsConstructor
+public class SkillController {
+
+    private final SkillService skillService;
+
+    @GetMapping
+    @Operation(summary = "Автодополнение навыков по началу названия",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(array = @ArraySchema(schema = @Schema(implementation = SkillView.class)))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
+            })
+    public ResponseEntity<Response> findSkills(
+            @RequestParam(defaultValue = "") String prefix,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(skillService.findSkillsByPrefix(prefix, limit))
+                .build(), HttpStatus.OK);
+    }
+}
@@ -1,25 +1,45 @@
 package ru.borisov.users.controller.api;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.borisov.users.cache.Cached;
+import ru.borisov.users.cache.ProfileJsonCache;
 import ru.borisov.users.controller.request.AddSkillRequest;
 import ru.borisov.users.controller.request.RegisterUserRequest;
+import ru.borisov.users.controller.request.ReplaceSkillsRequest;
 import ru.borisov.users.controller.request.UpdateUserInfoRequest;
+import ru.borisov.users.controller.request.UserIdsRequest;
 import ru.borisov.users.controller.response.ApiResponse;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.FollowResult;
+import ru.borisov.users.controller.response.FollowStateResponse;
 import ru.borisov.users.controller.response.Response;
+import ru.borisov.users.controller.response.SkillView;
 import ru.borisov.users.controller.response.SuccessResponse;
-import ru.borisov.users.model.Skill;
-import ru.borisov.users.model.Subscription;
-import ru.borisov.users.model.User;
+import ru.borisov.users.controller.response.UserDirectoryPage;
+import ru.borisov.users.controller.response.UserExportRow;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.controller.response.UsernameAvailability;
+import ru.borisov.users.controller.response.UsersByIdsResponse;
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
+import ru.borisov.users.repository.projection.UserSummary;
 import ru.borisov.users.service.FollowService;
 import ru.borisov.users.service.SkillService;
+import ru.borisov.users.service.UserExportService;
 import ru.borisov.users.service.UserService;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -30,12 +50,14 @@ public class UserController {
     private final UserService userService;
     private final SkillService skillService;
     private final FollowService followService;
+    private final UserExportService userExportService;
+    private final ProfileJsonCache profileJsonCache;
 
     @PostMapping
     @Operation(summary = "Регистрация пользователя",
             responses = {
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "201", description = "CREATED",
-                            content = @Content(schema = @Schema(implementation = User.class))),
+                            content = @Content(schema = @Schema(implementation = UserProfile.class))),
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
             })
     public ResponseEntity<Response> registerUser(@RequestBody RegisterUserRequest request) {
@@ -50,7 +72,7 @@ public class UserController {
     @Operation(summary = "Заполнить данные пользователя",
             responses = {
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
-                            content = @Content(schema = @Schema(implementation = User.class))),
+                            content = @Content(schema = @Schema(implementation = UserProfile.class))),
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND")
             })
     public ResponseEntity<Response> updateUserInfo(
@@ -66,7 +88,7 @@ public class UserController {
     @Operation(summary = "Добавить навык пользователю",
             responses = {
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
-                            content = @Content(schema = @Schema(implementation = Skill.class))),
+                            content = @Content(schema = @Schema(implementation = SkillView.class))),
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND"),
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
             })
@@ -83,7 +105,7 @@ public class UserController {
     @Operation(summary = "Удалить навык пользователя",
             responses = {
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
-                            content = @Content(schema = @Schema(implementation = Skill.class))),
+                            content = @Content(schema = @Schema(implementation = ApiResponse.class))),
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND")
             })
     public ResponseEntity<Response> removeSkillFromUser(
@@ -101,6 +123,24 @@ public class UserController {
     }
 
 
+    @PutMapping("/{id}/skills")
+    @Operation(summary = "Заменить навыки пользователя переданным набором",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(array = @ArraySchema(schema = @Schema(implementation = SkillView.class)))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
+            })
+    public ResponseEntity<Response> replaceUserSkills(
+            @RequestBody ReplaceSkillsRequest request,
+            @PathVariable UUID id) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(skillService.replaceUserSkills(request, id))
+                .build(), HttpStatus.OK);
+    }
+
+
     @PutMapping("/{id}/follow/{followingUserId}")
     @Operation(summary = "Подписаться на пользователя",
             responses = {
@@ -147,17 +187,142 @@ public class UserController {
     }
 
 
+    @PostMapping("/{id}/follow:batch")
+    @Operation(summary = "Подписаться на нескольких пользователей",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = FollowResult[].class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND")
+            })
+    public ResponseEntity<Response> followAll(
+            @PathVariable UUID id,
+            @RequestBody UserIdsRequest request) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(followService.followAll(id, request))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @PostMapping("/{id}/unfollow:batch")
+    @Operation(summary = "Отписаться от нескольких пользователей",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = FollowResult[].class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND")
+            })
+    public ResponseEntity<Response> unfollowAll(
+            @PathVariable UUID id,
+            @RequestBody UserIdsRequest request) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(followService.unfollowAll(id, request))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @PostMapping("/{id}/follow-state")
+    @Operation(summary = "Состояние подписок на переданных пользователей",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = FollowStateResponse.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
+            })
+    public ResponseEntity<Response> getFollowState(
+            @PathVariable UUID id,
+            @RequestBody UserIdsRequest request) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(new FollowStateResponse(followService.getFollowState(id, request)))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @GetMapping("/{id}/mutual")
+    @Operation(summary = "Взаимные подписки пользователя (постранично, по курсору)",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = CursorPage.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "503", description = "SERVICE_UNAVAILABLE")
+            })
+    public ResponseEntity<Response> getMutualFollows(
+            @PathVariable UUID id,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String after) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(followService.getMutualFollows(id, limit, after))
+                .build(), HttpStatus.OK);
+    }
+
+
     @GetMapping("/{id}")
     @Operation(summary = "Получить пользователя",
             responses = {
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
-                            content = @Content(schema = @Schema(implementation = User.class))),
+                            content = @Content(schema = @Schema(implementation = UserProfile.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "503", description = "SERVICE_UNAVAILABLE")
+            })
+    public ResponseEntity<byte[]> getUserById(@PathVariable UUID id) {
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(profileJsonCache.get(id, userService::getUserById));
+    }
+
+
+    @GetMapping("/by-username/{username}")
+    @Operation(summary = "Получить пользователя по нику",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = UserProfile.class))),
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND")
             })
-    public ResponseEntity<Response> getUserById(@PathVariable UUID id) {
+    public ResponseEntity<Response> getUserByUsername(@PathVariable String username) {
+
+        Cached<UserProfile> profile = userService.getUserByUsername(username);
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(profile.value())
+                .stale(profile.staleFlag())
+                .build(), HttpStatus.OK);
+    }
+
+
+    @GetMapping("/by-skills")
+    @Operation(summary = "Найти пользователей, у которых есть все навыки skills и нет ни одного из without",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = CursorPage.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "503", description = "SERVICE_UNAVAILABLE")
+            })
+    public ResponseEntity<Response> findUsersBySkills(
+            @RequestParam List<String> skills,
+            @RequestParam(required = false) List<String> without,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String after) {
 
         return new ResponseEntity<>(SuccessResponse.builder()
-                .data(userService.getUserById(id))
+                .data(skillService.findUsersBySkills(skills, without, limit, after))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @GetMapping("/availability")
+    @Operation(summary = "Проверить, свободен ли ник",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = UsernameAvailability.class)))
+            })
+    public ResponseEntity<Response> checkUsernameAvailability(@RequestParam String username) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(userService.checkUsernameAvailability(username))
                 .build(), HttpStatus.OK);
     }
 
@@ -166,13 +331,20 @@ public class UserController {
     @Operation(summary = "Подписчики пользователя",
             responses = {
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
-                            content = @Content(schema = @Schema(implementation = Subscription[].class))),
-                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND")
+                            content = @Content(schema = @Schema(implementation = CursorPage.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "503", description = "SERVICE_UNAVAILABLE")
             })
-    public ResponseEntity<Response> getUserFollowers(@PathVariable UUID id) {
+    public ResponseEntity<Response> getUserFollowers(
+            @PathVariable UUID id,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String after) {
 
+        Cached<CursorPage<UserSummary>> page = userService.getUserFollowers(id, limit, after);
         return new ResponseEntity<>(SuccessResponse.builder()
-                .data(userService.getUserFollowers(id))
+                .data(page.value())
+                .stale(page.staleFlag())
                 .build(), HttpStatus.OK);
     }
 
@@ -180,31 +352,141 @@ public class UserController {
     @Operation(summary = "Подписки пользователя",
             responses = {
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
-                            content = @Content(schema = @Schema(implementation = Subscription[].class))),
-                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND")
+                            content = @Content(schema = @Schema(implementation = CursorPage.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "404", description = "NOT_FOUND"),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "503", description = "SERVICE_UNAVAILABLE")
             })
-    public ResponseEntity<Response> getUserFollowing(@PathVariable UUID id) {
+    public ResponseEntity<Response> getUserFollowing(
+            @PathVariable UUID id,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String after) {
 
+        Cached<CursorPage<UserSummary>> page = userService.getUserFollowing(id, limit, after);
         return new ResponseEntity<>(SuccessResponse.builder()
-                .data(userService.getUserFollowing(id))
+                .data(page.value())
+                .stale(page.staleFlag())
                 .build(), HttpStatus.OK);
     }
 
 
     @GetMapping
-    @Operation(summary = "Список всех пользователей",
+    @Operation(summary = "Список пользователей (постранично, по курсору)",
             responses = {
                     @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
-                            content = @Content(schema = @Schema(implementation = User[].class)))
+                            content = @Content(schema = @Schema(implementation = CursorPage.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
             })
-    public ResponseEntity<Response> getAllUsers() {
+    public ResponseEntity<Response> getUsers(
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String after) {
 
         return new ResponseEntity<>(SuccessResponse.builder()
-                .data(userService.getAllUsers())
+                .data(userService.getUsers(limit, after))
                 .build(), HttpStatus.OK);
     }
 
 
+    @GetMapping("/search")
+    @Operation(summary = "Полнотекстовый поиск пользователей по нику, ФИО и описанию (по убыванию релевантности)",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = CursorPage.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
+            })
+    public ResponseEntity<Response> searchUsers(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String after) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(userService.searchUsers(q, limit, after))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @GetMapping("/typeahead")
+    @Operation(summary = "Подсказки пользователей по нику: вхождение подстроки или похожий ник, по убыванию сходства",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(array = @ArraySchema(schema = @Schema(implementation = UserSummary.class)))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
+            })
+    public ResponseEntity<Response> suggestUsers(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(userService.suggestUsers(q, limit))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @GetMapping("/directory")
+    @Operation(summary = "Каталог пользователей с фильтрами по городу, полу и возрасту и счетчиками по фасетам",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = UserDirectoryPage.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
+            })
+    public ResponseEntity<Response> searchDirectory(
+            @RequestParam(required = false) String city,
+            @RequestParam(required = false) Gender gender,
+            @RequestParam(required = false) AgeBucket age,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String after) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(userService.searchDirectory(city, gender, age, limit, after))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @GetMapping(params = "ids")
+    @Operation(summary = "Получить пользователей по списку id",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = UsersByIdsResponse.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
+            })
+    public ResponseEntity<Response> getUsersByIds(@RequestParam List<UUID> ids) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(userService.getUsersByIds(new UserIdsRequest(ids)))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @PostMapping("/lookup")
+    @Operation(summary = "Получить пользователей по списку id (в теле запроса)",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(schema = @Schema(implementation = UsersByIdsResponse.class))),
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "400", description = "BAD_REQUEST")
+            })
+    public ResponseEntity<Response> lookupUsers(@RequestBody UserIdsRequest request) {
+
+        return new ResponseEntity<>(SuccessResponse.builder()
+                .data(userService.getUsersByIds(request))
+                .build(), HttpStatus.OK);
+    }
+
+
+    @GetMapping("/export")
+    @Operation(summary = "Выгрузка всех пользователей в формате NDJSON",
+            responses = {
+                    @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "OK",
+                            content = @Content(mediaType = "application/x-ndjson",
+                                    schema = @Schema(implementation = UserExportRow.class)))
+            })
+    public void exportUsers(HttpServletResponse response) throws IOException {
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        userExportService.exportUsers(response.getOutputStream());
+    }
+
+
     @DeleteMapping("/{id}")
     @Operation(summary = "Удалить профиль пользователя",
             responses = {
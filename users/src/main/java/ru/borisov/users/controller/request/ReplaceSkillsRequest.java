@@ -0,0 +1,22 @@
+package ru.borisov.users.controller.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplaceSkillsRequest {
+
+    @NotNull
+    @Size(max = 100)
+    private List<@NotNull @Valid AddSkillRequest> skills;
+}
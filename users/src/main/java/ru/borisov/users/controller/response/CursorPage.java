@@ -0,0 +1,6 @@
+package ru.borisov.users.controller.response;
+
+import java.util.List;
+
+public record CursorPage<T>(List<T> items, String nextCursor) {
+}
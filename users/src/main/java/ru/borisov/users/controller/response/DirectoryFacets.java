@@ -0,0 +1,11 @@
+package ru.borisov.users.controller.response;
+
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
+
+import java.util.Map;
+
+public record DirectoryFacets(Map<String, Long> cities,
+                              Map<Gender, Long> genders,
+                              Map<AgeBucket, Long> ages) {
+}
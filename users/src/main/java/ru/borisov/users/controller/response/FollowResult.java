@@ -0,0 +1,6 @@
+package ru.borisov.users.controller.response;
+
+import java.util.UUID;
+
+public record FollowResult(UUID userId, FollowStatus status) {
+}
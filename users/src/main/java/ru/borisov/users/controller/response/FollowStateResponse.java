@@ -0,0 +1,7 @@
+package ru.borisov.users.controller.response;
+
+import java.util.Map;
+import java.util.UUID;
+
+public record FollowStateResponse(Map<UUID, Boolean> following) {
+}
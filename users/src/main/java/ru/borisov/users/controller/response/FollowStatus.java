@@ -0,0 +1,10 @@
+package ru.borisov.users.controller.response;
+
+public enum FollowStatus {
+
+    FOLLOWED,
+    ALREADY_FOLLOWING,
+    UNFOLLOWED,
+    NOT_FOLLOWING,
+    USER_NOT_FOUND
+}
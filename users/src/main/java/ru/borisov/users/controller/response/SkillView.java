@@ -0,0 +1,13 @@
+package ru.borisov.users.controller.response;
+
+import ru.borisov.users.model.Skill;
+import ru.borisov.users.model.SkillType;
+
+import java.util.UUID;
+
+public record SkillView(UUID id, String title, SkillType skillType) {
+
+    public static SkillView from(Skill skill) {
+        return new SkillView(skill.getId(), skill.getTitle(), skill.getSkillType());
+    }
+}
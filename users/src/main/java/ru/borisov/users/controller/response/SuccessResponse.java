@@ -15,4 +15,7 @@ import lombok.NoArgsConstructor;
 public class SuccessResponse<T> implements Response {
 
     private T data;
+
+    // true, если данные отданы из кэша без проверки в БД
+    private Boolean stale;
 }
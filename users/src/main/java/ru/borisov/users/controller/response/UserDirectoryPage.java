@@ -0,0 +1,10 @@
+package ru.borisov.users.controller.response;
+
+import ru.borisov.users.repository.projection.UserSummary;
+
+import java.util.List;
+
+public record UserDirectoryPage(List<UserSummary> items,
+                                String nextCursor,
+                                DirectoryFacets facets) {
+}
@@ -0,0 +1,42 @@
+package ru.borisov.users.controller.response;
+
+import ru.borisov.users.model.Gender;
+import ru.borisov.users.model.User;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record UserExportRow(UUID id,
+                            String username,
+                            String email,
+                            String lastName,
+                            String firstName,
+                            String middleName,
+                            Gender gender,
+                            LocalDate birthDate,
+                            String city,
+                            String profileImage,
+                            String bio,
+                            String phone,
+                            LocalDateTime createdAt,
+                            LocalDateTime updatedAt) {
+
+    public static UserExportRow from(User user) {
+        return new UserExportRow(
+                user.getId(),
+                user.getUsername(),
+                user.getEmail(),
+                user.getLastName(),
+                user.getFirstName(),
+                user.getMiddleName(),
+                user.getGender(),
+                user.getBirthDate(),
+                user.getCity(),
+                user.getProfileImage(),
+                user.getBio(),
+                user.getPhone(),
+                user.getCreatedAt(),
+                user.getUpdatedAt());
+    }
+}
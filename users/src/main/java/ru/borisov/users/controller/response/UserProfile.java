@@ -0,0 +1,54 @@
+package ru.borisov.users.controller.response;
+
+import ru.borisov.users.model.Gender;
+import ru.borisov.users.model.User;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+// Неизменяемое представление пользователя: собирается внутри транзакции и не ссылается на сущности
+public record UserProfile(UUID id,
+                          String username,
+                          String email,
+                          String lastName,
+                          String firstName,
+                          String middleName,
+                          Gender gender,
+                          LocalDate birthDate,
+                          String city,
+                          String profileImage,
+                          String bio,
+                          String phone,
+                          List<SkillView> skills,
+                          int followersCount,
+                          int followingCount,
+                          LocalDateTime createdAt,
+                          LocalDateTime updatedAt) {
+
+    public static UserProfile from(User user) {
+        return new UserProfile(
+                user.getId(),
+                user.getUsername(),
+                user.getEmail(),
+                user.getLastName(),
+                user.getFirstName(),
+                user.getMiddleName(),
+                user.getGender(),
+                user.getBirthDate(),
+                user.getCity(),
+                user.getProfileImage(),
+                user.getBio(),
+                user.getPhone(),
+                user.getSkills().stream()
+                        .map(SkillView::from)
+                        .sorted(Comparator.comparing(SkillView::title, Comparator.nullsLast(Comparator.naturalOrder())))
+                        .toList(),
+                user.getFollowersCount(),
+                user.getFollowingCount(),
+                user.getCreatedAt(),
+                user.getUpdatedAt());
+    }
+}
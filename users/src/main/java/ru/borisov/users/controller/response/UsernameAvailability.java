@@ -0,0 +1,4 @@
+package ru.borisov.users.controller.response;
+
+public record UsernameAvailability(String username, boolean available) {
+}
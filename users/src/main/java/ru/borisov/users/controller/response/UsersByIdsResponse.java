@@ -0,0 +1,7 @@
+package ru.borisov.users.controller.response;
+
+import java.util.List;
+import java.util.UUID;
+
+public record UsersByIdsResponse(List<UserProfile> users, List<UUID> missingIds) {
+}
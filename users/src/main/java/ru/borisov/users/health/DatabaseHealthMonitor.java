@@ -0,0 +1,109 @@
+package ru.borisov.users.health;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Оценка состояния БД по задержкам и ошибкам запросов чтения и по фоновой проверке SELECT 1.
+// Пока БД считается недоступной, кэши отдают устаревшие значения и не ходят в базу
+@Component
+@Log4j2
+public class DatabaseHealthMonitor {
+
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration probeTimeout;
+    private final int failureThreshold;
+    private final double latencyThresholdMs;
+    private final ExecutorService probeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "db-health-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean healthy = true;
+    private double latencyEwmaMs;
+    private int consecutiveFailures;
+    private Future<?> pendingProbe;
+
+    public DatabaseHealthMonitor(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${users.db-health.probe-timeout}") Duration probeTimeout,
+                                 @Value("${users.db-health.failure-threshold}") int failureThreshold,
+                                 @Value("${users.db-health.latency-threshold}") Duration latencyThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.probeTimeout = probeTimeout;
+        this.failureThreshold = failureThreshold;
+        this.latencyThresholdMs = latencyThreshold.toMillis();
+        meterRegistry.gauge("users.db.healthy", this, monitor -> monitor.isHealthy() ? 1 : 0);
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public synchronized void recordSuccess(long latencyNanos) {
+        double latencyMs = latencyNanos / 1_000_000.0;
+        latencyEwmaMs = EWMA_WEIGHT * latencyMs + (1 - EWMA_WEIGHT) * latencyEwmaMs;
+        consecutiveFailures = 0;
+        update();
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        update();
+    }
+
+    // Проверка нужна, чтобы заметить восстановление БД, когда запросы чтения в нее уже не идут
+    @Scheduled(fixedDelayString = "${users.db-health.probe-interval}")
+    public void probe() {
+
+        if (pendingProbe != null && !pendingProbe.isDone()) {
+            // предыдущая проверка все еще висит
+            recordFailure();
+            return;
+        }
+        long start = System.nanoTime();
+        pendingProbe = probeExecutor.submit(() -> jdbcTemplate.queryForObject("SELECT 1", Integer.class));
+        try {
+            pendingProbe.get(probeTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            recordSuccess(System.nanoTime() - start);
+        } catch (TimeoutException | ExecutionException e) {
+            recordFailure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        probeExecutor.shutdownNow();
+    }
+
+    private void update() {
+
+        boolean nowHealthy = consecutiveFailures < failureThreshold && latencyEwmaMs < latencyThresholdMs;
+        if (nowHealthy != healthy) {
+            healthy = nowHealthy;
+            if (nowHealthy) {
+                log.info("База данных снова доступна, чтение из кэша с обновлением возобновлено");
+            } else {
+                log.warn("База данных недоступна или отвечает медленно (ошибок подряд: {}, средняя задержка: {} мс), "
+                        + "переходим на отдачу устаревших данных из кэша", consecutiveFailures, Math.round(latencyEwmaMs));
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.borisov.users.job;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.borisov.users.cache.UserEntityCache;
+import ru.borisov.users.repository.UserRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Component
+@Log4j2
+@RequiredArgsConstructor
+public class FollowCountersReconciliationJob {
+
+    private final UserRepository userRepository;
+    private final UserEntityCache userEntityCache;
+
+    @Scheduled(cron = "${users.follow-counters.reconcile-cron}")
+    @Transactional
+    public void reconcile() {
+
+        if (!userRepository.tryLockFollowCountersReconciliation()) {
+            log.info("Сверка счетчиков подписок уже выполняется на другой реплике");
+            return;
+        }
+        log.info("Сверка счетчиков подписчиков и подписок");
+        List<UUID> drifted = userRepository.findFollowCountersDrift();
+        if (drifted.isEmpty()) {
+            return;
+        }
+        // расхождение найдено по снимку без блокировок, пересчитываем уже под блокировкой строк
+        userRepository.lockByIdIn(drifted);
+        int fixed = userRepository.reconcileFollowCounters(drifted);
+        userEntityCache.evict(drifted);
+        if (fixed > 0) {
+            log.warn("Исправлены счетчики подписок у {} пользователей", fixed);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package ru.borisov.users.job;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.borisov.users.controller.request.UserIdsRequest;
+import ru.borisov.users.repository.SkillRepository;
+import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.service.UserService;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Прогрев перед приемом трафика: Spring Boot переводит readiness в ACCEPTING_TRAFFIC только после
+// выполнения всех ApplicationRunner'ов, поэтому под не получит запросов, пока прогрев не закончится
+@Component
+@Log4j2
+public class WarmUpRunner implements ApplicationRunner {
+
+    private static final String USERS_URL = "/api/users";
+    // сколько профилей участвует в синтетических запросах и в пакетном запросе lookup
+    private static final int MIX_PROFILES = 50;
+
+    private final DataSource dataSource;
+    private final SkillRepository skillRepository;
+    private final UserRepository userRepository;
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int topProfiles;
+    private final Duration maxDuration;
+    private final Duration requestTimeout;
+    private final int requestsPerRound;
+    private final Duration settleThreshold;
+    private final int settleRounds;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger skills = new AtomicInteger();
+    private final AtomicInteger profiles = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rounds = new AtomicInteger();
+
+    public WarmUpRunner(DataSource dataSource,
+                        SkillRepository skillRepository,
+                        UserRepository userRepository,
+                        UserService userService,
+                        ObjectMapper objectMapper,
+                        Environment environment,
+                        MeterRegistry meterRegistry,
+                        @Value("${users.warm-up.enabled}") boolean enabled,
+                        @Value("${users.warm-up.top-profiles}") int topProfiles,
+                        @Value("${users.warm-up.max-duration}") Duration maxDuration,
+                        @Value("${users.warm-up.request-timeout}") Duration requestTimeout,
+                        @Value("${users.warm-up.requests-per-round}") int requestsPerRound,
+                        @Value("${users.warm-up.settle-threshold}") Duration settleThreshold,
+                        @Value("${users.warm-up.settle-rounds}") int settleRounds) {
+        this.dataSource = dataSource;
+        this.skillRepository = skillRepository;
+        this.userRepository = userRepository;
+        this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.topProfiles = topProfiles;
+        this.maxDuration = maxDuration;
+        this.requestTimeout = requestTimeout;
+        this.requestsPerRound = requestsPerRound;
+        this.settleThreshold = settleThreshold;
+        this.settleRounds = settleRounds;
+
+        coverage("connections", connections);
+        coverage("skills", skills);
+        coverage("profiles", profiles);
+        coverage("requests", requests);
+        coverage("rounds", rounds);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+
+        if (!enabled) {
+            log.info("Прогрев сервиса отключен");
+            return;
+        }
+        log.info("Прогрев сервиса перед приемом трафика");
+        long start = System.nanoTime();
+
+        step("пул соединений", this::fillPool);
+        step("справочник навыков", this::loadSkills);
+        List<UUID> profileIds = new ArrayList<>();
+        step("популярные профили", () -> profileIds.addAll(loadTopProfiles()));
+        step("горячие пути API", () -> driveHotPaths(profileIds));
+
+        long elapsed = System.nanoTime() - start;
+        Timer.builder("users.warmup.duration")
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Прогрев завершен за {} мс: соединений {}, навыков {}, профилей {}, запросов {} за {} раундов",
+                TimeUnit.NANOSECONDS.toMillis(elapsed), connections.get(), skills.get(), profiles.get(),
+                requests.get(), rounds.get());
+    }
+
+    // Ошибка прогрева не должна мешать запуску: сервис просто стартует с холодными кэшами
+    private void step(String name, Runnable step) {
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            log.warn("Шаг прогрева \"{}\" не выполнен", name, e);
+        }
+    }
+
+    private void fillPool() {
+
+        int size = 1;
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                size = Math.max(1, dataSource.unwrap(HikariDataSource.class).getMinimumIdle());
+            }
+        } catch (SQLException e) {
+            log.debug("Не удалось определить размер пула соединений", e);
+        }
+
+        // держим все соединения одновременно, чтобы пул открыл их сейчас, а не под нагрузкой
+        List<Connection> borrowed = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                borrowed.add(dataSource.getConnection());
+                connections.incrementAndGet();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось открыть соединение с БД", e);
+        } finally {
+            for (Connection connection : borrowed) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.debug("Не удалось вернуть соединение в пул", e);
+                }
+            }
+        }
+    }
+
+    private void loadSkills() {
+        // навыки попадают в регион кэша второго уровня при загрузке
+        skills.set(skillRepository.findAll().size());
+    }
+
+    // Статистика запросов между перезапусками не хранится, поэтому популярность оцениваем по числу подписчиков
+    private List<UUID> loadTopProfiles() {
+
+        List<UUID> ids = userRepository.findMostFollowedIds(PageRequest.of(0, topProfiles));
+        for (UUID id : ids) {
+            userService.getUserById(id);
+            profiles.incrementAndGet();
+        }
+        return ids;
+    }
+
+    private void driveHotPaths(List<UUID> profileIds) {
+
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (port == null || port <= 0) {
+            log.info("Веб-сервер не запущен, прогрев API пропущен");
+            return;
+        }
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        List<HttpRequest> mix = syntheticMix("http://localhost:" + port + USERS_URL, profileIds);
+
+        // гоняем запросы, пока JIT не перестанет компилировать заметное количество кода
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean jitMonitored = jit != null && jit.isCompilationTimeMonitoringSupported();
+        long deadline = System.nanoTime() + maxDuration.toNanos();
+        int quietRounds = 0;
+        boolean expired = false;
+        while (quietRounds < settleRounds && !expired) {
+            long compiledBefore = jitMonitored ? jit.getTotalCompilationTime() : 0;
+            // срок проверяется перед каждым запросом: медленный ответ не растягивает прогрев на весь раунд
+            for (int i = 0; i < requestsPerRound && !expired; i++) {
+                send(client, mix.get(i % mix.size()));
+                expired = System.nanoTime() - deadline >= 0;
+            }
+            if (expired) {
+                break;
+            }
+            rounds.incrementAndGet();
+            long compiledMs = jitMonitored ? jit.getTotalCompilationTime() - compiledBefore : 0;
+            quietRounds = compiledMs <= settleThreshold.toMillis() ? quietRounds + 1 : 0;
+        }
+        if (quietRounds < settleRounds) {
+            log.warn("JIT не успокоился за {}, прогрев API остановлен по времени", maxDuration);
+        }
+    }
+
+    private List<HttpRequest> syntheticMix(String baseUrl, List<UUID> profileIds) {
+
+        List<UUID> ids = profileIds.stream()
+                .limit(MIX_PROFILES)
+                .toList();
+        List<HttpRequest> mix = new ArrayList<>();
+        mix.add(get(baseUrl + "?limit=20"));
+        for (UUID id : ids) {
+            mix.add(get(baseUrl + "/" + id));
+            mix.add(get(baseUrl + "/" + id + "/followers"));
+            mix.add(get(baseUrl + "/" + id + "/following"));
+        }
+        if (!ids.isEmpty()) {
+            mix.add(get(baseUrl + "?ids=" + ids.stream().map(UUID::toString).collect(Collectors.joining(","))));
+            mix.add(HttpRequest.newBuilder(URI.create(baseUrl + "/lookup"))
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(lookupBody(ids)))
+                    .build());
+        }
+        return mix;
+    }
+
+    private String lookupBody(List<UUID> ids) {
+        try {
+            return objectMapper.writeValueAsString(new UserIdsRequest(ids));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать запрос прогрева", e);
+        }
+    }
+
+    private HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+    }
+
+    private void send(HttpClient client, HttpRequest request) {
+        try {
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+            requests.incrementAndGet();
+        } catch (HttpTimeoutException e) {
+            // зависший запрос не останавливает прогрев: общий срок ограничен max-duration
+            log.debug("Запрос прогрева {} не уложился в {}", request.uri(), requestTimeout);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Прогрев прерван", e);
+        }
+    }
+
+    private void coverage(String item, AtomicInteger value) {
+        meterRegistry.gauge("users.warmup.coverage", Tags.of("item", item), value);
+    }
+}
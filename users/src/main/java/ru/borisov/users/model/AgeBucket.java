@@ -0,0 +1,46 @@
+package ru.borisov.users.model;
+
+import java.time.LocalDate;
+import java.time.Period;
+
+public enum AgeBucket {
+
+    UNDER_18(0, 17),
+    FROM_18_TO_24(18, 24),
+    FROM_25_TO_34(25, 34),
+    FROM_35_TO_44(35, 44),
+    FROM_45_TO_54(45, 54),
+    FROM_55(55, null);
+
+    private final int minAge;
+    private final Integer maxAge;
+
+    AgeBucket(int minAge, Integer maxAge) {
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+    }
+
+    public static AgeBucket of(LocalDate birthDate, LocalDate today) {
+
+        if (birthDate == null) {
+            return null;
+        }
+        int age = Period.between(birthDate, today).getYears();
+        for (AgeBucket bucket : values()) {
+            if (bucket.maxAge == null || age <= bucket.maxAge) {
+                return bucket;
+            }
+        }
+        return FROM_55;
+    }
+
+    // самая поздняя дата рождения, при которой сегодня уже исполнилось minAge
+    public LocalDate bornNotAfter(LocalDate today) {
+        return today.minusYears(minAge);
+    }
+
+    // null - группа без верхней границы возраста
+    public LocalDate bornAfter(LocalDate today) {
+        return maxAge == null ? null : today.minusYears(maxAge + 1L);
+    }
+}
@@ -20,6 +20,8 @@ import java.util.UUID;
 @Table(name = "_user")
 @SQLDelete(sql = "UPDATE users_scheme._user SET deleted = true WHERE id=?")
 @Where(clause = "deleted=false")
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @Getter
 @Setter
@@ -59,6 +61,7 @@ public class User {
     @ManyToMany(fetch = FetchType.LAZY,
             cascade = CascadeType.PERSIST)
     @BatchSize(size = 10)
+    @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(
             name = "user_skill",
             joinColumns = @JoinColumn(name = "user_id"),
@@ -85,22 +88,19 @@ public class User {
     @Builder.Default
     private Set<Subscription> following = new HashSet<>();
 
+    // счетчики меняются только атомарными UPDATE из FollowerRepositoryCustomImpl, сущность их не перезаписывает
+    @Column(insertable = false, updatable = false)
+    private int followersCount;
+
+    @Column(insertable = false, updatable = false)
+    private int followingCount;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
 
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
-    @Transient
-    public int getFollowersCount() {
-        return followers.size();
-    }
-
-    @Transient
-    public int getFollowingCount() {
-        return following.size();
-    }
-
     public boolean isInfoUpdated(UpdateUserInfoRequest request) {
         if (!Objects.equals(request.getLastName(), this.lastName)) {
             return true;
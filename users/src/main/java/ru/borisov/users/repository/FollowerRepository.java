@@ -1,13 +1,85 @@
 package ru.borisov.users.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.borisov.users.model.Subscription;
 import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSummary;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
-public interface FollowerRepository extends JpaRepository<Subscription, UUID> {
+public interface FollowerRepository extends JpaRepository<Subscription, UUID>, FollowerRepositoryCustom {
 
     Optional<Subscription> findByFromAndTo(User from, User to);
+
+    @Query("select s.to.id from Subscription s where s.from.id = :userId and s.to.id in :ids")
+    Set<UUID> findFollowedIds(@Param("userId") UUID userId, @Param("ids") Collection<UUID> ids);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from Subscription s
+            join s.from u
+            where s.to.id = :userId and u.deleted = false
+            order by s.from.id""")
+    List<UserSummary> findFollowers(@Param("userId") UUID userId, Pageable pageable);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from Subscription s
+            join s.from u
+            where s.to.id = :userId and s.from.id > :after and u.deleted = false
+            order by s.from.id""")
+    List<UserSummary> findFollowersAfter(@Param("userId") UUID userId,
+                                         @Param("after") UUID after,
+                                         Pageable pageable);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from Subscription s
+            join s.to u
+            where s.from.id = :userId and u.deleted = false
+            order by s.to.id""")
+    List<UserSummary> findFollowing(@Param("userId") UUID userId, Pageable pageable);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from Subscription s
+            join s.to u
+            where s.from.id = :userId and s.to.id > :after and u.deleted = false
+            order by s.to.id""")
+    List<UserSummary> findFollowingAfter(@Param("userId") UUID userId,
+                                         @Param("after") UUID after,
+                                         Pageable pageable);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from Subscription s
+            join s.to u
+            where s.from.id = :userId and u.deleted = false
+                and exists (select 1 from Subscription r where r.from.id = s.to.id and r.to.id = :userId)
+            order by s.to.id""")
+    List<UserSummary> findMutualFollows(@Param("userId") UUID userId, Pageable pageable);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from Subscription s
+            join s.to u
+            where s.from.id = :userId and s.to.id > :after and u.deleted = false
+                and exists (select 1 from Subscription r where r.from.id = s.to.id and r.to.id = :userId)
+            order by s.to.id""")
+    List<UserSummary> findMutualFollowsAfter(@Param("userId") UUID userId,
+                                             @Param("after") UUID after,
+                                             Pageable pageable);
 }
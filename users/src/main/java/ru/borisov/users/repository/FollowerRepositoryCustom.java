@@ -0,0 +1,18 @@
+package ru.borisov.users.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface FollowerRepositoryCustom {
+
+    boolean insertSubscription(UUID from, UUID to);
+
+    boolean deleteSubscription(UUID from, UUID to);
+
+    List<UUID> insertSubscriptions(UUID from, Collection<UUID> to);
+
+    List<UUID> deleteSubscriptions(UUID from, Collection<UUID> to);
+
+    List<UUID> detachDeletedUser(UUID userId);
+}
@@ -0,0 +1,165 @@
+package ru.borisov.users.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.borisov.users.cache.UserEntityCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+public class FollowerRepositoryCustomImpl implements FollowerRepositoryCustom {
+
+    private static final String INSERT_SUBSCRIPTION = """
+            WITH inserted AS (
+                INSERT INTO users_scheme.subscription (id, from_user_fk, to_user_fk)
+                SELECT gen_random_uuid(), :from, :to
+                WHERE NOT EXISTS (SELECT 1 FROM users_scheme._user WHERE id IN (:from, :to) AND deleted)
+                ON CONFLICT (from_user_fk, to_user_fk) DO NOTHING
+                RETURNING from_user_fk, to_user_fk
+            ), counters AS (
+                UPDATE users_scheme._user u
+                SET following_count = u.following_count + CASE WHEN u.id = i.from_user_fk THEN 1 ELSE 0 END,
+                    followers_count = u.followers_count + CASE WHEN u.id = i.to_user_fk THEN 1 ELSE 0 END
+                FROM inserted i
+                WHERE u.id IN (i.from_user_fk, i.to_user_fk)
+            )
+            SELECT count(*) FROM inserted""";
+
+    private static final String DELETE_SUBSCRIPTION = """
+            WITH deleted AS (
+                DELETE FROM users_scheme.subscription
+                WHERE from_user_fk = :from AND to_user_fk = :to
+                  AND NOT EXISTS (SELECT 1 FROM users_scheme._user WHERE id IN (:from, :to) AND deleted)
+                RETURNING from_user_fk, to_user_fk
+            ), counters AS (
+                UPDATE users_scheme._user u
+                SET following_count = u.following_count - CASE WHEN u.id = d.from_user_fk THEN 1 ELSE 0 END,
+                    followers_count = u.followers_count - CASE WHEN u.id = d.to_user_fk THEN 1 ELSE 0 END
+                FROM deleted d
+                WHERE u.id IN (d.from_user_fk, d.to_user_fk)
+            )
+            SELECT count(*) FROM deleted""";
+
+    // Подписки и оба счетчика меняются одним запросом; ON CONFLICT отсекает уже существующие подписки
+    private static final String INSERT_SUBSCRIPTIONS = """
+            WITH inserted AS (
+                INSERT INTO users_scheme.subscription (id, from_user_fk, to_user_fk)
+                SELECT gen_random_uuid(), :from, t.id
+                FROM users_scheme._user t
+                WHERE t.id IN (:to) AND NOT t.deleted
+                ON CONFLICT (from_user_fk, to_user_fk) DO NOTHING
+                RETURNING to_user_fk
+            ), counters AS (
+                UPDATE users_scheme._user u
+                SET followers_count = u.followers_count
+                        + CASE WHEN u.id IN (SELECT to_user_fk FROM inserted) THEN 1 ELSE 0 END,
+                    following_count = u.following_count
+                        + CASE WHEN u.id = :from THEN (SELECT count(*) FROM inserted) ELSE 0 END
+                WHERE (u.id = :from AND EXISTS (SELECT 1 FROM inserted))
+                   OR u.id IN (SELECT to_user_fk FROM inserted)
+            )
+            SELECT to_user_fk FROM inserted""";
+
+    private static final String DELETE_SUBSCRIPTIONS = """
+            WITH deleted AS (
+                DELETE FROM users_scheme.subscription s
+                USING users_scheme._user f, users_scheme._user t
+                WHERE s.from_user_fk = :from AND s.to_user_fk IN (:to)
+                  AND f.id = s.from_user_fk AND NOT f.deleted
+                  AND t.id = s.to_user_fk AND NOT t.deleted
+                RETURNING s.to_user_fk
+            ), counters AS (
+                UPDATE users_scheme._user u
+                SET followers_count = u.followers_count
+                        - CASE WHEN u.id IN (SELECT to_user_fk FROM deleted) THEN 1 ELSE 0 END,
+                    following_count = u.following_count
+                        - CASE WHEN u.id = :from THEN (SELECT count(*) FROM deleted) ELSE 0 END
+                WHERE (u.id = :from AND EXISTS (SELECT 1 FROM deleted))
+                   OR u.id IN (SELECT to_user_fk FROM deleted)
+            )
+            SELECT to_user_fk FROM deleted""";
+
+    // Подписки удаленного пользователя остаются в таблице, но сверка их не считает: снимаем их со счетчиков
+    // всех, на кого он подписан и кто подписан на него. Вызывать после мягкого удаления в той же транзакции -
+    // строка пользователя уже заблокирована, и новые подписки на него не пройдут проверку deleted
+    private static final String DETACH_DELETED_USER = """
+            WITH followed AS (
+                SELECT s.to_user_fk AS id FROM users_scheme.subscription s WHERE s.from_user_fk = :user
+            ), followers AS (
+                SELECT s.from_user_fk AS id FROM users_scheme.subscription s WHERE s.to_user_fk = :user
+            )
+            UPDATE users_scheme._user u
+            SET followers_count = u.followers_count - CASE WHEN u.id IN (SELECT id FROM followed) THEN 1 ELSE 0 END,
+                following_count = u.following_count - CASE WHEN u.id IN (SELECT id FROM followers) THEN 1 ELSE 0 END
+            WHERE NOT u.deleted
+              AND (u.id IN (SELECT id FROM followed) OR u.id IN (SELECT id FROM followers))
+            RETURNING u.id""";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final UserEntityCache userEntityCache;
+
+    @Override
+    public boolean insertSubscription(UUID from, UUID to) {
+        return affected(INSERT_SUBSCRIPTION, from, to);
+    }
+
+    @Override
+    public boolean deleteSubscription(UUID from, UUID to) {
+        return affected(DELETE_SUBSCRIPTION, from, to);
+    }
+
+    @Override
+    public List<UUID> insertSubscriptions(UUID from, Collection<UUID> to) {
+        List<UUID> inserted = jdbcTemplate.queryForList(INSERT_SUBSCRIPTIONS, params(from, to), UUID.class);
+        evictUsers(from, inserted);
+        return inserted;
+    }
+
+    @Override
+    public List<UUID> deleteSubscriptions(UUID from, Collection<UUID> to) {
+        List<UUID> deleted = jdbcTemplate.queryForList(DELETE_SUBSCRIPTIONS, params(from, to), UUID.class);
+        evictUsers(from, deleted);
+        return deleted;
+    }
+
+    @Override
+    public List<UUID> detachDeletedUser(UUID userId) {
+        List<UUID> counterparts = jdbcTemplate.queryForList(DETACH_DELETED_USER,
+                new MapSqlParameterSource("user", userId), UUID.class);
+        evictUsers(userId, counterparts);
+        return counterparts;
+    }
+
+    private boolean affected(String sql, UUID from, UUID to) {
+        Long count = jdbcTemplate.queryForObject(sql, new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to), Long.class);
+        boolean changed = count != null && count > 0;
+        if (changed) {
+            evictUsers(from, List.of(to));
+        }
+        return changed;
+    }
+
+    // Счетчики меняются в обход Hibernate, поэтому закэшированных пользователей сбрасываем вручную,
+    // вместе с их страницами подписок и подписчиков
+    private void evictUsers(UUID from, Collection<UUID> to) {
+        if (to.isEmpty()) {
+            return;
+        }
+        List<UUID> ids = new ArrayList<>(to);
+        ids.add(from);
+        userEntityCache.evict(ids);
+        userEntityCache.evictFollowPages(ids);
+    }
+
+    private MapSqlParameterSource params(UUID from, Collection<UUID> to) {
+        return new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+    }
+}
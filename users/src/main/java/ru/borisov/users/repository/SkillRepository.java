@@ -1,12 +1,16 @@
 package ru.borisov.users.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.borisov.users.model.Skill;
 
 import java.util.Optional;
 import java.util.UUID;
 
-public interface SkillRepository extends JpaRepository<Skill, UUID> {
+public interface SkillRepository extends JpaRepository<Skill, UUID>, SkillRepositoryCustom {
 
-    Optional<Skill> findByTitleIgnoreCase(String title);
+    // lower(), а не upper() из производного IgnoreCase-запроса: так поиск идет по индексу idx_unique_skill_lower_title
+    @Query("select s from Skill s where lower(s.title) = lower(:title)")
+    Optional<Skill> findByTitleIgnoreCase(@Param("title") String title);
 }
@@ -0,0 +1,23 @@
+package ru.borisov.users.repository;
+
+import ru.borisov.users.model.SkillType;
+import ru.borisov.users.repository.projection.SkillUpsert;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public interface SkillRepositoryCustom {
+
+    SkillUpsert upsertSkill(String title, SkillType skillType);
+
+    List<SkillUpsert> upsertSkills(Map<String, SkillType> skills);
+
+    Set<UUID> findUserSkillIds(UUID userId);
+
+    void insertUserSkills(UUID userId, Collection<UUID> skillIds);
+
+    void deleteUserSkills(UUID userId, Collection<UUID> skillIds);
+}
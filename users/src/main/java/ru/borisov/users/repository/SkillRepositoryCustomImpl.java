@@ -0,0 +1,112 @@
+package ru.borisov.users.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.borisov.users.model.SkillType;
+import ru.borisov.users.repository.projection.SkillUpsert;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+public class SkillRepositoryCustomImpl implements SkillRepositoryCustom {
+
+    // Пустой DO UPDATE нужен ради RETURNING: при DO NOTHING существующая строка не возвращается.
+    // xmax = 0 только у строки, вставленной этим запросом
+    private static final String UPSERT_SKILL = """
+            INSERT INTO users_scheme.skill (id, title, skill_type)
+            VALUES (gen_random_uuid(), lower(:title), :skillType)
+            ON CONFLICT (lower(title)) DO UPDATE SET title = users_scheme.skill.title
+            RETURNING id, title, skill_type, xmax = 0 AS inserted""";
+
+    // Названия вставляются в одном порядке, чтобы встречные пакеты не взаимоблокировались на строках навыков
+    private static final String UPSERT_SKILLS = """
+            INSERT INTO users_scheme.skill (id, title, skill_type)
+            SELECT gen_random_uuid(), lower(t.title), t.skill_type
+            FROM unnest(CAST(:titles AS text[]), CAST(:skillTypes AS text[])) AS t(title, skill_type)
+            ORDER BY lower(t.title)
+            ON CONFLICT (lower(title)) DO UPDATE SET title = users_scheme.skill.title
+            RETURNING id, title, skill_type, xmax = 0 AS inserted""";
+
+    private static final String FIND_USER_SKILL_IDS = """
+            SELECT skill_id FROM users_scheme.user_skill WHERE user_id = :userId""";
+
+    private static final String INSERT_USER_SKILL = """
+            INSERT INTO users_scheme.user_skill (user_id, skill_id)
+            VALUES (:userId, :skillId)
+            ON CONFLICT DO NOTHING""";
+
+    private static final String DELETE_USER_SKILL = """
+            DELETE FROM users_scheme.user_skill WHERE user_id = :userId AND skill_id = :skillId""";
+
+    private static final RowMapper<SkillUpsert> SKILL_UPSERT_MAPPER = (rs, rowNum) -> new SkillUpsert(
+            rs.getObject("id", UUID.class),
+            rs.getString("title"),
+            rs.getString("skill_type") == null ? null : SkillType.valueOf(rs.getString("skill_type")),
+            rs.getBoolean("inserted"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public SkillUpsert upsertSkill(String title, SkillType skillType) {
+        return jdbcTemplate.queryForObject(UPSERT_SKILL, new MapSqlParameterSource()
+                .addValue("title", title)
+                .addValue("skillType", skillType == null ? null : skillType.name()), SKILL_UPSERT_MAPPER);
+    }
+
+    // Названия должны быть уже нормализованы (SkillCatalogue.normalize): повтор ключа в одном ON CONFLICT DO UPDATE - ошибка
+    @Override
+    public List<SkillUpsert> upsertSkills(Map<String, SkillType> skills) {
+
+        if (skills.isEmpty()) {
+            return List.of();
+        }
+        String[] titles = new String[skills.size()];
+        String[] skillTypes = new String[skills.size()];
+        int i = 0;
+        for (Map.Entry<String, SkillType> skill : skills.entrySet()) {
+            titles[i] = skill.getKey();
+            skillTypes[i] = skill.getValue() == null ? null : skill.getValue().name();
+            i++;
+        }
+        return jdbcTemplate.query(UPSERT_SKILLS, new MapSqlParameterSource()
+                .addValue("titles", titles)
+                .addValue("skillTypes", skillTypes), SKILL_UPSERT_MAPPER);
+    }
+
+    @Override
+    public Set<UUID> findUserSkillIds(UUID userId) {
+        return new HashSet<>(jdbcTemplate.queryForList(FIND_USER_SKILL_IDS,
+                new MapSqlParameterSource("userId", userId), UUID.class));
+    }
+
+    @Override
+    public void insertUserSkills(UUID userId, Collection<UUID> skillIds) {
+        batch(INSERT_USER_SKILL, userId, skillIds);
+    }
+
+    @Override
+    public void deleteUserSkills(UUID userId, Collection<UUID> skillIds) {
+        batch(DELETE_USER_SKILL, userId, skillIds);
+    }
+
+    // Один пакет JDBC на все строки вместо отдельного запроса на каждую
+    private void batch(String sql, UUID userId, Collection<UUID> skillIds) {
+
+        if (skillIds.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource[] batch = skillIds.stream()
+                .map(skillId -> new MapSqlParameterSource()
+                        .addValue("userId", userId)
+                        .addValue("skillId", skillId))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(sql, batch);
+    }
+}
@@ -1,13 +1,118 @@
 package ru.borisov.users.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSummary;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface UserRepository extends JpaRepository<User, UUID> {
+public interface UserRepository extends JpaRepository<User, UUID>, UserRepositoryCustom {
 
     //    @Query(value = "SELECT EXISTS(SELECT 1 FROM users_scheme._user WHERE username = :username)", nativeQuery = true)
     boolean existsByUsername(@Param("username") String username);
+
+    @Query("select u.id from User u where u.username = :username")
+    Optional<UUID> findIdByUsername(@Param("username") String username);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from User u
+            order by u.id""")
+    List<UserSummary> findSummaries(Pageable pageable);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from User u
+            where u.id > :after
+            order by u.id""")
+    List<UserSummary> findSummariesAfter(@Param("after") UUID after, Pageable pageable);
+
+    @Query("""
+            select new ru.borisov.users.repository.projection.UserSummary(
+                u.id, u.username, u.firstName, u.lastName, u.profileImage)
+            from User u
+            where u.id in :ids""")
+    List<UserSummary> findSummariesByIdIn(@Param("ids") Collection<UUID> ids);
+
+    @Query("select u from User u left join fetch u.skills where u.id in :ids")
+    List<User> findAllWithSkillsByIdIn(@Param("ids") Collection<UUID> ids);
+
+    @Query("select u.id from User u where u.id in :ids")
+    Set<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    // Только для прогрева при старте пода: индекса по followers_count нет, поэтому это полный проход
+    // по _user с top-N сортировкой. Индекс не заводим: счетчик меняется при каждой подписке, и индекс
+    // лишил бы эти UPDATE'ы HOT-обновлений
+    @Query("select u.id from User u order by u.followersCount desc")
+    List<UUID> findMostFollowedIds(Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("select u from User u order by u.id")
+    Stream<User> streamAll();
+
+    // Сверку запускает каждая реплика: выполняет ее только та, что получила блокировку до конца транзакции
+    @Query(value = "SELECT pg_try_advisory_xact_lock(hashtext('users_scheme.follow_counters_reconciliation'))",
+            nativeQuery = true)
+    boolean tryLockFollowCountersReconciliation();
+
+    @Query(value = """
+            SELECT x.id
+            FROM users_scheme._user x
+            WHERE x.followers_count <> (SELECT count(*)
+                                        FROM users_scheme.subscription s
+                                                 JOIN users_scheme._user f ON f.id = s.from_user_fk
+                                        WHERE s.to_user_fk = x.id AND NOT f.deleted)
+               OR x.following_count <> (SELECT count(*)
+                                        FROM users_scheme.subscription s
+                                                 JOIN users_scheme._user t ON t.id = s.to_user_fk
+                                        WHERE s.from_user_fk = x.id AND NOT t.deleted)""",
+            nativeQuery = true)
+    List<UUID> findFollowCountersDrift();
+
+    // Подписка меняет счетчики под блокировкой строки пользователя: пока она у нас, новых подписок
+    // на этих пользователей не появится, а следующий запрос увидит все уже закоммиченные
+    @Query(value = "SELECT u.id FROM users_scheme._user u WHERE u.id IN (:ids) ORDER BY u.id FOR UPDATE",
+            nativeQuery = true)
+    List<UUID> lockByIdIn(@Param("ids") Collection<UUID> ids);
+
+    // Вызывать только после lockByIdIn в той же транзакции: иначе пересчет по снимку начала запроса
+    // затрет параллельно примененные инкременты
+    @Modifying
+    @Query(value = """
+            UPDATE users_scheme._user u
+            SET followers_count = c.followers,
+                following_count = c.following
+            FROM (SELECT x.id,
+                         (SELECT count(*)
+                          FROM users_scheme.subscription s
+                                   JOIN users_scheme._user f ON f.id = s.from_user_fk
+                          WHERE s.to_user_fk = x.id AND NOT f.deleted) AS followers,
+                         (SELECT count(*)
+                          FROM users_scheme.subscription s
+                                   JOIN users_scheme._user t ON t.id = s.to_user_fk
+                          WHERE s.from_user_fk = x.id AND NOT t.deleted) AS following
+                  FROM users_scheme._user x
+                  WHERE x.id IN (:ids)) c
+            WHERE u.id = c.id
+              AND (u.followers_count <> c.followers OR u.following_count <> c.following)""",
+            nativeQuery = true)
+    int reconcileFollowCounters(@Param("ids") Collection<UUID> ids);
 }
@@ -0,0 +1,22 @@
+package ru.borisov.users.repository;
+
+import org.springframework.data.domain.Pageable;
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
+import ru.borisov.users.repository.projection.UserSearchHit;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils.RankedKey;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+public interface UserRepositoryCustom {
+
+    List<UserSummary> findDirectoryPage(String city, Gender gender, AgeBucket age, LocalDate today,
+                                        UUID after, Pageable pageable);
+
+    List<UserSearchHit> searchByText(String query, RankedKey after, Pageable pageable);
+
+    List<UserSummary> findByUsernameSimilarTo(String query, int limit);
+}
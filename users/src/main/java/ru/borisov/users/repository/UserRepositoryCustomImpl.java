@@ -0,0 +1,156 @@
+package ru.borisov.users.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
+import ru.borisov.users.model.User;
+import ru.borisov.users.repository.projection.UserSearchHit;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils.RankedKey;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    // Ранг считается один раз во внутреннем запросе; совпадения ищутся по GIN-индексу idx_gin_user_search_vector.
+    // Порядок (rank, id) по убыванию, следующая страница - строки строго ниже курсора
+    private static final String SEARCH_BY_TEXT = """
+            SELECT r.id, r.username, r.first_name, r.last_name, r.profile_image, r.rank
+            FROM (SELECT u.id, u.username, u.first_name, u.last_name, u.profile_image,
+                         ts_rank(u.search_vector, q.query) AS rank
+                  FROM users_scheme._user u,
+                       websearch_to_tsquery('simple', :query) AS q(query)
+                  WHERE NOT u.deleted
+                    AND u.search_vector @@ q.query) r
+            %s
+            ORDER BY r.rank DESC, r.id DESC
+            LIMIT :limit""";
+
+    private static final String AFTER_RANKED_KEY = "WHERE (r.rank, r.id) < (:afterRank, :afterId)";
+
+    // Оба условия обслуживает триграммный индекс idx_gist_user_username_trgm: ILIKE - вхождение подстроки,
+    // % - похожие ники (порог pg_trgm.similarity_threshold, по умолчанию 0.3), <-> - расстояние 1 - similarity.
+    // Каждая ветка читает индекс в порядке расстояния (KNN) и останавливается на limit строках: условие через OR
+    // индекс в таком порядке отдать не может, и пришлось бы сортировать все совпадения
+    private static final String FIND_BY_USERNAME_SIMILAR_TO = """
+            SELECT c.id, c.username, c.first_name, c.last_name, c.profile_image
+            FROM ((SELECT u.id, u.username, u.first_name, u.last_name, u.profile_image,
+                          u.username <-> :query AS distance
+                   FROM users_scheme._user u
+                   WHERE NOT u.deleted
+                     AND u.username ILIKE :pattern
+                   ORDER BY u.username <-> :query, u.username
+                   LIMIT :limit)
+                  UNION
+                  (SELECT u.id, u.username, u.first_name, u.last_name, u.profile_image,
+                          u.username <-> :query AS distance
+                   FROM users_scheme._user u
+                   WHERE NOT u.deleted
+                     AND u.username % :query
+                   ORDER BY u.username <-> :query, u.username
+                   LIMIT :limit)) c
+            ORDER BY c.distance, c.username
+            LIMIT :limit""";
+
+    private static final RowMapper<UserSummary> SUMMARY_MAPPER = (rs, rowNum) -> new UserSummary(
+            rs.getObject("id", UUID.class),
+            rs.getString("username"),
+            rs.getString("first_name"),
+            rs.getString("last_name"),
+            rs.getString("profile_image"));
+
+    private static final RowMapper<UserSearchHit> SEARCH_HIT_MAPPER = (rs, rowNum) -> new UserSearchHit(
+            rs.getObject("id", UUID.class),
+            rs.getString("username"),
+            rs.getString("first_name"),
+            rs.getString("last_name"),
+            rs.getString("profile_image"),
+            rs.getFloat("rank"));
+
+    private final EntityManager entityManager;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Условия добавляются только для заданных фильтров; порядок по id - для постраничного вывода по курсору
+    @Override
+    public List<UserSummary> findDirectoryPage(String city, Gender gender, AgeBucket age, LocalDate today,
+                                               UUID after, Pageable pageable) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<UserSummary> query = cb.createQuery(UserSummary.class);
+        Root<User> user = query.from(User.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (city != null) {
+            predicates.add(cb.equal(user.get("city"), city));
+        }
+        if (gender != null) {
+            predicates.add(cb.equal(user.get("gender"), gender));
+        }
+        if (age != null) {
+            predicates.add(cb.lessThanOrEqualTo(user.<LocalDate>get("birthDate"), age.bornNotAfter(today)));
+            LocalDate bornAfter = age.bornAfter(today);
+            if (bornAfter != null) {
+                predicates.add(cb.greaterThan(user.<LocalDate>get("birthDate"), bornAfter));
+            }
+        }
+        if (after != null) {
+            predicates.add(cb.greaterThan(user.<UUID>get("id"), after));
+        }
+
+        query.select(cb.construct(UserSummary.class,
+                        user.get("id"),
+                        user.get("username"),
+                        user.get("firstName"),
+                        user.get("lastName"),
+                        user.get("profileImage")))
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(cb.asc(user.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+    }
+
+    @Override
+    public List<UserSearchHit> searchByText(String query, RankedKey after, Pageable pageable) {
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("query", query)
+                .addValue("limit", pageable.getPageSize());
+        if (after != null) {
+            params.addValue("afterRank", after.rank())
+                    .addValue("afterId", after.id());
+        }
+        String sql = SEARCH_BY_TEXT.formatted(after == null ? "" : AFTER_RANKED_KEY);
+        return jdbcTemplate.query(sql, params, SEARCH_HIT_MAPPER);
+    }
+
+    @Override
+    public List<UserSummary> findByUsernameSimilarTo(String query, int limit) {
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("query", query)
+                .addValue("pattern", "%" + escapeLike(query) + "%")
+                .addValue("limit", limit);
+        return jdbcTemplate.query(FIND_BY_USERNAME_SIMILAR_TO, params, SUMMARY_MAPPER);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -0,0 +1,8 @@
+package ru.borisov.users.repository.projection;
+
+import ru.borisov.users.model.SkillType;
+
+import java.util.UUID;
+
+public record SkillUpsert(UUID id, String title, SkillType skillType, boolean inserted) {
+}
@@ -0,0 +1,15 @@
+package ru.borisov.users.repository.projection;
+
+import java.util.UUID;
+
+public record UserSearchHit(UUID id,
+                            String username,
+                            String firstName,
+                            String lastName,
+                            String profileImage,
+                            float rank) {
+
+    public UserSummary toSummary() {
+        return new UserSummary(id, username, firstName, lastName, profileImage);
+    }
+}
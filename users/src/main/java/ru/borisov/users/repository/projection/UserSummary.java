@@ -0,0 +1,10 @@
+package ru.borisov.users.repository.projection;
+
+import java.util.UUID;
+
+public record UserSummary(UUID id,
+                          String username,
+                          String firstName,
+                          String lastName,
+                          String profileImage) {
+}
@@ -0,0 +1,7 @@
+package ru.borisov.users.service;
+
+import java.util.UUID;
+
+// Ключ страницы подписчиков (followers=true) или подписок пользователя
+public record FollowPageKey(UUID userId, boolean followers, int limit, String after) {
+}
@@ -0,0 +1,49 @@
+package ru.borisov.users.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.error.Code;
+import ru.borisov.users.repository.FollowerRepository;
+import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+// Загрузка страницы подписчиков или подписок в отдельной транзакции с ограничением на время запросов
+@Component
+@RequiredArgsConstructor
+public class FollowPageLoader {
+
+    private final UserRepository userRepository;
+    private final FollowerRepository followerRepository;
+
+    @Transactional(readOnly = true, timeoutString = "${users.stale-cache.read-timeout}")
+    public CursorPage<UserSummary> load(FollowPageKey key) {
+
+        Pageable page = CursorUtils.pageOf(key.limit());
+        UUID cursor = key.after() == null ? null : CursorUtils.decode(key.after());
+        if (!userRepository.existsById(key.userId())) {
+            throw new CommonException(Code.USER_NOT_FOUND,
+                    "Пользователя с id=" + key.userId() + " не существует!",
+                    HttpStatus.NOT_FOUND);
+        }
+        List<UserSummary> rows;
+        if (key.followers()) {
+            rows = cursor == null
+                    ? followerRepository.findFollowers(key.userId(), page)
+                    : followerRepository.findFollowersAfter(key.userId(), cursor, page);
+        } else {
+            rows = cursor == null
+                    ? followerRepository.findFollowing(key.userId(), page)
+                    : followerRepository.findFollowingAfter(key.userId(), cursor, page);
+        }
+        return CursorUtils.toPage(rows, key.limit(), UserSummary::id);
+    }
+}
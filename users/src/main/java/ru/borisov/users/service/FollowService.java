@@ -1,6 +1,12 @@
 package ru.borisov.users.service;
 
+import ru.borisov.users.controller.request.UserIdsRequest;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.FollowResult;
+import ru.borisov.users.repository.projection.UserSummary;
+
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public interface FollowService {
@@ -8,4 +14,11 @@ public interface FollowService {
 
     void unfollow(UUID userId, UUID followingUserId);
 
+    List<FollowResult> followAll(UUID userId, UserIdsRequest request);
+
+    List<FollowResult> unfollowAll(UUID userId, UserIdsRequest request);
+
+    Map<UUID, Boolean> getFollowState(UUID userId, UserIdsRequest request);
+
+    CursorPage<UserSummary> getMutualFollows(UUID userId, int limit, String after);
 }
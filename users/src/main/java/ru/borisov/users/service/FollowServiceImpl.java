@@ -3,16 +3,30 @@ package ru.borisov.users.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.borisov.users.cache.FollowGraphIndex;
+import ru.borisov.users.cache.FollowStateCache;
+import ru.borisov.users.controller.request.UserIdsRequest;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.FollowResult;
+import ru.borisov.users.controller.response.FollowStatus;
 import ru.borisov.users.exception.CommonException;
 import ru.borisov.users.exception.error.Code;
-import ru.borisov.users.model.Subscription;
-import ru.borisov.users.model.User;
 import ru.borisov.users.repository.FollowerRepository;
-
-import java.util.Optional;
+import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
+import ru.borisov.users.util.ValidationUtils;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -21,49 +35,145 @@ import java.util.UUID;
 public class FollowServiceImpl implements FollowService {
 
     private final FollowerRepository followerRepository;
-    private final UserService userService;
+    private final UserRepository userRepository;
+    private final ValidationUtils validationUtils;
+    private final FollowStateCache followStateCache;
+    private final FollowGraphIndex followGraphIndex;
 
+    // Подписка и счетчики меняются одним атомарным запросом, поэтому внешняя транзакция не нужна:
+    // при ошибке запроса можно сразу уточнить причину отдельными запросами
     @Override
-    @Transactional
     public void follow(UUID userId, UUID followingUserId) {
 
         log.info("Пользователь с id={} отправил запрос на подписку пользователю {}", userId::toString, followingUserId::toString);
-        User from = userService.getUserById(userId);
-        User to = userService.getUserById(followingUserId);
+        boolean followed;
+        try {
+            followed = followerRepository.insertSubscription(userId, followingUserId);
+        } catch (DataIntegrityViolationException e) {
+            // нарушен внешний ключ: одного из пользователей нет в базе
+            checkUserExists(userId);
+            checkUserExists(followingUserId);
+            throw e;
+        }
 
-        if (followerRepository.findByFromAndTo(from, to).isPresent()) {
+        if (!followed) {
+            checkUserExists(userId);
+            checkUserExists(followingUserId);
             throw new CommonException(Code.CONFLICT,
                     "Вы уже подписаны на этого пользователя!",
                     HttpStatus.CONFLICT);
         }
 
-        Subscription subscription = Subscription.builder()
-                .from(from)
-                .to(to)
-                .build();
+        followStateCache.evict(userId, List.of(followingUserId));
+        followGraphIndex.followed(userId, List.of(followingUserId));
+        log.info("Пользователь с id={} подписался на пользователя с id={}", userId::toString, followingUserId::toString);
+    }
 
-        followerRepository.save(subscription);
 
+    @Override
+    public void unfollow(UUID userId, UUID followingUserId) {
+
+        log.info("Пользователь с id={} отправил запрос на отписку от пользователя {}", userId::toString, followingUserId::toString);
+        if (!followerRepository.deleteSubscription(userId, followingUserId)) {
+            checkUserExists(userId);
+            checkUserExists(followingUserId);
+            throw new CommonException(Code.CONFLICT,
+                    "Вы не подписаны на этого пользователя!",
+                    HttpStatus.CONFLICT);
+        }
 
-        log.info("Пользователь {} подписался на пользователя {}", from::getUsername, to::getUsername);
+        followStateCache.evict(userId, List.of(followingUserId));
+        followGraphIndex.unfollowed(userId, List.of(followingUserId));
+        log.info("Пользователь с id={} отписался от пользователя с id={}", userId::toString, followingUserId::toString);
     }
 
+    @Override
+    @Transactional
+    public List<FollowResult> followAll(UUID userId, UserIdsRequest request) {
+
+        log.info("Пользователь с id={} отправил запрос на пакетную подписку. Тело запроса: {}", userId::toString, request::toString);
+        validationUtils.validateRequest(request);
+        checkUserExists(userId);
+
+        Set<UUID> targets = new LinkedHashSet<>(request.getUserIds());
+        Set<UUID> existing = userRepository.findExistingIds(targets);
+        Set<UUID> followed = existing.isEmpty()
+                ? Set.of()
+                : new HashSet<>(followerRepository.insertSubscriptions(userId, existing));
+
+        followStateCache.evict(userId, followed);
+        followGraphIndex.followed(userId, followed);
+        log.info("Пользователь с id={} подписался на {} пользователей", userId::toString, followed::size);
+        return targets.stream()
+                .map(id -> new FollowResult(id, !existing.contains(id)
+                        ? FollowStatus.USER_NOT_FOUND
+                        : followed.contains(id) ? FollowStatus.FOLLOWED : FollowStatus.ALREADY_FOLLOWING))
+                .toList();
+    }
 
     @Override
     @Transactional
-    public void unfollow(UUID userId, UUID followingUserId) {
-        User from = userService.getUserById(userId);
-        User to = userService.getUserById(followingUserId);
+    public List<FollowResult> unfollowAll(UUID userId, UserIdsRequest request) {
+
+        log.info("Пользователь с id={} отправил запрос на пакетную отписку. Тело запроса: {}", userId::toString, request::toString);
+        validationUtils.validateRequest(request);
+        checkUserExists(userId);
+
+        Set<UUID> targets = new LinkedHashSet<>(request.getUserIds());
+        Set<UUID> existing = userRepository.findExistingIds(targets);
+        Set<UUID> unfollowed = existing.isEmpty()
+                ? Set.of()
+                : new HashSet<>(followerRepository.deleteSubscriptions(userId, existing));
+
+        followStateCache.evict(userId, unfollowed);
+        followGraphIndex.unfollowed(userId, unfollowed);
+        log.info("Пользователь с id={} отписался от {} пользователей", userId::toString, unfollowed::size);
+        return targets.stream()
+                .map(id -> new FollowResult(id, !existing.contains(id)
+                        ? FollowStatus.USER_NOT_FOUND
+                        : unfollowed.contains(id) ? FollowStatus.UNFOLLOWED : FollowStatus.NOT_FOLLOWING))
+                .toList();
+    }
 
-        Optional<Subscription> followerOptional = followerRepository.findByFromAndTo(from, to);
+    @Override
+    public Map<UUID, Boolean> getFollowState(UUID userId, UserIdsRequest request) {
 
-        if (followerOptional.isEmpty()) {
-            throw new CommonException(Code.CONFLICT,
-                    "Вы не подписаны на этого пользователя!",
-                    HttpStatus.CONFLICT);
+        log.info("Запрос состояния подписок пользователя с id={}. Тело запроса: {}", userId::toString, request::toString);
+        validationUtils.validateRequest(request);
+
+        // пока граф подписок загружается, состояние берется из кэша и БД
+        if (followGraphIndex.isLoaded()) {
+            Map<UUID, Boolean> states = new LinkedHashMap<>();
+            request.getUserIds().forEach(id -> states.put(id, followGraphIndex.follows(userId, id)));
+            return states;
         }
+        return followStateCache.getAll(userId, request.getUserIds(),
+                candidateIds -> followerRepository.findFollowedIds(userId, candidateIds));
+    }
 
-        followerRepository.delete(followerOptional.get());
-        log.info("Пользователь {} отписался от пользователя {}", from.getUsername(), to.getUsername());
+    @Override
+    public CursorPage<UserSummary> getMutualFollows(UUID userId, int limit, String after) {
+
+        CursorUtils.checkLimit(limit);
+        checkUserExists(userId);
+        UUID cursor = after == null ? null : CursorUtils.decode(after);
+        if (!followGraphIndex.isLoaded()) {
+            // граф загружается или не поместился в память: страница из БД
+            List<UserSummary> rows = cursor == null
+                    ? followerRepository.findMutualFollows(userId, CursorUtils.pageOf(limit))
+                    : followerRepository.findMutualFollowsAfter(userId, cursor, CursorUtils.pageOf(limit));
+            return CursorUtils.toPage(rows, limit, UserSummary::id);
+        }
+        List<UUID> ids = followGraphIndex.mutual(userId, cursor, limit + 1);
+        return CursorUtils.toPage(ids, limit, userRepository::findSummariesByIdIn, UserSummary::id);
+    }
+
+    private void checkUserExists(UUID userId) {
+
+        if (!userRepository.existsById(userId)) {
+            throw new CommonException(Code.USER_NOT_FOUND,
+                    "Пользователя с id=" + userId + " не существует!",
+                    HttpStatus.NOT_FOUND);
+        }
     }
 }
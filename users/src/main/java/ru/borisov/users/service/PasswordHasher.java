@@ -0,0 +1,88 @@
+package ru.borisov.users.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.error.Code;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Хеширование паролей на отдельном пуле по числу ядер: BCrypt не занимает потоки Tomcat сверх лимита,
+// а при заполненной очереди регистрация сразу получает 503 вместо ожидания
+@Component
+@Log4j2
+public class PasswordHasher {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final Duration timeout;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          MeterRegistry meterRegistry,
+                          @Value("${users.password-hashing.threads}") int threads,
+                          @Value("${users.password-hashing.queue-capacity}") int queueCapacity,
+                          @Value("${users.password-hashing.timeout}") Duration timeout) {
+        this.passwordEncoder = passwordEncoder;
+        this.timeout = timeout;
+        // 0 - по числу доступных ядер
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        meterRegistry.gauge("users.password.hashing.queue", Tags.empty(), executor, pool -> pool.getQueue().size());
+    }
+
+    public String hash(String rawPassword) {
+
+        Future<String> hash;
+        try {
+            hash = executor.submit(() -> passwordEncoder.encode(rawPassword));
+        } catch (RejectedExecutionException e) {
+            log.warn("Очередь хеширования паролей заполнена, регистрация отклонена");
+            throw overloaded();
+        }
+        try {
+            return hash.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            hash.cancel(true);
+            log.warn("Хеширование пароля не уложилось в {}", timeout);
+            throw overloaded();
+        } catch (InterruptedException e) {
+            hash.cancel(true);
+            Thread.currentThread().interrupt();
+            throw overloaded();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Не удалось вычислить хеш пароля", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    private static CommonException overloaded() {
+        return new CommonException(Code.SERVICE_UNAVAILABLE,
+                "Сервис перегружен регистрациями, повторите попытку позже",
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
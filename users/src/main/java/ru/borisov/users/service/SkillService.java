@@ -1,13 +1,23 @@
 package ru.borisov.users.service;
 
 import ru.borisov.users.controller.request.AddSkillRequest;
-import ru.borisov.users.model.Skill;
+import ru.borisov.users.controller.request.ReplaceSkillsRequest;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.repository.projection.UserSummary;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface SkillService {
 
-    Skill addSkillToUser(AddSkillRequest request, UUID id);
+    SkillView addSkillToUser(AddSkillRequest request, UUID id);
 
     void removeSkillFromUser(UUID userId, UUID skillId);
+
+    List<SkillView> replaceUserSkills(ReplaceSkillsRequest request, UUID id);
+
+    List<SkillView> findSkillsByPrefix(String prefix, int limit);
+
+    CursorPage<UserSummary> findUsersBySkills(List<String> skills, List<String> without, int limit, String after);
 }
@@ -5,17 +5,35 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.borisov.users.cache.SkillCatalogue;
+import ru.borisov.users.cache.SkillUserIndex;
+import ru.borisov.users.cache.UserEntityCache;
 import ru.borisov.users.controller.request.AddSkillRequest;
+import ru.borisov.users.controller.request.ReplaceSkillsRequest;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.SkillView;
 import ru.borisov.users.exception.CommonException;
 import ru.borisov.users.exception.error.Code;
 import ru.borisov.users.model.Skill;
+import ru.borisov.users.model.SkillType;
 import ru.borisov.users.model.User;
 import ru.borisov.users.repository.SkillRepository;
 import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.repository.projection.SkillUpsert;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
 import ru.borisov.users.util.ValidationUtils;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -25,36 +43,26 @@ public class SkillServiceImpl implements SkillService {
     private final UserRepository userRepository;
     private final SkillRepository skillRepository;
     private final ValidationUtils validationUtils;
+    private final UserEntityCache userEntityCache;
+    private final SkillCatalogue skillCatalogue;
+    private final SkillUserIndex skillUserIndex;
 
 
     @Override
     @Transactional
-    public Skill addSkillToUser(AddSkillRequest request, UUID id) {
+    public SkillView addSkillToUser(AddSkillRequest request, UUID id) {
 
         log.info("Запрос на добавление навыка от пользователя c id={}. Тело запроса: {} ", id::toString, request::toString);
         validationUtils.validateRequest(request);
         User user = getUserById(id);
-        Skill skill;
-        Optional<Skill> skillOptional = skillRepository.findByTitleIgnoreCase(request.getTitle());
-        if (skillOptional.isPresent()) {
-            skill = skillOptional.get();
-            user.getSkills().add(skill);
-            userRepository.save(user);
-
-            log.info("Пользователь {} добавил навык {}", user::getUsername, skill::getTitle);
-            return skill;
-        }
-
-        skill = Skill.builder()
-                .title(request.getTitle().toLowerCase()) // сохраняем все в нижнем регистре
-                .skillType(request.getSkillType())
-                .build();
-        skill = skillRepository.save(skill);
+        Skill skill = resolveSkill(SkillCatalogue.normalize(request.getTitle()), request.getSkillType());
         user.getSkills().add(skill);
         userRepository.save(user);
+        userEntityCache.invalidateProfile(id);
+        skillUserIndex.changed(id, List.of(skill.getId()), List.of());
         log.info("Пользователь {} добавил навык {}", user::getUsername, skill::getTitle);
 
-        return skill;
+        return SkillView.from(skill);
     }
 
     @Override
@@ -69,14 +77,130 @@ public class SkillServiceImpl implements SkillService {
 
         user.getSkills().remove(skill);
         userRepository.save(user);
+        userEntityCache.invalidateProfile(userId);
+        skillUserIndex.changed(userId, List.of(), List.of(skillId));
 
         log.info("Пользователь {} удалил у себя навык {}", user::getUsername, skill::getTitle);
     }
 
+    // Пользователь не загружается: разница с user_skill применяется пакетами JDBC в одной транзакции
+    @Override
+    @Transactional
+    public List<SkillView> replaceUserSkills(ReplaceSkillsRequest request, UUID id) {
+
+        log.info("Запрос на замену навыков пользователя c id={}. Тело запроса: {} ", id::toString, request::toString);
+        validationUtils.validateRequest(request);
+        if (!userRepository.existsById(id)) {
+            throw userNotFound(id);
+        }
+        Map<String, SkillType> wanted = new TreeMap<>();
+        for (AddSkillRequest skill : request.getSkills()) {
+            wanted.putIfAbsent(SkillCatalogue.normalize(skill.getTitle()), skill.getSkillType());
+        }
+        List<SkillView> skills = resolveSkills(wanted);
+
+        Set<UUID> current = skillRepository.findUserSkillIds(id);
+        Set<UUID> desired = skills.stream()
+                .map(SkillView::id)
+                .collect(Collectors.toSet());
+        List<UUID> added = desired.stream()
+                .filter(Predicate.not(current::contains))
+                .toList();
+        List<UUID> removed = current.stream()
+                .filter(Predicate.not(desired::contains))
+                .toList();
+        skillRepository.insertUserSkills(id, added);
+        skillRepository.deleteUserSkills(id, removed);
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            userEntityCache.evict(List.of(id));
+            skillUserIndex.changed(id, added, removed);
+        }
+        log.info("Пользователю {} добавлено навыков: {}, удалено: {}", id::toString, added::size, removed::size);
+
+        return skills;
+    }
+
+    @Override
+    public List<SkillView> findSkillsByPrefix(String prefix, int limit) {
+
+        CursorUtils.checkLimit(limit);
+        return skillCatalogue.findByPrefix(prefix, limit);
+    }
+
+    // Пересечение множеств считается в индексе навыков в памяти, из БД читается только одна страница пользователей
+    @Override
+    public CursorPage<UserSummary> findUsersBySkills(List<String> skills, List<String> without, int limit, String after) {
+
+        CursorUtils.checkLimit(limit);
+        if (skills == null || skills.isEmpty()) {
+            throw new CommonException(Code.BAD_REQUEST,
+                    "Нужно указать хотя бы один навык, который должен быть у пользователя",
+                    HttpStatus.BAD_REQUEST);
+        }
+        List<UUID> required = new ArrayList<>(skills.size());
+        for (String title : skills) {
+            Optional<SkillView> skill = skillCatalogue.findByTitle(title);
+            if (skill.isEmpty()) {
+                // такого навыка нет ни у кого
+                return new CursorPage<>(List.of(), null);
+            }
+            required.add(skill.get().id());
+        }
+        List<UUID> excluded = without == null ? List.of() : without.stream()
+                .map(skillCatalogue::findByTitle)
+                .flatMap(Optional::stream)
+                .map(SkillView::id)
+                .toList();
+
+        UUID cursor = after == null ? null : CursorUtils.decode(after);
+        List<UUID> ids = skillUserIndex.search(required, excluded, cursor, limit + 1);
+        return CursorUtils.toPage(ids, limit, userRepository::findSummariesByIdIn, UserSummary::id);
+    }
+
+    // Сначала справочник в памяти, затем по id через L2-кэш сущностей.
+    // Новый навык создается одним INSERT ... ON CONFLICT, поэтому одновременное добавление одного навыка не падает
+    private Skill resolveSkill(String title, SkillType skillType) {
+
+        Optional<Skill> known = skillCatalogue.findByTitle(title)
+                .flatMap(view -> skillRepository.findById(view.id()));
+        if (known.isPresent()) {
+            return known.get();
+        }
+        SkillUpsert upsert = skillRepository.upsertSkill(title, skillType);
+        Skill skill = skillRepository.findById(upsert.id())
+                .orElseThrow(() -> new IllegalStateException("Навык " + title + " не найден после вставки"));
+        if (upsert.inserted()) {
+            skillCatalogue.added(SkillView.from(skill));
+        }
+        return skill;
+    }
+
+    // Известные навыки берутся из справочника, все остальные создаются или находятся одним запросом
+    private List<SkillView> resolveSkills(Map<String, SkillType> wanted) {
+
+        List<SkillView> resolved = new ArrayList<>(wanted.size());
+        Map<String, SkillType> unknown = new TreeMap<>();
+        wanted.forEach((title, skillType) -> skillCatalogue.findByTitle(title)
+                .ifPresentOrElse(resolved::add, () -> unknown.put(title, skillType)));
+        for (SkillUpsert upsert : skillRepository.upsertSkills(unknown)) {
+            SkillView skill = new SkillView(upsert.id(), upsert.title(), upsert.skillType());
+            resolved.add(skill);
+            if (upsert.inserted()) {
+                skillCatalogue.added(skill);
+            }
+        }
+        resolved.sort(Comparator.comparing(SkillView::title));
+        return resolved;
+    }
+
     private User getUserById(UUID id) {
         return userRepository.findById(id)
-                .orElseThrow(() -> new CommonException(Code.USER_NOT_FOUND,
-                        "Пользователя с id=" + id + " не существует!",
-                        HttpStatus.NOT_FOUND));
+                .orElseThrow(() -> userNotFound(id));
+    }
+
+    private CommonException userNotFound(UUID id) {
+        return new CommonException(Code.USER_NOT_FOUND,
+                "Пользователя с id=" + id + " не существует!",
+                HttpStatus.NOT_FOUND);
     }
 }
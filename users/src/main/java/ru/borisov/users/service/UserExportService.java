@@ -0,0 +1,9 @@
+package ru.borisov.users.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface UserExportService {
+
+    long exportUsers(OutputStream out) throws IOException;
+}
@@ -0,0 +1,55 @@
+package ru.borisov.users.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.borisov.users.controller.response.UserExportRow;
+import ru.borisov.users.model.User;
+import ru.borisov.users.repository.UserRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+@Log4j2
+@RequiredArgsConstructor
+public class UserExportServiceImpl implements UserExportService {
+
+    private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${users.export.clear-interval:1000}")
+    private int clearInterval;
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportUsers(OutputStream out) throws IOException {
+
+        log.info("Запрос на выгрузку всех пользователей");
+        long count = 0;
+        try (Stream<User> users = userRepository.streamAll()) {
+            Iterator<User> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(UserExportRow.from(iterator.next())));
+                out.write('\n');
+
+                // не даем контексту персистентности расти вместе с выгрузкой
+                if (++count % clearInterval == 0) {
+                    entityManager.clear();
+                    out.flush();
+                }
+            }
+        }
+        out.flush();
+
+        log.info("Выгрузка завершена, выгружено пользователей: {}", count);
+        return count;
+    }
+}
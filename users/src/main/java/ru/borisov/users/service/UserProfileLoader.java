@@ -0,0 +1,33 @@
+package ru.borisov.users.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.error.Code;
+import ru.borisov.users.repository.UserRepository;
+
+import java.util.UUID;
+
+// Загрузка профиля в отдельной транзакции: запросы, ожидающие общую загрузку, не держат соединение с БД.
+// Время запросов ограничено только на путях чтения профилей и страниц подписок: миграции, сверка счетчиков
+// и выгрузки на большой таблице законно идут дольше
+@Component
+@RequiredArgsConstructor
+public class UserProfileLoader {
+
+    private final UserRepository userRepository;
+
+    @Transactional(readOnly = true, timeoutString = "${users.stale-cache.read-timeout}")
+    public UserProfile load(UUID id) {
+
+        // пользователь и коллекция навыков читаются из кэша второго уровня, в базу идем только при промахе
+        return userRepository.findById(id)
+                .map(UserProfile::from)
+                .orElseThrow(() -> new CommonException(Code.USER_NOT_FOUND,
+                        "Пользователя с id=" + id + " не существует!",
+                        HttpStatus.NOT_FOUND));
+    }
+}
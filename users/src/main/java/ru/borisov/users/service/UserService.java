@@ -1,27 +1,47 @@
 package ru.borisov.users.service;
 
+import ru.borisov.users.cache.Cached;
 import ru.borisov.users.controller.request.RegisterUserRequest;
 import ru.borisov.users.controller.request.UpdateUserInfoRequest;
+import ru.borisov.users.controller.request.UserIdsRequest;
 import ru.borisov.users.controller.response.ApiResponse;
-import ru.borisov.users.model.User;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.UserDirectoryPage;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.controller.response.UsernameAvailability;
+import ru.borisov.users.controller.response.UsersByIdsResponse;
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
+import ru.borisov.users.repository.projection.UserSummary;
 
 import java.util.List;
-import java.util.Set;
 import java.util.UUID;
 
 public interface UserService {
 
-    User registerUser(RegisterUserRequest request);
+    UserProfile registerUser(RegisterUserRequest request);
 
-    User updateUserInfo(UpdateUserInfoRequest request, UUID uuid);
+    UserProfile updateUserInfo(UpdateUserInfoRequest request, UUID uuid);
 
-    User getUserById(UUID uuid);
+    Cached<UserProfile> getUserById(UUID uuid);
 
-    List<User> getAllUsers();
+    Cached<UserProfile> getUserByUsername(String username);
+
+    UsernameAvailability checkUsernameAvailability(String username);
+
+    UsersByIdsResponse getUsersByIds(UserIdsRequest request);
+
+    CursorPage<UserSummary> getUsers(int limit, String after);
+
+    CursorPage<UserSummary> searchUsers(String query, int limit, String after);
+
+    List<UserSummary> suggestUsers(String query, int limit);
+
+    UserDirectoryPage searchDirectory(String city, Gender gender, AgeBucket age, int limit, String after);
 
     ApiResponse removeUserById(UUID uuid);
 
-    Set<User> getUserFollowers(UUID uuid);
+    Cached<CursorPage<UserSummary>> getUserFollowers(UUID uuid, int limit, String after);
 
-    Set<User> getUserFollowing(UUID uuid);
+    Cached<CursorPage<UserSummary>> getUserFollowing(UUID uuid, int limit, String after);
 }
@@ -2,22 +2,47 @@ package ru.borisov.users.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.borisov.users.cache.Cached;
+import ru.borisov.users.cache.DirectoryFacetCounter;
+import ru.borisov.users.cache.FollowGraphIndex;
+import ru.borisov.users.cache.HotProfileCache;
+import ru.borisov.users.cache.SkillUserIndex;
+import ru.borisov.users.cache.StaleWhileRevalidateCache;
+import ru.borisov.users.cache.UserEntityCache;
+import ru.borisov.users.cache.UsernameBloomFilter;
 import ru.borisov.users.controller.request.RegisterUserRequest;
 import ru.borisov.users.controller.request.UpdateUserInfoRequest;
+import ru.borisov.users.controller.request.UserIdsRequest;
 import ru.borisov.users.controller.response.ApiResponse;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.UserDirectoryPage;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.controller.response.UsernameAvailability;
+import ru.borisov.users.controller.response.UsersByIdsResponse;
 import ru.borisov.users.exception.CommonException;
 import ru.borisov.users.exception.error.Code;
-import ru.borisov.users.model.Subscription;
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
 import ru.borisov.users.model.User;
+import ru.borisov.users.repository.FollowerRepository;
 import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.repository.projection.UserSearchHit;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
 import ru.borisov.users.util.ValidationUtils;
 
+import java.time.LocalDate;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -27,48 +52,79 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class UserServiceImpl implements UserService {
 
+    private static final String UNIQUE_USERNAME_INDEX = "idx_unique_user_username";
+    private static final int MAX_SEARCH_QUERY_LENGTH = 100;
+    // короче трех символов в запросе нет ни одной триграммы, и индекс пришлось бы читать целиком
+    private static final int MIN_TYPEAHEAD_QUERY_LENGTH = 3;
+    private static final int MAX_TYPEAHEAD_QUERY_LENGTH = 32;
+    private static final int MAX_TYPEAHEAD_LIMIT = 20;
+
     private final UserRepository userRepository;
+    private final FollowerRepository followerRepository;
     private final ValidationUtils validationUtils;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
+    private final UsernameBloomFilter usernameBloomFilter;
+    private final UserEntityCache userEntityCache;
+    private final SkillUserIndex skillUserIndex;
+    private final FollowGraphIndex followGraphIndex;
+    private final DirectoryFacetCounter directoryFacetCounter;
+    private final HotProfileCache hotProfileCache;
+    private final UserProfileLoader userProfileLoader;
+    private final FollowPageLoader followPageLoader;
+    private final StaleWhileRevalidateCache<UUID, UserProfile> profileStaleCache;
+    private final StaleWhileRevalidateCache<FollowPageKey, CursorPage<UserSummary>> followPageStaleCache;
 
     @Override
-    @Transactional
-    public User registerUser(RegisterUserRequest request) {
+    public UserProfile registerUser(RegisterUserRequest request) {
 
         log.info("Запрос на создание нового пользователя. Тело запроса: {} ", request::toString);
         validationUtils.validateRequest(request);
+
+        // дешевая проверка до хеширования: занятый ник не должен тратить время BCrypt
+        if (isUsernameTaken(request.getUsername())) {
+            throw loginBusy(request.getUsername());
+        }
+
+        // хеширование идет вне транзакции, чтобы не держать соединение из пула
         User user = User.builder()
                 .username(request.getUsername())
                 .email(request.getEmail())
-                .passwordHash(passwordEncoder.encode(request.getPassword()))
+                .passwordHash(passwordHasher.hash(request.getPassword()))
                 .followers(new HashSet<>())
                 .following(new HashSet<>())
                 .build();
 
-        if (userRepository.existsByUsername(request.getUsername())) {
-            throw new CommonException(Code.LOGIN_BUSY,
-                    "Пользователь с ником " + request.getUsername() + " уже существует!",
-                    HttpStatus.BAD_REQUEST);
+        try {
+            // flush сразу, чтобы нарушение уникальности пришло отсюда, а не при коммите
+            user = userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            // ник успели занять параллельной регистрацией, сработал уникальный индекс
+            if (isUniqueUsernameViolation(e)) {
+                usernameBloomFilter.markTaken(request.getUsername());
+                throw loginBusy(request.getUsername());
+            }
+            throw e;
         }
-
-        user = userRepository.save(user);
+        usernameBloomFilter.markTaken(user.getUsername());
 
         log.info("Добавлен новый пользователь: {} ", user::getUsername);
-        return user;
+        return UserProfile.from(user);
     }
 
     @Override
     @Transactional
-    public User updateUserInfo(UpdateUserInfoRequest request, UUID uuid) {
+    public UserProfile updateUserInfo(UpdateUserInfoRequest request, UUID uuid) {
 
         log.info("Запрос на обновление данных пользователя c id={}. Тело запроса: {} ", uuid::toString, request::toString);
 
-        User user = getUserById(uuid);
+        User user = findUser(uuid);
 
         if (!user.isInfoUpdated(request)) {
             log.info("Запрос не обновил данные пользователя");
-            return user;
+            return UserProfile.from(user);
         }
+        DirectoryFacetCounter.FacetCell cellBefore =
+                DirectoryFacetCounter.cellOf(user.getCity(), user.getGender(), user.getBirthDate());
 
         user.setLastName(request.getLastName());
         user.setFirstName(request.getFirstName());
@@ -80,51 +136,207 @@ public class UserServiceImpl implements UserService {
         user.setBio(request.getBio());
         user.setPhone(request.getPhone());
 
-        user = userRepository.save(user);
+        // сразу сбрасываем изменения, чтобы в ответ попало актуальное значение updatedAt
+        user = userRepository.saveAndFlush(user);
+        userEntityCache.invalidateProfile(uuid);
+        directoryFacetCounter.moved(cellBefore,
+                DirectoryFacetCounter.cellOf(user.getCity(), user.getGender(), user.getBirthDate()));
         log.info("Данные пользователя {} обновлены", user::getUsername);
 
-        return user;
+        return UserProfile.from(user);
     }
 
     @Override
-    public User getUserById(UUID uuid) {
+    public Cached<UserProfile> getUserById(UUID uuid) {
 
-        return userRepository.findById(uuid)
-                .orElseThrow(() -> new CommonException(Code.USER_NOT_FOUND,
-                        "Пользователя с id=" + uuid + " не существует!",
-                        HttpStatus.NOT_FOUND));
+        return profileStaleCache.get(uuid, id -> hotProfileCache.get(id, userProfileLoader::load));
+    }
+
+    @Override
+    public Cached<UserProfile> getUserByUsername(String username) {
+
+        if (!usernameBloomFilter.mightBeTaken(username)) {
+            throw usernameNotFound(username);
+        }
+        UUID id = userRepository.findIdByUsername(username)
+                .orElseThrow(() -> usernameNotFound(username));
+        return getUserById(id);
+    }
+
+    @Override
+    public UsernameAvailability checkUsernameAvailability(String username) {
+
+        return new UsernameAvailability(username, !isUsernameTaken(username));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public UsersByIdsResponse getUsersByIds(UserIdsRequest request) {
+
+        validationUtils.validateRequest(request);
+        Set<UUID> ids = new LinkedHashSet<>(request.getUserIds());
+        log.info("Запрос пользователей по списку из {} id", ids::size);
+
+        // пользователи и их навыки загружаются одним запросом
+        Map<UUID, UserProfile> found = userRepository.findAllWithSkillsByIdIn(ids).stream()
+                .collect(Collectors.toMap(User::getId, UserProfile::from));
+
+        List<UserProfile> users = ids.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .toList();
+        List<UUID> missingIds = ids.stream()
+                .filter(id -> !found.containsKey(id))
+                .toList();
+
+        return new UsersByIdsResponse(users, missingIds);
     }
 
 
     @Override
-    public List<User> getAllUsers() {
+    public CursorPage<UserSummary> getUsers(int limit, String after) {
+
+        Pageable page = CursorUtils.pageOf(limit);
+        List<UserSummary> rows = after == null
+                ? userRepository.findSummaries(page)
+                : userRepository.findSummariesAfter(CursorUtils.decode(after), page);
 
-        return userRepository.findAll();
+        return CursorUtils.toPage(rows, limit, UserSummary::id);
+    }
+
+    // Выдача упорядочена по рангу, курсор хранит ранг и id последней записи
+    @Override
+    public CursorPage<UserSummary> searchUsers(String query, int limit, String after) {
+
+        Pageable page = CursorUtils.pageOf(limit);
+        if (query == null || query.isBlank() || query.length() > MAX_SEARCH_QUERY_LENGTH) {
+            throw new CommonException(Code.BAD_REQUEST,
+                    "Поисковый запрос должен быть непустым и не длиннее " + MAX_SEARCH_QUERY_LENGTH + " символов",
+                    HttpStatus.BAD_REQUEST);
+        }
+        CursorUtils.RankedKey cursor = after == null ? null : CursorUtils.decodeRanked(after);
+        log.info("Полнотекстовый поиск пользователей: {}", query);
+
+        List<UserSearchHit> rows = userRepository.searchByText(query.strip(), cursor, page);
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows.stream().map(UserSearchHit::toSummary).toList(), null);
+        }
+        UserSearchHit last = rows.get(limit - 1);
+        return new CursorPage<>(rows.subList(0, limit).stream().map(UserSearchHit::toSummary).toList(),
+                CursorUtils.encode(new CursorUtils.RankedKey(last.rank(), last.id())));
+    }
+
+    @Override
+    public List<UserSummary> suggestUsers(String query, int limit) {
+
+        String normalized = query == null ? "" : query.strip();
+        if (normalized.length() < MIN_TYPEAHEAD_QUERY_LENGTH || normalized.length() > MAX_TYPEAHEAD_QUERY_LENGTH) {
+            throw new CommonException(Code.BAD_REQUEST,
+                    "Длина запроса должна быть от " + MIN_TYPEAHEAD_QUERY_LENGTH
+                            + " до " + MAX_TYPEAHEAD_QUERY_LENGTH + " символов",
+                    HttpStatus.BAD_REQUEST);
+        }
+        if (limit < 1 || limit > MAX_TYPEAHEAD_LIMIT) {
+            throw new CommonException(Code.BAD_REQUEST,
+                    "Параметр limit должен быть в диапазоне от 1 до " + MAX_TYPEAHEAD_LIMIT,
+                    HttpStatus.BAD_REQUEST);
+        }
+        log.debug("Подсказки по нику: {}", normalized);
+        return userRepository.findByUsernameSimilarTo(normalized, limit);
+    }
+
+    // Страница читается из БД по курсору, фасеты берутся из счетчиков в памяти
+    @Override
+    public UserDirectoryPage searchDirectory(String city, Gender gender, AgeBucket age, int limit, String after) {
+
+        Pageable page = CursorUtils.pageOf(limit);
+        UUID cursor = after == null ? null : CursorUtils.decode(after);
+        String normalizedCity = DirectoryFacetCounter.normalizeCity(city);
+        log.info("Поиск в каталоге пользователей: город={}, пол={}, возраст={}", normalizedCity, gender, age);
+
+        List<UserSummary> rows = userRepository.findDirectoryPage(
+                normalizedCity, gender, age, LocalDate.now(), cursor, page);
+        CursorPage<UserSummary> users = CursorUtils.toPage(rows, limit, UserSummary::id);
+
+        return new UserDirectoryPage(users.items(), users.nextCursor(),
+                directoryFacetCounter.facets(normalizedCity, gender, age));
     }
 
     @Override
     @Transactional
     public ApiResponse removeUserById(UUID uuid) {
 
-        User user = getUserById(uuid);
+        User user = findUser(uuid);
         userRepository.delete(user);
+        // мягкое удаление должно дойти до БД раньше пересчета счетчиков: оно блокирует строку пользователя
+        userRepository.flush();
+        followerRepository.detachDeletedUser(uuid);
+        userEntityCache.invalidateProfile(uuid);
+        skillUserIndex.userRemoved(uuid);
+        followGraphIndex.userRemoved(uuid);
+        directoryFacetCounter.moved(DirectoryFacetCounter.cellOf(user.getCity(), user.getGender(), user.getBirthDate()), null);
         log.info("Пользователь {} успешно удален!", user::getUsername);
         return new ApiResponse(true, "Пользователь " + user.getUsername() + " успешно удален!");
     }
 
     @Override
-    public Set<User> getUserFollowers(UUID uuid) {
-        return getUserById(uuid).getFollowers().stream()
-                .map(Subscription::getFrom)
-                .collect(Collectors.toSet());
+    public Cached<CursorPage<UserSummary>> getUserFollowers(UUID uuid, int limit, String after) {
+
+        return followPage(new FollowPageKey(uuid, true, limit, after));
     }
 
     @Override
-    public Set<User> getUserFollowing(UUID uuid) {
-        return getUserById(uuid).getFollowing().stream()
-                .map(Subscription::getTo)
-                .collect(Collectors.toSet());
+    public Cached<CursorPage<UserSummary>> getUserFollowing(UUID uuid, int limit, String after) {
+
+        return followPage(new FollowPageKey(uuid, false, limit, after));
     }
 
+    // некорректные limit и курсор отклоняются до обращения к кэшу
+    private Cached<CursorPage<UserSummary>> followPage(FollowPageKey key) {
 
+        CursorUtils.checkLimit(key.limit());
+        if (key.after() != null) {
+            CursorUtils.decode(key.after());
+        }
+        return followPageStaleCache.get(key, followPageLoader::load);
+    }
+
+    // отрицательный ответ фильтра Блума точен, в БД идем только при возможном совпадении
+    private boolean isUsernameTaken(String username) {
+        return usernameBloomFilter.mightBeTaken(username) && userRepository.existsByUsername(username);
+    }
+
+    // Имя ограничения Hibernate достает из ответа Postgres, текст сообщения зависит от локали сервера
+    private static boolean isUniqueUsernameViolation(DataIntegrityViolationException e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                return UNIQUE_USERNAME_INDEX.equals(violation.getConstraintName());
+            }
+        }
+        return false;
+    }
+
+    private User findUser(UUID uuid) {
+
+        return userRepository.findById(uuid)
+                .orElseThrow(() -> userNotFound(uuid));
+    }
+
+    private static CommonException usernameNotFound(String username) {
+        return new CommonException(Code.USER_NOT_FOUND,
+                "Пользователя с ником " + username + " не существует!",
+                HttpStatus.NOT_FOUND);
+    }
+
+    private static CommonException loginBusy(String username) {
+        return new CommonException(Code.LOGIN_BUSY,
+                "Пользователь с ником " + username + " уже существует!",
+                HttpStatus.BAD_REQUEST);
+    }
+
+    private static CommonException userNotFound(UUID uuid) {
+        return new CommonException(Code.USER_NOT_FOUND,
+                "Пользователя с id=" + uuid + " не существует!",
+                HttpStatus.NOT_FOUND);
+    }
 }
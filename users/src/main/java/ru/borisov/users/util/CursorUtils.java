@@ -0,0 +1,112 @@
+package ru.borisov.users.util;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.error.Code;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public final class CursorUtils {
+
+    public static final int MAX_LIMIT = 100;
+
+    private CursorUtils() {
+    }
+
+    public static void checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new CommonException(Code.BAD_REQUEST,
+                    "Параметр limit должен быть в диапазоне от 1 до " + MAX_LIMIT,
+                    HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    public static Pageable pageOf(int limit) {
+        checkLimit(limit);
+        // запрашиваем на одну запись больше, чтобы понять, есть ли следующая страница
+        return PageRequest.of(0, limit + 1);
+    }
+
+    public static String encode(UUID key) {
+        ByteBuffer buffer = ByteBuffer.allocate(16)
+                .putLong(key.getMostSignificantBits())
+                .putLong(key.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static UUID decode(String cursor) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            UUID key = new UUID(buffer.getLong(), buffer.getLong());
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException();
+            }
+            return key;
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new CommonException(Code.BAD_REQUEST,
+                    "Некорректный курсор: " + cursor,
+                    HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    public static <T> CursorPage<T> toPage(List<T> rows, int limit, Function<T, UUID> keyExtractor) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> items = List.copyOf(rows.subList(0, limit));
+        return new CursorPage<>(items, encode(keyExtractor.apply(items.get(limit - 1))));
+    }
+
+    // Страница по id из индекса в памяти, запрошенным на одну запись больше: строки читаются только для страницы
+    // и идут в порядке id, строки, которых уже нет в БД, пропускаются
+    public static <T> CursorPage<T> toPage(List<UUID> ids, int limit,
+                                           Function<List<UUID>, List<T>> loader,
+                                           Function<T, UUID> keyExtractor) {
+        CursorPage<UUID> page = toPage(ids, limit, Function.identity());
+        Map<UUID, T> found = page.items().isEmpty() ? Map.of() : loader.apply(page.items()).stream()
+                .collect(Collectors.toMap(keyExtractor, Function.identity()));
+        List<T> items = page.items().stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return new CursorPage<>(items, page.nextCursor());
+    }
+
+    // Курсор ранжированной выдачи: ранг и id последней записи страницы
+    public static String encode(RankedKey key) {
+        ByteBuffer buffer = ByteBuffer.allocate(20)
+                .putFloat(key.rank())
+                .putLong(key.id().getMostSignificantBits())
+                .putLong(key.id().getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static RankedKey decodeRanked(String cursor) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            RankedKey key = new RankedKey(buffer.getFloat(), new UUID(buffer.getLong(), buffer.getLong()));
+            if (buffer.hasRemaining() || !Float.isFinite(key.rank())) {
+                throw new IllegalArgumentException();
+            }
+            return key;
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new CommonException(Code.BAD_REQUEST,
+                    "Некорректный курсор: " + cursor,
+                    HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    public record RankedKey(float rank, UUID id) {
+    }
+}
@@ -1 +1,4 @@
-CREATE SCHEMA IF NOT EXISTS ${spring.liquibase.default-schema};
\ No newline at end of file
+CREATE SCHEMA IF NOT EXISTS ${spring.liquibase.default-schema};
+-- Триграммный поиск по нику (индекс idx_gist_user_username_trgm). Расширение ставится в public:
+-- он входит в search_path соединений приложения по умолчанию
+CREATE EXTENSION IF NOT EXISTS pg_trgm SCHEMA public;
\ No newline at end of file
@@ -0,0 +1,171 @@
+package ru.borisov.users.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import ru.borisov.users.controller.response.DirectoryFacets;
+import ru.borisov.users.model.AgeBucket;
+import ru.borisov.users.model.Gender;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DirectoryFacetCounterTest {
+
+    private final LocalDate today = LocalDate.now();
+    private final LocalDate age30 = today.minusYears(30);
+    private final LocalDate age20 = today.minusYears(20);
+
+    private JdbcTemplate jdbcTemplate;
+    private CacheInvalidationBus bus;
+    private DirectoryFacetCounter counter;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        bus = mock(CacheInvalidationBus.class);
+        counter = new DirectoryFacetCounter(jdbcTemplate, bus, 2);
+        counter.moved(null, DirectoryFacetCounter.cellOf("Якутск", Gender.MALE, age30));
+        counter.moved(null, DirectoryFacetCounter.cellOf("Якутск", Gender.FEMALE, age20));
+        counter.moved(null, DirectoryFacetCounter.cellOf("Москва", Gender.MALE, age20));
+        counter.moved(null, DirectoryFacetCounter.cellOf("Москва", Gender.MALE, age20));
+        counter.moved(null, DirectoryFacetCounter.cellOf("Казань", null, null));
+    }
+
+    @Test
+    void ageBucket_shouldRespectBirthdays() {
+
+        // then
+        assertEquals(AgeBucket.UNDER_18, AgeBucket.of(today.minusYears(18).plusDays(1), today));
+        assertEquals(AgeBucket.FROM_18_TO_24, AgeBucket.of(today.minusYears(18), today));
+        assertEquals(AgeBucket.FROM_55, AgeBucket.of(today.minusYears(90), today));
+        assertNull(AgeBucket.of(null, today));
+    }
+
+    @Test
+    void normalizeCity_shouldTrimSpaces_likeBtrim() {
+
+        // then
+        assertEquals("Якутск", DirectoryFacetCounter.normalizeCity("  Якутск "));
+        assertNull(DirectoryFacetCounter.normalizeCity("   "));
+        assertNull(DirectoryFacetCounter.normalizeCity(null));
+        assertEquals(DirectoryFacetCounter.cellOf("Москва", Gender.MALE, age20),
+                DirectoryFacetCounter.cellOf(" Москва ", Gender.MALE, age20));
+    }
+
+    @Test
+    void facets_shouldCountAllUsers_whenNoFilters() {
+
+        // when
+        DirectoryFacets facets = counter.facets(null, null, null);
+
+        // then
+        // город отдается только двумя самыми частыми значениями
+        assertEquals(Map.of("Москва", 2L, "Якутск", 2L), facets.cities());
+        assertEquals(Map.of(Gender.MALE, 3L, Gender.FEMALE, 1L), facets.genders());
+        assertEquals(Map.of(AgeBucket.FROM_25_TO_34, 1L, AgeBucket.FROM_18_TO_24, 3L), facets.ages());
+    }
+
+    @Test
+    void facets_shouldApplyOtherFilters_toEachFacet() {
+
+        // when
+        DirectoryFacets facets = counter.facets("Якутск", Gender.MALE, null);
+
+        // then
+        assertEquals(Map.of("Якутск", 1L, "Москва", 2L), facets.cities());
+        assertEquals(Map.of(Gender.MALE, 1L, Gender.FEMALE, 1L), facets.genders());
+        assertEquals(Map.of(AgeBucket.FROM_25_TO_34, 1L), facets.ages());
+    }
+
+    @Test
+    void moved_shouldShiftUserBetweenCells() {
+
+        // when
+        counter.moved(DirectoryFacetCounter.cellOf("Москва", Gender.MALE, age20),
+                DirectoryFacetCounter.cellOf("Якутск", Gender.MALE, age20));
+
+        // then
+        assertEquals(Map.of("Якутск", 3L, "Москва", 1L), counter.facets(null, null, null).cities());
+    }
+
+    @Test
+    void moved_shouldNotPublish_whenCellUnchanged() {
+
+        // given
+        DirectoryFacetCounter.FacetCell cell = DirectoryFacetCounter.cellOf("Москва", Gender.MALE, age20);
+
+        // when
+        counter.moved(cell, cell);
+        counter.moved(null, DirectoryFacetCounter.cellOf(" ", null, null));
+
+        // then: только пять публикаций из setUp
+        verify(bus, times(5)).publish(eq(DirectoryFacetCounter.REGION), anyCollection());
+    }
+
+    @Test
+    void rebuild_shouldRecountCell_changedWhileCounting() throws Exception {
+
+        // given: снимок запроса не увидел пользователя, зарегистрированного во время пересчета
+        ResultSet row = mock(ResultSet.class);
+        when(row.getString(1)).thenReturn("Москва");
+        when(row.getString(2)).thenReturn(Gender.MALE.name());
+        when(row.getDate(3)).thenReturn(Date.valueOf(age20));
+        when(row.getLong(4)).thenReturn(2L);
+        doAnswer(invocation -> {
+            counter.moved(null, DirectoryFacetCounter.cellOf("Москва", Gender.MALE, age20));
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any(Object[].class))).thenReturn(3L);
+
+        // when
+        counter.rebuild();
+
+        // then
+        assertEquals(Map.of("Москва", 3L), counter.facets(null, null, null).cities());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void busMessage_shouldApplyMoveFromAnotherReplica() {
+
+        // given
+        ArgumentCaptor<Consumer<String>> apply = ArgumentCaptor.forClass(Consumer.class);
+        verify(bus).register(eq(DirectoryFacetCounter.REGION), apply.capture(), any());
+        ArgumentCaptor<List<String>> keys = ArgumentCaptor.forClass(List.class);
+        CacheInvalidationBus otherBus = mock(CacheInvalidationBus.class);
+        DirectoryFacetCounter other = new DirectoryFacetCounter(mock(JdbcTemplate.class), otherBus, 2);
+        other.moved(DirectoryFacetCounter.cellOf("Якутск", Gender.FEMALE, age20),
+                DirectoryFacetCounter.cellOf("Санкт-Петербург, Россия", Gender.FEMALE, age20));
+        verify(otherBus).publish(eq(DirectoryFacetCounter.REGION), keys.capture());
+
+        // when
+        keys.getValue().forEach(apply.getValue());
+
+        // then
+        DirectoryFacets facets = counter.facets(null, Gender.FEMALE, null);
+        assertEquals(Map.of("Санкт-Петербург, Россия", 1L), facets.cities());
+        assertTrue(counter.facets("Якутск", Gender.FEMALE, null).ages().isEmpty());
+    }
+}
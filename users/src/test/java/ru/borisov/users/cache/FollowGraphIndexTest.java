@@ -0,0 +1,195 @@
+package ru.borisov.users.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.borisov.users.exception.CommonException;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FollowGraphIndexTest {
+
+    private final UUID alice = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private final UUID bob = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private final UUID carol = UUID.fromString("00000000-0000-0000-0000-000000000003");
+
+    private CacheInvalidationBus bus;
+    private UserOrdinalRegistry ordinals;
+    private FollowGraphIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        bus = mock(CacheInvalidationBus.class);
+        ordinals = new UserOrdinalRegistry();
+        index = new FollowGraphIndex(jdbcTemplate, mock(PlatformTransactionManager.class), bus,
+                ordinals, new SimpleMeterRegistry(), 1);
+
+        // подписки при старте: alice <-> bob, alice -> carol, carol -> bob
+        ResultSet row = mock(ResultSet.class);
+        when(row.getObject(1, UUID.class)).thenReturn(alice, bob, alice, carol);
+        when(row.getObject(2, UUID.class)).thenReturn(bob, alice, carol, bob);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int i = 0; i < 4; i++) {
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void follows_shouldThrowServiceUnavailable_whenNotLoaded() {
+
+        // when
+        CommonException exception = assertThrows(CommonException.class, () -> index.follows(alice, bob));
+
+        // then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+    }
+
+    @Test
+    void rebuild_shouldAnswerMembershipAndMutual() {
+
+        // when
+        index.rebuild();
+
+        // then
+        assertTrue(index.follows(alice, bob));
+        assertTrue(index.follows(carol, bob));
+        assertFalse(index.follows(bob, carol));
+        assertFalse(index.follows(UUID.randomUUID(), bob));
+        assertEquals(List.of(bob), index.mutual(alice, null, 10));
+        assertEquals(List.of(), index.mutual(carol, null, 10));
+    }
+
+    @Test
+    void followed_shouldUpdateBothDirectionsAndNotifyReplicas() {
+
+        // given
+        index.rebuild();
+
+        // when
+        index.followed(bob, List.of(carol));
+        index.unfollowed(alice, List.of(carol));
+
+        // then
+        assertTrue(index.follows(bob, carol));
+        assertFalse(index.follows(alice, carol));
+        assertTrue(index.follows(alice, bob));
+        verify(bus).publish(FollowGraphIndex.REGION, List.of("+" + bob + ">" + carol));
+        verify(bus).publish(FollowGraphIndex.REGION, List.of("-" + alice + ">" + carol));
+    }
+
+    @Test
+    void compact_shouldKeepGraphAfterMergingDeltasIntoCsr() {
+
+        // given
+        index.rebuild();
+        index.followed(bob, List.of(carol));
+        index.unfollowed(alice, List.of(bob));
+
+        // when
+        index.compact();
+        index.followed(alice, List.of(bob));
+
+        // then
+        assertTrue(index.follows(bob, carol));
+        assertTrue(index.follows(alice, carol));
+        assertTrue(index.follows(bob, alice));
+        assertFalse(index.follows(carol, alice));
+    }
+
+    @Test
+    void mutual_shouldPageFromCursor() {
+
+        // given
+        index.rebuild();
+        index.followed(carol, List.of(alice));
+
+        // when
+        List<UUID> firstPage = index.mutual(alice, null, 1);
+        List<UUID> secondPage = index.mutual(alice, firstPage.get(0), 1);
+
+        // then
+        assertEquals(List.of(bob), firstPage);
+        assertEquals(List.of(carol), secondPage);
+    }
+
+    @Test
+    void mutual_shouldPageById_notByOrdinal() {
+
+        // given
+        UUID dave = UUID.fromString("00000000-0000-0000-0000-000000000000");
+        UUID unknown = UUID.fromString("00000000-0000-0000-0000-0000000000ff");
+        index.rebuild();
+        // номер dave больше номера bob, а id - меньше
+        index.followed(dave, List.of(alice));
+        index.followed(alice, List.of(dave));
+
+        // when
+        List<UUID> firstPage = index.mutual(alice, null, 1);
+        List<UUID> secondPage = index.mutual(alice, firstPage.get(0), 1);
+        List<UUID> afterUnknown = index.mutual(alice, unknown, 10);
+
+        // then
+        assertEquals(List.of(dave), firstPage);
+        assertEquals(List.of(bob), secondPage);
+        assertEquals(List.of(), afterUnknown);
+    }
+
+    @Test
+    void userRemoved_shouldDropAllEdgesOfUser() {
+
+        // given
+        index.rebuild();
+
+        // when
+        index.userRemoved(bob);
+
+        // then
+        assertFalse(index.follows(alice, bob));
+        assertFalse(index.follows(bob, alice));
+        assertFalse(index.follows(carol, bob));
+        assertTrue(index.follows(alice, carol));
+        assertEquals(List.of(), index.mutual(alice, null, 10));
+        verify(bus).publish(FollowGraphIndex.REGION, List.of("x" + bob));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void busMessage_shouldApplyFollowFromOtherReplica() {
+
+        // given
+        index.rebuild();
+        ArgumentCaptor<Consumer<String>> evict = ArgumentCaptor.forClass(Consumer.class);
+        verify(bus).register(eq(FollowGraphIndex.REGION), evict.capture(), any());
+
+        // when
+        evict.getValue().accept("+" + carol + ">" + alice);
+
+        // then
+        assertTrue(index.follows(carol, alice));
+        assertEquals(List.of(bob, carol), index.mutual(alice, null, 10));
+    }
+}
@@ -0,0 +1,236 @@
+package ru.borisov.users.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.exception.error.Code;
+import ru.borisov.users.model.User;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotProfileCacheTest {
+
+    private static final int THREADS = 8;
+
+    private MeterRegistry meterRegistry;
+    private HotProfileCache hotProfileCache;
+    private ExecutorService executor;
+    private UUID userId;
+    private UserProfile profile;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        hotProfileCache = new HotProfileCache(meterRegistry, 1024, 3, Duration.ofMinutes(1), 100);
+        executor = Executors.newFixedThreadPool(THREADS);
+        userId = UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9813");
+        profile = UserProfile.from(User.builder()
+                .id(userId)
+                .username("celebrity")
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void get_shouldShareOneLoad_whenRequestedConcurrently() throws Exception {
+
+        // given
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        // when
+        List<Future<UserProfile>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> hotProfileCache.get(userId, id -> {
+                loads.incrementAndGet();
+                await(release);
+                return profile;
+            })));
+        }
+        awaitCount("coalesced", THREADS - 1);
+        release.countDown();
+
+        // then
+        for (Future<UserProfile> future : futures) {
+            assertSame(profile, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, count("loaded"));
+        assertEquals(THREADS - 1, count("coalesced"));
+    }
+
+    @Test
+    void get_shouldPropagateLoadError_toCoalescedRequests() throws Exception {
+
+        // given
+        CountDownLatch release = new CountDownLatch(1);
+
+        // when
+        List<Future<UserProfile>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> hotProfileCache.get(userId, id -> {
+                await(release);
+                throw new CommonException(Code.USER_NOT_FOUND, "not found", HttpStatus.NOT_FOUND);
+            })));
+        }
+        awaitCount("coalesced", THREADS - 1);
+        release.countDown();
+
+        // then
+        for (Future<UserProfile> future : futures) {
+            ExecutionException exception = assertThrows(ExecutionException.class,
+                    () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(CommonException.class, exception.getCause());
+        }
+    }
+
+    @Test
+    void get_shouldPinHotProfile_untilInvalidated() {
+
+        // given
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            hotProfileCache.get(userId, id -> {
+                loads.incrementAndGet();
+                return profile;
+            });
+        }
+
+        // when
+        hotProfileCache.get(userId, id -> {
+            loads.incrementAndGet();
+            return profile;
+        });
+        hotProfileCache.invalidate(userId);
+        hotProfileCache.get(userId, id -> {
+            loads.incrementAndGet();
+            return profile;
+        });
+
+        // then
+        assertEquals(4, loads.get());
+        assertEquals(1, count("pinned"));
+    }
+
+    @Test
+    void get_shouldPinNewProfile_whenPinnedCacheIsFull() {
+
+        // given
+        hotProfileCache = new HotProfileCache(meterRegistry, 1024, 1, Duration.ofMinutes(1), 1);
+        UUID otherId = UUID.fromString("8f0d6a36-7b86-4c55-9c4c-3a4b0b6f2d11");
+        AtomicInteger loads = new AtomicInteger();
+        hotProfileCache.get(userId, id -> profile);
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            hotProfileCache.get(otherId, id -> {
+                loads.incrementAndGet();
+                return profile;
+            });
+        }
+
+        // then
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_shouldNotJoinOrPinLoad_startedBeforeInvalidation() throws Exception {
+
+        // given
+        for (int i = 0; i < 3; i++) {
+            hotProfileCache.get(userId, id -> profile);
+        }
+        hotProfileCache.invalidate(userId);
+        CountDownLatch release = new CountDownLatch(1);
+        UserProfile updated = UserProfile.from(User.builder()
+                .id(userId)
+                .username("renamed")
+                .build());
+        Future<UserProfile> before = executor.submit(() -> hotProfileCache.get(userId, id -> {
+            await(release);
+            return profile;
+        }));
+        awaitCount("loaded", 4);
+
+        // when
+        hotProfileCache.invalidate(userId);
+        UserProfile after = hotProfileCache.get(userId, id -> updated);
+        release.countDown();
+        before.get(5, TimeUnit.SECONDS);
+
+        // then
+        assertSame(updated, after);
+        assertSame(updated, hotProfileCache.get(userId, id -> profile));
+    }
+
+    @Test
+    void get_shouldPin_whenOtherProfileInvalidatedDuringLoad() {
+
+        // given
+        UUID otherId = UUID.fromString("8f0d6a36-7b86-4c55-9c4c-3a4b0b6f2d11");
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            hotProfileCache.get(userId, id -> profile);
+        }
+
+        // when
+        hotProfileCache.get(userId, id -> {
+            loads.incrementAndGet();
+            hotProfileCache.invalidate(otherId);
+            return profile;
+        });
+        hotProfileCache.get(userId, id -> {
+            loads.incrementAndGet();
+            return profile;
+        });
+
+        // then
+        assertEquals(1, loads.get());
+        assertEquals(1, count("pinned"));
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("users.profile.lookups").tag("result", result).counter().count();
+    }
+
+    private void awaitCount(String result, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (count(result) < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(count(result) >= expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
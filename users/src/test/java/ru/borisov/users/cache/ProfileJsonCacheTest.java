@@ -0,0 +1,129 @@
+package ru.borisov.users.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.model.User;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfileJsonCacheTest {
+
+    private ProfileJsonCache profileJsonCache;
+    private UUID userId;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        profileJsonCache = new ProfileJsonCache(Jackson2ObjectMapperBuilder.json().build(), 10, Duration.ofMinutes(1));
+        userId = UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9813");
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void get_shouldReturnSameBytes_onRepeatedReads() {
+
+        // when
+        byte[] first = profileJsonCache.get(userId, this::loadFresh);
+        byte[] second = profileJsonCache.get(userId, this::loadFresh);
+
+        // then
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertTrue(new String(first, StandardCharsets.UTF_8).contains("\"username\":\"celebrity\""));
+    }
+
+    @Test
+    void get_shouldReload_afterInvalidation() {
+
+        // given
+        profileJsonCache.get(userId, this::loadFresh);
+
+        // when
+        profileJsonCache.invalidate(userId);
+        profileJsonCache.get(userId, this::loadFresh);
+
+        // then
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldNotCache_whenInvalidatedDuringLoad() {
+
+        // when
+        profileJsonCache.get(userId, id -> {
+            profileJsonCache.invalidate(id);
+            return Cached.fresh(load(id));
+        });
+        profileJsonCache.get(userId, this::loadFresh);
+
+        // then
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldMarkAndNotCache_staleProfile() {
+
+        // when
+        byte[] first = profileJsonCache.get(userId, id -> Cached.stale(load(id)));
+        profileJsonCache.get(userId, this::loadFresh);
+
+        // then
+        assertTrue(new String(first, StandardCharsets.UTF_8).contains("\"stale\":true"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldCache_whenOtherProfileInvalidatedDuringLoad() {
+
+        // given
+        UUID otherId = UUID.fromString("8f0d6a36-7b86-4c55-9c4c-3a4b0b6f2d11");
+
+        // when
+        profileJsonCache.get(userId, id -> {
+            profileJsonCache.invalidate(otherId);
+            return Cached.fresh(load(id));
+        });
+        profileJsonCache.get(userId, this::loadFresh);
+
+        // then
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_shouldCacheNewProfile_whenCacheIsFull() {
+
+        // given
+        for (int i = 0; i < 10; i++) {
+            profileJsonCache.get(UUID.randomUUID(), this::loadFresh);
+        }
+        loads.set(0);
+
+        // when
+        profileJsonCache.get(userId, this::loadFresh);
+        profileJsonCache.get(userId, this::loadFresh);
+
+        // then
+        assertEquals(1, loads.get());
+    }
+
+    private Cached<UserProfile> loadFresh(UUID id) {
+        return Cached.fresh(load(id));
+    }
+
+    private UserProfile load(UUID id) {
+        loads.incrementAndGet();
+        return UserProfile.from(User.builder()
+                .id(id)
+                .username("celebrity")
+                .build());
+    }
+}
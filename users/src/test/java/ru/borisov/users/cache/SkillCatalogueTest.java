@@ -0,0 +1,125 @@
+package ru.borisov.users.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import ru.borisov.users.controller.response.SkillView;
+import ru.borisov.users.model.Skill;
+import ru.borisov.users.model.SkillType;
+import ru.borisov.users.repository.SkillRepository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SkillCatalogueTest {
+
+    private SkillRepository skillRepository;
+    private CacheInvalidationBus bus;
+    private SkillCatalogue skillCatalogue;
+
+    @BeforeEach
+    void setUp() {
+        skillRepository = mock(SkillRepository.class);
+        bus = mock(CacheInvalidationBus.class);
+        skillCatalogue = new SkillCatalogue(skillRepository, bus);
+        when(skillRepository.findAll()).thenReturn(List.of(
+                skill("kotlin"), skill("java17"), skill("javascript"), skill("java"), skill("docker")));
+        skillCatalogue.refresh();
+    }
+
+    @Test
+    void findByPrefix_shouldReturnSortedMatches_ignoringCase() {
+
+        // when
+        List<String> result = titles(skillCatalogue.findByPrefix(" JAVA", 10));
+
+        // then
+        assertEquals(List.of("java", "java17", "javascript"), result);
+    }
+
+    @Test
+    void findByPrefix_shouldRespectLimit() {
+
+        // when
+        List<String> result = titles(skillCatalogue.findByPrefix("j", 2));
+
+        // then
+        assertEquals(List.of("java", "java17"), result);
+    }
+
+    @Test
+    void findByPrefix_shouldReturnEmptyList_whenNothingMatches() {
+
+        // when
+        List<SkillView> result = skillCatalogue.findByPrefix("rust", 10);
+
+        // then
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void findByTitle_shouldResolveExactTitleOnly() {
+
+        // when
+        Optional<SkillView> exact = skillCatalogue.findByTitle("Java17");
+        Optional<SkillView> prefix = skillCatalogue.findByTitle("jav");
+
+        // then
+        assertEquals("java17", exact.orElseThrow().title());
+        assertTrue(prefix.isEmpty());
+    }
+
+    @Test
+    void added_shouldInsertSkillAndPublishId_whenNoTransaction() {
+
+        // given
+        SkillView go = SkillView.from(skill("go"));
+
+        // when
+        skillCatalogue.added(go);
+
+        // then
+        assertEquals(6, skillCatalogue.size());
+        assertEquals(List.of("docker", "go", "java"), titles(skillCatalogue.findByPrefix("", 3)));
+        verify(bus).publish(SkillCatalogue.REGION, List.of(go.id()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void busMessage_shouldLoadSkillCreatedOnAnotherReplica() {
+
+        // given
+        ArgumentCaptor<Consumer<String>> evict = ArgumentCaptor.forClass(Consumer.class);
+        verify(bus).register(eq(SkillCatalogue.REGION), evict.capture(), any());
+        Skill rust = skill("rust");
+        when(skillRepository.findById(rust.getId())).thenReturn(Optional.of(rust));
+
+        // when
+        evict.getValue().accept(rust.getId().toString());
+
+        // then
+        assertEquals(SkillView.from(rust), skillCatalogue.findByTitle("rust").orElseThrow());
+    }
+
+    private static Skill skill(String title) {
+        return Skill.builder()
+                .id(UUID.randomUUID())
+                .title(title)
+                .skillType(SkillType.HARD_SKILL)
+                .build();
+    }
+
+    private static List<String> titles(List<SkillView> skills) {
+        return skills.stream().map(SkillView::title).toList();
+    }
+}
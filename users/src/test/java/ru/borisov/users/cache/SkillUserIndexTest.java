@@ -0,0 +1,196 @@
+package ru.borisov.users.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.borisov.users.exception.CommonException;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SkillUserIndexTest {
+
+    private final UUID java = UUID.randomUUID();
+    private final UUID kubernetes = UUID.randomUUID();
+    private final UUID php = UUID.randomUUID();
+    private final UUID alice = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private final UUID bob = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private final UUID carol = UUID.fromString("00000000-0000-0000-0000-000000000003");
+
+    private JdbcTemplate jdbcTemplate;
+    private CacheInvalidationBus bus;
+    private SkillUserIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        bus = mock(CacheInvalidationBus.class);
+        index = new SkillUserIndex(jdbcTemplate, mock(PlatformTransactionManager.class), bus,
+                new SimpleMeterRegistry());
+
+        // user_skill при старте: alice - java, kubernetes; bob - java, kubernetes, php; carol - java
+        ResultSet row = mock(ResultSet.class);
+        when(row.getObject(1, UUID.class)).thenReturn(alice, alice, bob, bob, bob, carol);
+        when(row.getObject(2, UUID.class)).thenReturn(java, kubernetes, java, kubernetes, php, java);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int i = 0; i < 6; i++) {
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void search_shouldThrowServiceUnavailable_whenNotLoaded() {
+
+        // when
+        CommonException exception = assertThrows(CommonException.class,
+                () -> index.search(List.of(java), List.of(), null, 10));
+
+        // then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+    }
+
+    @Test
+    void search_shouldIntersectRequiredAndSubtractExcluded() {
+
+        // given
+        index.rebuild();
+
+        // when
+        List<UUID> result = index.search(List.of(java, kubernetes), List.of(php), null, 10);
+
+        // then
+        assertEquals(List.of(alice), result);
+    }
+
+    @Test
+    void search_shouldPageFromCursor() {
+
+        // given
+        index.rebuild();
+
+        // when
+        List<UUID> firstPage = index.search(List.of(java), List.of(), null, 2);
+        List<UUID> secondPage = index.search(List.of(java), List.of(), firstPage.get(1), 2);
+
+        // then
+        assertEquals(List.of(alice, bob), firstPage);
+        assertEquals(List.of(carol), secondPage);
+    }
+
+    @Test
+    void search_shouldOrderAndPageById_withUsersAddedAfterLoad() {
+
+        // given: номера новых пользователей выдаются в хвосте, не по порядку id
+        index.rebuild();
+        UUID last = UUID.fromString("ffffffff-0000-0000-0000-000000000000");
+        UUID first = UUID.fromString("00000000-0000-0000-0000-000000000000");
+        index.changed(last, List.of(java), List.of());
+        index.changed(first, List.of(java), List.of());
+
+        // when
+        List<UUID> firstPage = index.search(List.of(java), List.of(), null, 2);
+        List<UUID> secondPage = index.search(List.of(java), List.of(), firstPage.get(1), 2);
+        List<UUID> thirdPage = index.search(List.of(java), List.of(), secondPage.get(1), 2);
+
+        // then: порядок как у uuid в Postgres, старший бит не делает id отрицательным
+        assertEquals(List.of(first, alice), firstPage);
+        assertEquals(List.of(bob, carol), secondPage);
+        assertEquals(List.of(last), thirdPage);
+    }
+
+    @Test
+    void search_shouldPageFromCursor_unknownToThisReplica() {
+
+        // given
+        index.rebuild();
+        UUID unknown = UUID.fromString("00000000-0000-0000-0000-000000000000");
+
+        // when
+        List<UUID> page = index.search(List.of(java), List.of(), unknown, 10);
+
+        // then
+        assertEquals(List.of(alice, bob, carol), page);
+    }
+
+    @Test
+    void search_shouldReturnEmpty_whenRequiredSkillHasNoUsers() {
+
+        // given
+        index.rebuild();
+
+        // when
+        List<UUID> result = index.search(List.of(java, UUID.randomUUID()), List.of(), null, 10);
+
+        // then
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void changed_shouldUpdateIndexAndNotifyReplicas() {
+
+        // given
+        index.rebuild();
+
+        // when
+        index.changed(carol, List.of(kubernetes), List.of());
+        index.changed(bob, List.of(), List.of(php));
+
+        // then
+        assertEquals(List.of(alice, bob, carol), index.search(List.of(java, kubernetes), List.of(php), null, 10));
+        verify(bus).publish(SkillUserIndex.REGION, List.of(carol));
+        verify(bus).publish(SkillUserIndex.REGION, List.of(bob));
+    }
+
+    @Test
+    void userRemoved_shouldDropUserFromAllSkills() {
+
+        // given
+        index.rebuild();
+
+        // when
+        index.userRemoved(alice);
+
+        // then
+        assertEquals(List.of(bob, carol), index.search(List.of(java), List.of(), null, 10));
+        assertEquals(List.of(bob), index.search(List.of(kubernetes), List.of(), null, 10));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void busMessage_shouldReloadUserSkillsFromDatabase() {
+
+        // given
+        index.rebuild();
+        ArgumentCaptor<Consumer<String>> evict = ArgumentCaptor.forClass(Consumer.class);
+        verify(bus).register(eq(SkillUserIndex.REGION), evict.capture(), any());
+        when(jdbcTemplate.queryForList(any(String.class), eq(UUID.class), eq(carol))).thenReturn(List.of(php));
+
+        // when
+        evict.getValue().accept(carol.toString());
+
+        // then
+        assertEquals(List.of(alice, bob), index.search(List.of(java), List.of(), null, 10));
+        assertEquals(List.of(bob, carol), index.search(List.of(php), List.of(), null, 10));
+    }
+}
@@ -0,0 +1,191 @@
+package ru.borisov.users.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.health.DatabaseHealthMonitor;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StaleWhileRevalidateCacheTest {
+
+    @Mock
+    private DatabaseHealthMonitor databaseHealthMonitor;
+
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(databaseHealthMonitor.isHealthy()).thenReturn(true);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void get_shouldServeFreshValue_withoutReload() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ofMinutes(1));
+        cache.get("key", this::load);
+
+        // when
+        Cached<String> result = cache.get("key", this::load);
+
+        // then
+        assertEquals("value-1", result.value());
+        assertFalse(result.stale());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_shouldServeStaleValueAndRefresh_whenTtlExpired() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ZERO);
+        cache.get("key", this::load);
+
+        // when
+        Cached<String> result = cache.get("key", this::load);
+
+        // then
+        assertEquals("value-1", result.value());
+        assertTrue(result.stale());
+        assertEquals(2, loads.get());
+        assertEquals("value-2", cache.get("key", this::load).value());
+    }
+
+    @Test
+    void get_shouldNotTouchDatabase_whenItIsUnhealthy() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ZERO);
+        cache.get("key", this::load);
+        when(databaseHealthMonitor.isHealthy()).thenReturn(false);
+
+        // when
+        Cached<String> result = cache.get("key", this::load);
+
+        // then
+        assertEquals("value-1", result.value());
+        assertTrue(result.stale());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_shouldThrowServiceUnavailable_whenDatabaseIsUnhealthyAndNothingCached() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ofMinutes(1));
+        when(databaseHealthMonitor.isHealthy()).thenReturn(false);
+
+        // when
+        CommonException exception = assertThrows(CommonException.class, () -> cache.get("key", this::load));
+
+        // then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void get_shouldReloadSynchronously_afterInvalidation() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ofMinutes(1));
+        cache.get("key", this::load);
+
+        // when
+        cache.invalidate("key");
+        Cached<String> result = cache.get("key", this::load);
+
+        // then
+        assertEquals("value-2", result.value());
+        assertFalse(result.stale());
+    }
+
+    @Test
+    void get_shouldFallBackToInvalidatedValue_whenLoadFails() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ofMinutes(1));
+        cache.get("key", this::load);
+        cache.invalidate("key");
+
+        // when
+        Cached<String> result = cache.get("key", key -> {
+            throw new DataAccessResourceFailureException("connection refused");
+        });
+
+        // then
+        assertEquals("value-1", result.value());
+        assertTrue(result.stale());
+        verify(databaseHealthMonitor).recordFailure();
+        verify(databaseHealthMonitor).recordSuccess(anyLong());
+    }
+
+    @Test
+    void get_shouldCacheNewKey_whenCacheIsFull() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ofMinutes(1));
+        for (int i = 0; i < 100; i++) {
+            cache.get("key-" + i, this::load);
+        }
+
+        // when
+        cache.get("key", this::load);
+        Cached<String> result = cache.get("key", this::load);
+
+        // then
+        assertEquals("value-101", result.value());
+        assertFalse(result.stale());
+        assertEquals(101, loads.get());
+    }
+
+    @Test
+    void get_shouldCache_whenOtherKeyInvalidatedDuringLoad() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ofMinutes(1));
+
+        // when
+        cache.get("key", key -> {
+            cache.invalidate("other");
+            return load(key);
+        });
+        Cached<String> result = cache.get("key", this::load);
+
+        // then
+        assertEquals("value-1", result.value());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidateIf_shouldInvalidateMatchingKeysOnly() {
+        // given
+        StaleWhileRevalidateCache<String, String> cache = cache(Duration.ofMinutes(1));
+        cache.get("user-1:followers", this::load);
+        cache.get("user-2:followers", this::load);
+
+        // when
+        cache.invalidateIf(key -> key.startsWith("user-1:"));
+
+        // then
+        assertEquals("value-3", cache.get("user-1:followers", this::load).value());
+        assertEquals("value-2", cache.get("user-2:followers", this::load).value());
+    }
+
+    private StaleWhileRevalidateCache<String, String> cache(Duration freshTtl) {
+        // фоновое обновление выполняется сразу в вызывающем потоке
+        return new StaleWhileRevalidateCache<>("test", databaseHealthMonitor, Runnable::run,
+                freshTtl, Duration.ofMinutes(10), 100);
+    }
+
+    private String load(String key) {
+        return "value-" + loads.incrementAndGet();
+    }
+}
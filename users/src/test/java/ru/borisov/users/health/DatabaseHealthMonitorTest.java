@@ -0,0 +1,84 @@
+package ru.borisov.users.health;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+class DatabaseHealthMonitorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private DatabaseHealthMonitor databaseHealthMonitor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        databaseHealthMonitor = new DatabaseHealthMonitor(jdbcTemplate, new SimpleMeterRegistry(),
+                Duration.ofSeconds(1), 3, Duration.ofMillis(500));
+    }
+
+    @Test
+    void recordFailure_shouldMarkUnhealthy_afterThresholdReached() {
+        // when
+        databaseHealthMonitor.recordFailure();
+        databaseHealthMonitor.recordFailure();
+        boolean beforeThreshold = databaseHealthMonitor.isHealthy();
+        databaseHealthMonitor.recordFailure();
+
+        // then
+        assertTrue(beforeThreshold);
+        assertFalse(databaseHealthMonitor.isHealthy());
+    }
+
+    @Test
+    void recordSuccess_shouldRestoreHealth_afterFailures() {
+        // given
+        for (int i = 0; i < 3; i++) {
+            databaseHealthMonitor.recordFailure();
+        }
+
+        // when
+        databaseHealthMonitor.recordSuccess(TimeUnit.MILLISECONDS.toNanos(5));
+
+        // then
+        assertTrue(databaseHealthMonitor.isHealthy());
+    }
+
+    @Test
+    void recordSuccess_shouldMarkUnhealthy_whenLatencyStaysHigh() {
+        // when
+        for (int i = 0; i < 20; i++) {
+            databaseHealthMonitor.recordSuccess(TimeUnit.SECONDS.toNanos(2));
+        }
+
+        // then
+        assertFalse(databaseHealthMonitor.isHealthy());
+    }
+
+    @Test
+    void probe_shouldCountFailure_whenQueryFails() {
+        // given
+        when(jdbcTemplate.queryForObject("SELECT 1", Integer.class))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            databaseHealthMonitor.probe();
+        }
+
+        // then
+        assertFalse(databaseHealthMonitor.isHealthy());
+    }
+}
@@ -0,0 +1,115 @@
+package ru.borisov.users.job;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.borisov.users.model.Skill;
+import ru.borisov.users.repository.SkillRepository;
+import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.service.UserService;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class WarmUpRunnerTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private SkillRepository skillRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private Environment environment;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        when(dataSource.getConnection()).thenReturn(connection);
+    }
+
+    @Test
+    void run_shouldLoadSkillsAndTopProfiles_andReportCoverage() throws SQLException {
+        // given
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        when(skillRepository.findAll()).thenReturn(List.of(new Skill(), new Skill(), new Skill()));
+        when(userRepository.findMostFollowedIds(PageRequest.of(0, 10))).thenReturn(List.of(first, second));
+
+        WarmUpRunner runner = runner(true);
+
+        // when
+        runner.run(new DefaultApplicationArguments());
+
+        // then
+        verify(userService).getUserById(first);
+        verify(userService).getUserById(second);
+        verify(connection).close();
+        assertEquals(3, coverage("skills"));
+        assertEquals(2, coverage("profiles"));
+        // веб-сервер не запущен: синтетических запросов нет
+        assertEquals(0, coverage("requests"));
+        assertEquals(1, meterRegistry.get("users.warmup.duration").timer().count());
+    }
+
+    @Test
+    void run_shouldContinue_whenStepFails() {
+        // given
+        when(skillRepository.findAll()).thenThrow(new IllegalStateException("db is down"));
+        when(userRepository.findMostFollowedIds(PageRequest.of(0, 10))).thenReturn(List.of());
+        WarmUpRunner runner = runner(true);
+
+        // when
+        runner.run(new DefaultApplicationArguments());
+
+        // then
+        assertEquals(0, coverage("skills"));
+        assertEquals(1, meterRegistry.get("users.warmup.duration").timer().count());
+    }
+
+    @Test
+    void run_shouldDoNothing_whenDisabled() {
+        // when
+        runner(false).run(new DefaultApplicationArguments());
+
+        // then
+        verifyNoInteractions(dataSource, skillRepository, userRepository, userService);
+    }
+
+    private WarmUpRunner runner(boolean enabled) {
+        return new WarmUpRunner(dataSource, skillRepository, userRepository, userService,
+                Jackson2ObjectMapperBuilder.json().build(), environment, meterRegistry,
+                enabled, 10, Duration.ofSeconds(5), Duration.ofSeconds(1), 10, Duration.ofMillis(20), 3);
+    }
+
+    private double coverage(String item) {
+        return meterRegistry.get("users.warmup.coverage").tag("item", item).gauge().value();
+    }
+}
@@ -0,0 +1,92 @@
+package ru.borisov.users.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.repository.FollowerRepository;
+import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class FollowPageLoaderTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private FollowerRepository followerRepository;
+
+    @InjectMocks
+    private FollowPageLoader followPageLoader;
+
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        userId = UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9813");
+    }
+
+    @Test
+    void load_shouldReturnFollowers_whenTheyExist() {
+        // given
+        List<UserSummary> followers = List.of(new UserSummary(UUID.randomUUID(), "follower", null, null, null));
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(followerRepository.findFollowers(userId, PageRequest.of(0, 21))).thenReturn(followers);
+
+        // when
+        CursorPage<UserSummary> result = followPageLoader.load(new FollowPageKey(userId, true, 20, null));
+
+        // then
+        assertEquals(followers, result.items());
+        assertNull(result.nextCursor());
+    }
+
+    @Test
+    void load_shouldThrowNotFound_whenUserNotExist() {
+        // given
+        when(userRepository.existsById(userId)).thenReturn(false);
+
+        // then
+        CommonException exception = assertThrows(CommonException.class, () -> {
+            // when
+            followPageLoader.load(new FollowPageKey(userId, true, 20, null));
+        });
+        assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+        verifyNoInteractions(followerRepository);
+    }
+
+    @Test
+    void load_shouldReturnFollowingAfterCursor() {
+        // given
+        UUID after = UUID.randomUUID();
+        UserSummary first = new UserSummary(UUID.randomUUID(), "first", null, null, null);
+        UserSummary second = new UserSummary(UUID.randomUUID(), "second", null, null, null);
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(followerRepository.findFollowingAfter(userId, after, PageRequest.of(0, 2)))
+                .thenReturn(List.of(first, second));
+
+        // when
+        CursorPage<UserSummary> result = followPageLoader.load(
+                new FollowPageKey(userId, false, 1, CursorUtils.encode(after)));
+
+        // then
+        assertEquals(List.of(first), result.items());
+        assertEquals(first.id(), CursorUtils.decode(result.nextCursor()));
+    }
+}
@@ -6,17 +6,33 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import ru.borisov.users.cache.FollowGraphIndex;
+import ru.borisov.users.cache.FollowStateCache;
+import ru.borisov.users.controller.request.UserIdsRequest;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.FollowResult;
+import ru.borisov.users.controller.response.FollowStatus;
 import ru.borisov.users.exception.CommonException;
-import ru.borisov.users.model.Subscription;
-import ru.borisov.users.model.User;
 import ru.borisov.users.repository.FollowerRepository;
+import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
+import ru.borisov.users.util.ValidationUtils;
 
-import java.util.HashSet;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class FollowServiceImplTest {
@@ -25,13 +41,20 @@ class FollowServiceImplTest {
     private FollowerRepository followerRepository;
 
     @Mock
-    private UserService userService;
+    private UserRepository userRepository;
+
+    @Mock
+    private ValidationUtils validationUtils;
+
+    @Mock
+    private FollowStateCache followStateCache;
+
+    @Mock
+    private FollowGraphIndex followGraphIndex;
 
     @InjectMocks
     private FollowServiceImpl followService;
 
-    private User from;
-    private User to;
     private UUID userId;
     private UUID followingUserId;
 
@@ -40,84 +63,287 @@ class FollowServiceImplTest {
         MockitoAnnotations.openMocks(this);
         userId = UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9813");
         followingUserId = UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9814");
-
-        from = User.builder()
-                .id(userId)
-                .username("ascjke")
-                .email("ascjke@mail.ru")
-                .passwordHash("$2a$12$Vj44jG3s5x6x01XqmCN.B.6sxldIRFSsXzX1TA/8oY4FmU7FkjqaO")
-                .followers(new HashSet<>())
-                .following(new HashSet<>())
-                .build();
-
-        to = User.builder()
-                .id(followingUserId)
-                .username("test")
-                .email("test@mail.ru")
-                .passwordHash("$2a$12$Vj44jG3s5x6x01XqmCN.B.6sxldIRFSsXzX1TA/laskdljkashd8")
-                .followers(new HashSet<>())
-                .following(new HashSet<>())
-                .build();
     }
 
     @Test
     void follow_shouldSaveFollower_whenUsersAreNotFollowing() {
 
         // given
-        when(userService.getUserById(userId)).thenReturn(from);
-        when(userService.getUserById(followingUserId)).thenReturn(to);
-        when(followerRepository.findByFromAndTo(from, to)).thenReturn(Optional.empty());
+        when(followerRepository.insertSubscription(userId, followingUserId)).thenReturn(true);
 
         // when
         followService.follow(userId, followingUserId);
 
         // then
-        verify(followerRepository, Mockito.times(1)).save(any(Subscription.class));
+        verify(followerRepository, Mockito.times(1)).insertSubscription(userId, followingUserId);
+        verifyNoInteractions(userRepository);
     }
 
     @Test
-    void follow_shouldThrowException_whenUsersAreAlreadyFollowing() {
+    void follow_shouldThrowConflict_whenUsersAreAlreadyFollowing() {
 
         // given
-        when(userService.getUserById(userId)).thenReturn(from);
-        when(userService.getUserById(followingUserId)).thenReturn(to);
-        when(followerRepository.findByFromAndTo(from, to)).thenReturn(Optional.of(new Subscription()));
+        when(followerRepository.insertSubscription(userId, followingUserId)).thenReturn(false);
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(userRepository.existsById(followingUserId)).thenReturn(true);
 
         // then
-        assertThrows(CommonException.class, () -> {
+        CommonException exception = assertThrows(CommonException.class, () -> {
             // when
             followService.follow(userId, followingUserId);
         });
-        verify(followerRepository, never()).save(any(Subscription.class));
+        assertEquals(HttpStatus.CONFLICT, exception.getHttpStatus());
+    }
+
+    @Test
+    void follow_shouldThrowNotFound_whenUserViolatesForeignKey() {
+
+        // given
+        when(followerRepository.insertSubscription(userId, followingUserId))
+                .thenThrow(new DataIntegrityViolationException("fk violation"));
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(userRepository.existsById(followingUserId)).thenReturn(false);
+
+        // then
+        CommonException exception = assertThrows(CommonException.class, () -> {
+            // when
+            followService.follow(userId, followingUserId);
+        });
+        assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
     }
 
     @Test
     void unfollow_shouldDeleteFollower_whenFollowerExists() {
 
         // given
-        when(userService.getUserById(userId)).thenReturn(from);
-        when(userService.getUserById(followingUserId)).thenReturn(to);
-        when(followerRepository.findByFromAndTo(from, to)).thenReturn(Optional.of(new Subscription()));
+        when(followerRepository.deleteSubscription(userId, followingUserId)).thenReturn(true);
 
         // when
         followService.unfollow(userId, followingUserId);
 
         // then
-        verify(followerRepository, times(1)).delete(any(Subscription.class));
+        verify(followerRepository, times(1)).deleteSubscription(userId, followingUserId);
+        verifyNoInteractions(userRepository);
     }
 
     @Test
     void unfollow_shouldThrowException_whenFollowerDoesNotExist() {
         // given
-        when(userService.getUserById(userId)).thenReturn(from);
-        when(userService.getUserById(followingUserId)).thenReturn(to);
-        when(followerRepository.findByFromAndTo(from, to)).thenReturn(Optional.empty());
+        when(followerRepository.deleteSubscription(userId, followingUserId)).thenReturn(false);
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(userRepository.existsById(followingUserId)).thenReturn(true);
 
         // then
-        assertThrows(CommonException.class, () -> {
+        CommonException exception = assertThrows(CommonException.class, () -> {
+            // when
+            followService.unfollow(userId, followingUserId);
+        });
+        assertEquals(HttpStatus.CONFLICT, exception.getHttpStatus());
+    }
+
+    @Test
+    void unfollow_shouldThrowNotFound_whenUserNotExist() {
+        // given
+        when(followerRepository.deleteSubscription(userId, followingUserId)).thenReturn(false);
+        when(userRepository.existsById(userId)).thenReturn(false);
+
+        // then
+        CommonException exception = assertThrows(CommonException.class, () -> {
             // when
             followService.unfollow(userId, followingUserId);
         });
-        verify(followerRepository, never()).delete(any(Subscription.class));
+        assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+    }
+
+    @Test
+    void followAll_shouldReportStatusPerUser() {
+
+        // given
+        UUID alreadyFollowingId = UUID.randomUUID();
+        UUID missingId = UUID.randomUUID();
+        UserIdsRequest request = new UserIdsRequest(List.of(followingUserId, alreadyFollowingId, missingId));
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(userRepository.findExistingIds(Set.of(followingUserId, alreadyFollowingId, missingId)))
+                .thenReturn(Set.of(followingUserId, alreadyFollowingId));
+        when(followerRepository.insertSubscriptions(userId, Set.of(followingUserId, alreadyFollowingId)))
+                .thenReturn(List.of(followingUserId));
+
+        // when
+        List<FollowResult> result = followService.followAll(userId, request);
+
+        // then
+        assertEquals(List.of(
+                new FollowResult(followingUserId, FollowStatus.FOLLOWED),
+                new FollowResult(alreadyFollowingId, FollowStatus.ALREADY_FOLLOWING),
+                new FollowResult(missingId, FollowStatus.USER_NOT_FOUND)), result);
+    }
+
+    @Test
+    void followAll_shouldNotWrite_whenNoTargetExists() {
+
+        // given
+        UserIdsRequest request = new UserIdsRequest(List.of(followingUserId));
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(userRepository.findExistingIds(Set.of(followingUserId))).thenReturn(Set.of());
+
+        // when
+        List<FollowResult> result = followService.followAll(userId, request);
+
+        // then
+        assertEquals(List.of(new FollowResult(followingUserId, FollowStatus.USER_NOT_FOUND)), result);
+        verify(followerRepository, never()).insertSubscriptions(any(), any());
+    }
+
+    @Test
+    void followAll_shouldThrowException_whenCurrentUserNotExist() {
+
+        // given
+        when(userRepository.existsById(userId)).thenReturn(false);
+
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            followService.followAll(userId, new UserIdsRequest(List.of(followingUserId)));
+        });
+        verifyNoInteractions(followerRepository);
+    }
+
+    @Test
+    void unfollowAll_shouldReportStatusPerUser() {
+
+        // given
+        UUID notFollowingId = UUID.randomUUID();
+        UserIdsRequest request = new UserIdsRequest(List.of(followingUserId, notFollowingId));
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(userRepository.findExistingIds(Set.of(followingUserId, notFollowingId)))
+                .thenReturn(Set.of(followingUserId, notFollowingId));
+        when(followerRepository.deleteSubscriptions(userId, Set.of(followingUserId, notFollowingId)))
+                .thenReturn(List.of(followingUserId));
+
+        // when
+        List<FollowResult> result = followService.unfollowAll(userId, request);
+
+        // then
+        assertEquals(List.of(
+                new FollowResult(followingUserId, FollowStatus.UNFOLLOWED),
+                new FollowResult(notFollowingId, FollowStatus.NOT_FOLLOWING)), result);
+    }
+
+    @Test
+    void getFollowState_shouldLoadMissingStatesFromRepository() {
+
+        // given
+        UUID notFollowingId = UUID.randomUUID();
+        List<UUID> candidates = List.of(followingUserId, notFollowingId);
+        UserIdsRequest request = new UserIdsRequest(candidates);
+        when(followerRepository.findFollowedIds(userId, candidates)).thenReturn(Set.of(followingUserId));
+        when(followStateCache.getAll(eq(userId), eq(candidates), any())).thenAnswer(invocation -> {
+            Function<Collection<UUID>, Set<UUID>> loader = invocation.getArgument(2);
+            Set<UUID> followed = loader.apply(candidates);
+            return Map.of(followingUserId, followed.contains(followingUserId),
+                    notFollowingId, followed.contains(notFollowingId));
+        });
+
+        // when
+        Map<UUID, Boolean> result = followService.getFollowState(userId, request);
+
+        // then
+        assertEquals(Map.of(followingUserId, true, notFollowingId, false), result);
+        verify(followerRepository, times(1)).findFollowedIds(userId, candidates);
+    }
+
+    @Test
+    void follow_shouldEvictFollowState_whenFollowed() {
+
+        // given
+        when(followerRepository.insertSubscription(userId, followingUserId)).thenReturn(true);
+
+        // when
+        followService.follow(userId, followingUserId);
+
+        // then
+        verify(followStateCache, times(1)).evict(userId, List.of(followingUserId));
+    }
+
+    @Test
+    void follow_shouldUpdateFollowGraph_whenFollowed() {
+
+        // given
+        when(followerRepository.insertSubscription(userId, followingUserId)).thenReturn(true);
+
+        // when
+        followService.follow(userId, followingUserId);
+
+        // then
+        verify(followGraphIndex, times(1)).followed(userId, List.of(followingUserId));
+    }
+
+    @Test
+    void getFollowState_shouldAnswerFromFollowGraph_whenLoaded() {
+
+        // given
+        UUID notFollowingId = UUID.randomUUID();
+        UserIdsRequest request = new UserIdsRequest(List.of(followingUserId, notFollowingId));
+        when(followGraphIndex.isLoaded()).thenReturn(true);
+        when(followGraphIndex.follows(userId, followingUserId)).thenReturn(true);
+
+        // when
+        Map<UUID, Boolean> result = followService.getFollowState(userId, request);
+
+        // then
+        assertEquals(Map.of(followingUserId, true, notFollowingId, false), result);
+        verifyNoInteractions(followStateCache, followerRepository);
+    }
+
+    @Test
+    void getMutualFollows_shouldReturnPageWithCursor() {
+
+        // given
+        UUID secondId = UUID.randomUUID();
+        UserSummary first = new UserSummary(followingUserId, "first", null, null, null);
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(followGraphIndex.isLoaded()).thenReturn(true);
+        when(followGraphIndex.mutual(userId, null, 2)).thenReturn(List.of(followingUserId, secondId));
+        when(userRepository.findSummariesByIdIn(List.of(followingUserId))).thenReturn(List.of(first));
+
+        // when
+        CursorPage<UserSummary> result = followService.getMutualFollows(userId, 1, null);
+
+        // then
+        assertEquals(List.of(first), result.items());
+        assertEquals(CursorUtils.encode(followingUserId), result.nextCursor());
+    }
+
+    @Test
+    void getMutualFollows_shouldReadFromDatabase_whenGraphNotLoaded() {
+
+        // given
+        UserSummary first = new UserSummary(followingUserId, "first", null, null, null);
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(followGraphIndex.isLoaded()).thenReturn(false);
+        when(followerRepository.findMutualFollows(userId, CursorUtils.pageOf(1))).thenReturn(List.of(first));
+
+        // when
+        CursorPage<UserSummary> result = followService.getMutualFollows(userId, 1, null);
+
+        // then
+        assertEquals(List.of(first), result.items());
+        assertNull(result.nextCursor());
+        verify(followGraphIndex, never()).mutual(any(), any(), anyInt());
+    }
+
+    @Test
+    void getMutualFollows_shouldThrowNotFound_whenUserNotExist() {
+
+        // given
+        when(userRepository.existsById(userId)).thenReturn(false);
+
+        // then
+        CommonException exception = assertThrows(CommonException.class, () -> {
+            // when
+            followService.getMutualFollows(userId, 20, null);
+        });
+        assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+        verifyNoInteractions(followGraphIndex);
     }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package ru.borisov.users.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import ru.borisov.users.exception.CommonException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PasswordHasherTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private PasswordHasher passwordHasher;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (passwordHasher != null) {
+            passwordHasher.stop();
+        }
+    }
+
+    @Test
+    void hash_shouldReturnBcryptHash() {
+        // given
+        PasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        passwordHasher = new PasswordHasher(encoder, new SimpleMeterRegistry(), 2, 10, Duration.ofSeconds(5));
+
+        // when
+        String hash = passwordHasher.hash("secret");
+
+        // then
+        assertTrue(encoder.matches("secret", hash));
+    }
+
+    @Test
+    void hash_shouldFailFastWithServiceUnavailable_whenQueueIsFull() throws Exception {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        PasswordEncoder encoder = mock(PasswordEncoder.class);
+        when(encoder.encode(anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return "hash";
+        });
+        passwordHasher = new PasswordHasher(encoder, new SimpleMeterRegistry(), 1, 1, Duration.ofSeconds(5));
+        // один пароль хешируется, второй ждет в очереди
+        CompletableFuture.runAsync(() -> passwordHasher.hash("first"));
+        started.await(5, TimeUnit.SECONDS);
+        CompletableFuture.runAsync(() -> passwordHasher.hash("second"));
+        Thread.sleep(100);
+
+        // when
+        CommonException exception = assertThrows(CommonException.class, () -> passwordHasher.hash("third"));
+
+        // then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+    }
+
+    @Test
+    void hash_shouldFailWithServiceUnavailable_whenHashingTimesOut() {
+        // given
+        PasswordEncoder encoder = mock(PasswordEncoder.class);
+        when(encoder.encode(anyString())).thenAnswer(invocation -> {
+            release.await();
+            return "hash";
+        });
+        passwordHasher = new PasswordHasher(encoder, new SimpleMeterRegistry(), 1, 1, Duration.ofMillis(50));
+
+        // when
+        CommonException exception = assertThrows(CommonException.class, () -> passwordHasher.hash("slow"));
+
+        // then
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+    }
+}
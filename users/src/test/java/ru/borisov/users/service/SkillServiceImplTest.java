@@ -5,7 +5,13 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import ru.borisov.users.cache.SkillCatalogue;
+import ru.borisov.users.cache.SkillUserIndex;
+import ru.borisov.users.cache.UserEntityCache;
 import ru.borisov.users.controller.request.AddSkillRequest;
+import ru.borisov.users.controller.request.ReplaceSkillsRequest;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.SkillView;
 import ru.borisov.users.exception.CommonException;
 import ru.borisov.users.model.Gender;
 import ru.borisov.users.model.Skill;
@@ -13,11 +19,17 @@ import ru.borisov.users.model.SkillType;
 import ru.borisov.users.model.User;
 import ru.borisov.users.repository.SkillRepository;
 import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.repository.projection.SkillUpsert;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
 import ru.borisov.users.util.ValidationUtils;
 
 import java.time.LocalDate;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,6 +46,15 @@ class SkillServiceImplTest {
     @Mock
     private ValidationUtils validationUtils;
 
+    @Mock
+    private UserEntityCache userEntityCache;
+
+    @Mock
+    private SkillCatalogue skillCatalogue;
+
+    @Mock
+    private SkillUserIndex skillUserIndex;
+
     @InjectMocks
     private SkillServiceImpl skillService;
 
@@ -73,6 +94,7 @@ class SkillServiceImplTest {
                 .build();
 
         skill = Skill.builder()
+                .id(skillId)
                 .title("java17")
                 .skillType(SkillType.HARD_SKILL)
                 .build();
@@ -84,15 +106,18 @@ class SkillServiceImplTest {
         // given
         doNothing().when(validationUtils).validateRequest(addSkillRequest);
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(skillRepository.findByTitleIgnoreCase("java17")).thenReturn(Optional.of(skill));
+        when(skillRepository.upsertSkill("java17", SkillType.HARD_SKILL)).thenReturn(new SkillUpsert(skillId, "java17", SkillType.HARD_SKILL, false));
+        when(skillRepository.findById(skillId)).thenReturn(Optional.of(skill));
 
         // when
-        Skill result = skillService.addSkillToUser(addSkillRequest, userId);
+        SkillView result = skillService.addSkillToUser(addSkillRequest, userId);
 
         // then
-        assertTrue(user.getSkills().contains(result));
+        assertTrue(user.getSkills().contains(skill));
+        assertEquals(SkillView.from(skill), result);
         verify(userRepository, times(1)).save(user);
-        verify(skillRepository, times(0)).save(result);
+        verify(skillRepository, never()).save(any(Skill.class));
+        verify(skillCatalogue, never()).added(any());
     }
 
     @Test
@@ -101,16 +126,63 @@ class SkillServiceImplTest {
         // given
         doNothing().when(validationUtils).validateRequest(addSkillRequest);
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(skillRepository.findByTitleIgnoreCase("java17")).thenReturn(Optional.empty());
-        when(skillRepository.save(skill)).thenReturn(skill);
+        when(skillRepository.upsertSkill("java17", SkillType.HARD_SKILL)).thenReturn(new SkillUpsert(skillId, "java17", SkillType.HARD_SKILL, true));
+        when(skillRepository.findById(skillId)).thenReturn(Optional.of(skill));
 
         // when
-        Skill result = skillService.addSkillToUser(addSkillRequest, userId);
+        SkillView result = skillService.addSkillToUser(addSkillRequest, userId);
 
         // then
-        assertTrue(user.getSkills().contains(result));
+        assertTrue(user.getSkills().contains(skill));
+        assertEquals(SkillView.from(skill), result);
         verify(userRepository, times(1)).save(user);
-        verify(skillRepository, times(1)).save(skill);
+        verify(skillRepository, times(1)).upsertSkill("java17", SkillType.HARD_SKILL);
+        verify(skillUserIndex, times(1)).changed(userId, List.of(skillId), List.of());
+        verify(skillCatalogue, times(1)).added(SkillView.from(skill));
+    }
+
+    @Test
+    void addSkillToUser_shouldResolveSkillFromCatalogue_whenCatalogueKnowsTitle() {
+
+        // given
+        doNothing().when(validationUtils).validateRequest(addSkillRequest);
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(skillCatalogue.findByTitle("java17")).thenReturn(Optional.of(SkillView.from(skill)));
+        when(skillRepository.findById(skillId)).thenReturn(Optional.of(skill));
+
+        // when
+        SkillView result = skillService.addSkillToUser(addSkillRequest, userId);
+
+        // then
+        assertTrue(user.getSkills().contains(skill));
+        assertEquals(SkillView.from(skill), result);
+        verify(skillRepository, never()).upsertSkill(anyString(), any());
+        verify(skillCatalogue, never()).added(any());
+    }
+
+    @Test
+    void findSkillsByPrefix_shouldReturnCatalogueMatches() {
+
+        // given
+        List<SkillView> skills = List.of(SkillView.from(skill));
+        when(skillCatalogue.findByPrefix("ja", 20)).thenReturn(skills);
+
+        // when
+        List<SkillView> result = skillService.findSkillsByPrefix("ja", 20);
+
+        // then
+        assertEquals(skills, result);
+    }
+
+    @Test
+    void findSkillsByPrefix_shouldThrowException_whenLimitOutOfRange() {
+
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            skillService.findSkillsByPrefix("ja", 0);
+        });
+        verifyNoInteractions(skillCatalogue);
     }
 
     @Test
@@ -127,6 +199,7 @@ class SkillServiceImplTest {
         // then
         assertFalse(user.getSkills().contains(skill));
         verify(userRepository, times(1)).save(user);
+        verify(skillUserIndex, times(1)).changed(userId, List.of(), List.of(skillId));
     }
 
     @Test
@@ -142,4 +215,123 @@ class SkillServiceImplTest {
             skillService.removeSkillFromUser(userId, skillId);
         });
     }
+
+    @Test
+    void replaceUserSkills_shouldApplyOnlyDiff() {
+
+        // given
+        UUID kept = UUID.randomUUID();
+        UUID stale = UUID.randomUUID();
+        UUID created = UUID.randomUUID();
+        ReplaceSkillsRequest request = ReplaceSkillsRequest.builder()
+                .skills(List.of(
+                        new AddSkillRequest("Java17", SkillType.HARD_SKILL),
+                        new AddSkillRequest(" java17 ", SkillType.SOFT_SKILL),
+                        new AddSkillRequest("Kotlin ", SkillType.HARD_SKILL)))
+                .build();
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(skillCatalogue.findByTitle("java17"))
+                .thenReturn(Optional.of(new SkillView(kept, "java17", SkillType.HARD_SKILL)));
+        when(skillRepository.upsertSkills(Map.of("kotlin", SkillType.HARD_SKILL)))
+                .thenReturn(List.of(new SkillUpsert(created, "kotlin", SkillType.HARD_SKILL, true)));
+        when(skillRepository.findUserSkillIds(userId)).thenReturn(Set.of(kept, stale));
+
+        // when
+        List<SkillView> result = skillService.replaceUserSkills(request, userId);
+
+        // then
+        assertEquals(List.of(
+                new SkillView(kept, "java17", SkillType.HARD_SKILL),
+                new SkillView(created, "kotlin", SkillType.HARD_SKILL)), result);
+        verify(skillRepository).insertUserSkills(userId, List.of(created));
+        verify(skillRepository).deleteUserSkills(userId, List.of(stale));
+        verify(skillCatalogue).added(new SkillView(created, "kotlin", SkillType.HARD_SKILL));
+        verify(userEntityCache).evict(List.of(userId));
+        verify(skillUserIndex).changed(userId, List.of(created), List.of(stale));
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void replaceUserSkills_shouldNotEvictProfile_whenSkillsUnchanged() {
+
+        // given
+        ReplaceSkillsRequest request = ReplaceSkillsRequest.builder()
+                .skills(List.of(new AddSkillRequest("java17", SkillType.HARD_SKILL)))
+                .build();
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(skillCatalogue.findByTitle("java17"))
+                .thenReturn(Optional.of(new SkillView(skillId, "java17", SkillType.HARD_SKILL)));
+        when(skillRepository.findUserSkillIds(userId)).thenReturn(Set.of(skillId));
+
+        // when
+        skillService.replaceUserSkills(request, userId);
+
+        // then
+        verify(skillRepository).insertUserSkills(userId, List.of());
+        verify(skillRepository).deleteUserSkills(userId, List.of());
+        verifyNoInteractions(userEntityCache);
+    }
+
+    @Test
+    void replaceUserSkills_shouldThrowException_whenUserNotExist() {
+
+        // given
+        ReplaceSkillsRequest request = ReplaceSkillsRequest.builder()
+                .skills(List.of())
+                .build();
+        when(userRepository.existsById(userId)).thenReturn(false);
+
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            skillService.replaceUserSkills(request, userId);
+        });
+        verify(skillRepository, never()).findUserSkillIds(any());
+    }
+
+    @Test
+    void findUsersBySkills_shouldReturnPageInIndexOrder_andCursor_whenMoreMatches() {
+
+        // given
+        UUID java = UUID.randomUUID();
+        UUID php = UUID.randomUUID();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        when(skillCatalogue.findByTitle("java")).thenReturn(Optional.of(new SkillView(java, "java", SkillType.HARD_SKILL)));
+        when(skillCatalogue.findByTitle("php")).thenReturn(Optional.of(new SkillView(php, "php", SkillType.HARD_SKILL)));
+        when(skillUserIndex.search(List.of(java), List.of(php), null, 2))
+                .thenReturn(List.of(first, second));
+        when(userRepository.findSummariesByIdIn(List.of(first))).thenReturn(List.of(
+                new UserSummary(first, "first", null, null, null)));
+
+        // when
+        CursorPage<UserSummary> result = skillService.findUsersBySkills(List.of("java"), List.of("php", "cobol"), 1, null);
+
+        // then
+        assertEquals(List.of(new UserSummary(first, "first", null, null, null)), result.items());
+        assertEquals(CursorUtils.encode(first), result.nextCursor());
+    }
+
+    @Test
+    void findUsersBySkills_shouldReturnEmptyPage_whenRequiredSkillUnknown() {
+
+        // when
+        CursorPage<UserSummary> result = skillService.findUsersBySkills(List.of("cobol"), null, 20, null);
+
+        // then
+        assertTrue(result.items().isEmpty());
+        assertNull(result.nextCursor());
+        verifyNoInteractions(skillUserIndex);
+    }
+
+    @Test
+    void findUsersBySkills_shouldThrowException_whenNoRequiredSkills() {
+
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            skillService.findUsersBySkills(List.of(), List.of("php"), 20, null);
+        });
+        verifyNoInteractions(skillUserIndex);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package ru.borisov.users.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.exception.CommonException;
+import ru.borisov.users.model.User;
+import ru.borisov.users.repository.UserRepository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+class UserProfileLoaderTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private UserProfileLoader userProfileLoader;
+
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        userId = UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9813");
+    }
+
+    @Test
+    void load_shouldReturnProfile_whenUserExists() {
+        // given
+        User user = User.builder()
+                .id(userId)
+                .username("ascjke")
+                .email("ascjke@mail.ru")
+                .build();
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+
+        // when
+        UserProfile result = userProfileLoader.load(userId);
+
+        // then
+        assertEquals(UserProfile.from(user), result);
+    }
+
+    @Test
+    void load_shouldThrowNotFound_whenUserNotExist() {
+        // given
+        when(userRepository.findById(userId)).thenReturn(Optional.empty());
+
+        // then
+        CommonException exception = assertThrows(CommonException.class, () -> {
+            // when
+            userProfileLoader.load(userId);
+        });
+        assertEquals(HttpStatus.NOT_FOUND, exception.getHttpStatus());
+    }
+}
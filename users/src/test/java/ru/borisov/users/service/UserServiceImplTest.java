@@ -1,5 +1,6 @@
 package ru.borisov.users.service;
 
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,23 +8,48 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import ru.borisov.users.cache.Cached;
+import ru.borisov.users.cache.DirectoryFacetCounter;
+import ru.borisov.users.cache.HotProfileCache;
+import ru.borisov.users.cache.FollowGraphIndex;
+import ru.borisov.users.cache.SkillUserIndex;
+import ru.borisov.users.cache.StaleWhileRevalidateCache;
+import ru.borisov.users.cache.UserEntityCache;
+import ru.borisov.users.cache.UsernameBloomFilter;
 import ru.borisov.users.controller.request.RegisterUserRequest;
 import ru.borisov.users.controller.request.UpdateUserInfoRequest;
+import ru.borisov.users.controller.request.UserIdsRequest;
 import ru.borisov.users.controller.response.ApiResponse;
+import ru.borisov.users.controller.response.CursorPage;
+import ru.borisov.users.controller.response.DirectoryFacets;
+import ru.borisov.users.controller.response.UserDirectoryPage;
+import ru.borisov.users.controller.response.UserProfile;
+import ru.borisov.users.controller.response.UsernameAvailability;
+import ru.borisov.users.controller.response.UsersByIdsResponse;
 import ru.borisov.users.exception.CommonException;
-import ru.borisov.users.model.Subscription;
+import ru.borisov.users.exception.error.Code;
+import ru.borisov.users.model.AgeBucket;
 import ru.borisov.users.model.Gender;
 import ru.borisov.users.model.User;
+import ru.borisov.users.repository.FollowerRepository;
 import ru.borisov.users.repository.SkillRepository;
 import ru.borisov.users.repository.UserRepository;
+import ru.borisov.users.repository.projection.UserSearchHit;
+import ru.borisov.users.repository.projection.UserSummary;
+import ru.borisov.users.util.CursorUtils;
 import ru.borisov.users.util.ValidationUtils;
 
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 class UserServiceImplTest {
@@ -34,11 +60,44 @@ class UserServiceImplTest {
     @Mock
     private SkillRepository skillRepository;
 
+    @Mock
+    private FollowerRepository followerRepository;
+
     @Mock
     private ValidationUtils validationUtils;
 
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private PasswordHasher passwordHasher;
+
+    @Mock
+    private UsernameBloomFilter usernameBloomFilter;
+
+    @Mock
+    private UserEntityCache userEntityCache;
+
+    @Mock
+    private SkillUserIndex skillUserIndex;
+
+    @Mock
+    private FollowGraphIndex followGraphIndex;
+
+    @Mock
+    private DirectoryFacetCounter directoryFacetCounter;
+
+    @Mock
+    private HotProfileCache hotProfileCache;
+
+    @Mock
+    private UserProfileLoader userProfileLoader;
+
+    @Mock
+    private FollowPageLoader followPageLoader;
+
+    @Mock
+    private StaleWhileRevalidateCache<UUID, UserProfile> profileStaleCache;
+
+    @Mock
+    private StaleWhileRevalidateCache<FollowPageKey, CursorPage<UserSummary>> followPageStaleCache;
 
     @InjectMocks
     private UserServiceImpl userService;
@@ -50,6 +109,10 @@ class UserServiceImplTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        // кэши устаревших значений в этих тестах всегда идут в загрузчик
+        loadThrough(profileStaleCache);
+        loadThrough(followPageStaleCache);
+        when(usernameBloomFilter.mightBeTaken(any())).thenReturn(true);
         savedUserId = UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9813");
         user = User.builder()
                 .username("ascjke")
@@ -97,13 +160,122 @@ class UserServiceImplTest {
                 .build();
 
         doNothing().when(validationUtils).validateRequest(registerUserRequest);
-        when(userRepository.save(user)).thenReturn(savedUser);
+        when(userRepository.saveAndFlush(user)).thenReturn(savedUser);
 
         //when
-        User result = userService.registerUser(registerUserRequest);
+        UserProfile result = userService.registerUser(registerUserRequest);
 
         //then
-        assertEquals(savedUser, result);
+        assertEquals(UserProfile.from(savedUser), result);
+        verify(usernameBloomFilter).markTaken("ascjke");
+    }
+
+    @Test
+    void createUser_shouldSkipExistsQuery_whenUsernameFilterIsNegative() {
+        // given
+        RegisterUserRequest registerUserRequest = RegisterUserRequest.builder()
+                .username("ascjke")
+                .email("ascjke@mail.ru")
+                .password("password")
+                .build();
+        when(usernameBloomFilter.mightBeTaken("ascjke")).thenReturn(false);
+        when(userRepository.saveAndFlush(any(User.class))).thenReturn(savedUser);
+
+        // when
+        userService.registerUser(registerUserRequest);
+
+        // then
+        verify(userRepository, never()).existsByUsername(any());
+    }
+
+    @Test
+    void createUser_shouldThrowLoginBusy_whenUniqueIndexIsViolated() {
+        // given
+        RegisterUserRequest registerUserRequest = RegisterUserRequest.builder()
+                .username("ascjke")
+                .email("ascjke@mail.ru")
+                .password("password")
+                .build();
+        when(usernameBloomFilter.mightBeTaken("ascjke")).thenReturn(false);
+        when(userRepository.saveAndFlush(any(User.class))).thenThrow(uniqueViolation("idx_unique_user_username"));
+
+        // when
+        CommonException exception = assertThrows(CommonException.class,
+                () -> userService.registerUser(registerUserRequest));
+
+        // then
+        assertEquals(Code.LOGIN_BUSY, exception.getCode());
+        verify(usernameBloomFilter).markTaken("ascjke");
+    }
+
+    @Test
+    void createUser_shouldRethrow_whenOtherConstraintIsViolated() {
+        // given
+        RegisterUserRequest registerUserRequest = RegisterUserRequest.builder()
+                .username("ascjke")
+                .email("ascjke@mail.ru")
+                .password("password")
+                .build();
+        when(usernameBloomFilter.mightBeTaken("ascjke")).thenReturn(false);
+        when(userRepository.saveAndFlush(any(User.class))).thenThrow(uniqueViolation("_user_email_key"));
+
+        // then
+        assertThrows(DataIntegrityViolationException.class, () -> {
+            // when
+            userService.registerUser(registerUserRequest);
+        });
+        verify(usernameBloomFilter, never()).markTaken(any());
+    }
+
+    @Test
+    void checkUsernameAvailability_shouldNotQueryDatabase_whenUsernameFilterIsNegative() {
+        // given
+        when(usernameBloomFilter.mightBeTaken("free")).thenReturn(false);
+
+        // when
+        UsernameAvailability result = userService.checkUsernameAvailability("free");
+
+        // then
+        Assertions.assertTrue(result.available());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void checkUsernameAvailability_shouldQueryDatabase_whenUsernameMightBeTaken() {
+        // given
+        when(userRepository.existsByUsername("ascjke")).thenReturn(true);
+
+        // when
+        UsernameAvailability result = userService.checkUsernameAvailability("ascjke");
+
+        // then
+        Assertions.assertFalse(result.available());
+    }
+
+    @Test
+    void getUserByUsername_shouldThrowNotFoundWithoutDatabase_whenUsernameFilterIsNegative() {
+        // given
+        when(usernameBloomFilter.mightBeTaken("ghost")).thenReturn(false);
+
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            userService.getUserByUsername("ghost");
+        });
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void getUserByUsername_shouldReturnProfile_whenUserExists() {
+        // given
+        when(userRepository.findIdByUsername("ascjke")).thenReturn(Optional.of(savedUserId));
+        when(hotProfileCache.get(eq(savedUserId), any())).thenReturn(UserProfile.from(savedUser));
+
+        // when
+        Cached<UserProfile> result = userService.getUserByUsername("ascjke");
+
+        // then
+        assertEquals(UserProfile.from(savedUser), result.value());
     }
 
     @Test
@@ -123,6 +295,7 @@ class UserServiceImplTest {
             // when
             userService.registerUser(registerUserRequest);
         });
+        verifyNoInteractions(passwordHasher);
     }
 
     @Test
@@ -157,14 +330,18 @@ class UserServiceImplTest {
                 .build();
 
         when(userRepository.findById(savedUserId)).thenReturn(Optional.of(savedUser));
-        when(userRepository.save(updatedUser)).thenReturn(updatedUser);
+        when(userRepository.saveAndFlush(updatedUser)).thenReturn(updatedUser);
 
         // when
-        User result = userService.updateUserInfo(updateUserInfoRequest, savedUserId);
+        UserProfile result = userService.updateUserInfo(updateUserInfoRequest, savedUserId);
 
         // then
-        verify(userRepository, times(1)).save(updatedUser);
-        assertEquals(updatedUser, result);
+        verify(userRepository, times(1)).saveAndFlush(updatedUser);
+        verify(userEntityCache, times(1)).invalidateProfile(savedUserId);
+        verify(directoryFacetCounter, times(1)).moved(
+                DirectoryFacetCounter.cellOf("Якутск", Gender.MALE, LocalDate.of(1990, 6, 23)),
+                DirectoryFacetCounter.cellOf("Москва", Gender.MALE, LocalDate.of(1990, 6, 23)));
+        assertEquals(UserProfile.from(updatedUser), result);
     }
 
     @Test
@@ -186,29 +363,35 @@ class UserServiceImplTest {
         when(userRepository.findById(savedUserId)).thenReturn(Optional.of(savedUser));
 
         // when
-        User result = userService.updateUserInfo(updateUserInfoRequest, savedUserId);
+        UserProfile result = userService.updateUserInfo(updateUserInfoRequest, savedUserId);
 
         // then
         verify(userRepository, Mockito.times(0)).save(any(User.class));
-        assertEquals(savedUser, result);
+        verify(userRepository, Mockito.times(0)).saveAndFlush(any(User.class));
+        assertEquals(UserProfile.from(savedUser), result);
     }
 
     @Test
     void getUserById_shouldReturnUser_whenUserExists() {
         // given
-        when(userRepository.findById(savedUserId)).thenReturn(Optional.of(savedUser));
+        when(hotProfileCache.get(eq(savedUserId), any())).thenAnswer(invocation -> {
+            Function<UUID, UserProfile> loader = invocation.getArgument(1);
+            return loader.apply(savedUserId);
+        });
+        when(userProfileLoader.load(savedUserId)).thenReturn(UserProfile.from(savedUser));
 
         // when
-        User result = userService.getUserById(savedUserId);
+        Cached<UserProfile> result = userService.getUserById(savedUserId);
 
         // then
-        assertEquals(savedUser, result);
+        assertEquals(UserProfile.from(savedUser), result.value());
+        Assertions.assertFalse(result.stale());
     }
 
     @Test
     void getUserById_shouldThrowException_whenUserNotExist() {
         // given
-        when(userRepository.findById(savedUserId)).thenReturn(Optional.empty());
+        when(hotProfileCache.get(eq(savedUserId), any())).thenThrow(CommonException.class);
 
         // then
         assertThrows(CommonException.class, () -> {
@@ -218,16 +401,57 @@ class UserServiceImplTest {
     }
 
     @Test
-    void getAllUsers_shouldReturnListOfUsers() {
+    void getUsers_shouldReturnLastPageWithoutCursor_whenNoMoreUsers() {
+        // given
+        List<UserSummary> rows = List.of(toSummary(savedUser));
+        when(userRepository.findSummaries(PageRequest.of(0, 3))).thenReturn(rows);
+
+        // when
+        CursorPage<UserSummary> result = userService.getUsers(2, null);
+
+        // then
+        assertEquals(rows, result.items());
+        assertNull(result.nextCursor());
+    }
+
+    @Test
+    void getUsers_shouldReturnNextCursor_whenMoreUsersExist() {
         // given
-        List<User> users = List.of(savedUser);
-        when(userRepository.findAll()).thenReturn(users);
+        UserSummary first = toSummary(savedUser);
+        UserSummary second = new UserSummary(UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9814"),
+                "second", null, null, null);
+        UserSummary third = new UserSummary(UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9815"),
+                "third", null, null, null);
+        String after = CursorUtils.encode(savedUserId);
+        when(userRepository.findSummariesAfter(savedUserId, PageRequest.of(0, 3)))
+                .thenReturn(List.of(first, second, third));
 
         // when
-        List<User> result = userService.getAllUsers();
+        CursorPage<UserSummary> result = userService.getUsers(2, after);
+
+        // then
+        assertEquals(List.of(first, second), result.items());
+        assertEquals(second.id(), CursorUtils.decode(result.nextCursor()));
+    }
+
+    @Test
+    void getUsers_shouldThrowException_whenLimitOutOfRange() {
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            userService.getUsers(CursorUtils.MAX_LIMIT + 1, null);
+        });
+        verifyNoInteractions(userRepository);
+    }
 
+    @Test
+    void getUsers_shouldThrowException_whenCursorIsMalformed() {
         // then
-        assertEquals(users, result);
+        assertThrows(CommonException.class, () -> {
+            // when
+            userService.getUsers(10, "not-a-cursor");
+        });
+        verifyNoInteractions(userRepository);
     }
 
     @Test
@@ -243,39 +467,155 @@ class UserServiceImplTest {
         Assertions.assertTrue(response.success());
         assertEquals("Пользователь " + savedUser.getUsername() + " успешно удален!", response.message());
         verify(userRepository, Mockito.times(1)).delete(savedUser);
+        verify(followerRepository, Mockito.times(1)).detachDeletedUser(savedUserId);
+        verify(skillUserIndex, Mockito.times(1)).userRemoved(savedUserId);
+        verify(followGraphIndex, Mockito.times(1)).userRemoved(savedUserId);
     }
 
     @Test
-    void getUserFollowers_shouldReturnFollowers_whenTheyExist() {
+    void getUserFollowers_shouldLoadPageThroughStaleCache() {
         // given
-        savedUser.getFollowers().add(Subscription.builder()
-                .from(user)
-                .to(savedUser)
-                .build());
+        CursorPage<UserSummary> page = new CursorPage<>(
+                List.of(new UserSummary(UUID.randomUUID(), "follower", null, null, null)), null);
+        when(followPageLoader.load(new FollowPageKey(savedUserId, true, 20, null))).thenReturn(page);
 
-        when(userRepository.findById(savedUserId)).thenReturn(Optional.of(savedUser));
+        // when
+        CursorPage<UserSummary> result = userService.getUserFollowers(savedUserId, 20, null).value();
+
+        // then
+        assertEquals(page, result);
+    }
+
+    @Test
+    void getUserFollowing_shouldRejectBadCursor_beforeLoading() {
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            userService.getUserFollowing(savedUserId, 20, "!");
+        });
+        verifyNoInteractions(followPageLoader);
+    }
+
+    private static <K, V> void loadThrough(StaleWhileRevalidateCache<K, V> cache) {
+        when(cache.get(any(), any())).thenAnswer(invocation -> {
+            Function<K, V> loader = invocation.getArgument(1);
+            return Cached.fresh(loader.apply(invocation.getArgument(0)));
+        });
+    }
+
+    private UserSummary toSummary(User user) {
+        return new UserSummary(user.getId(), user.getUsername(), user.getFirstName(),
+                user.getLastName(), user.getProfileImage());
+    }
+
+    @Test
+    void getUsersByIds_shouldPreserveOrderAndReportMissingIds() {
+        // given
+        User other = User.builder()
+                .id(UUID.randomUUID())
+                .username("other")
+                .email("other@mail.ru")
+                .build();
+        UUID missingId = UUID.randomUUID();
+        UserIdsRequest request = new UserIdsRequest(List.of(savedUserId, missingId, other.getId()));
+        when(userRepository.findAllWithSkillsByIdIn(new LinkedHashSet<>(request.getUserIds())))
+                .thenReturn(List.of(other, savedUser));
 
         // when
-        Set<User> result = userService.getUserFollowers(savedUserId);
+        UsersByIdsResponse response = userService.getUsersByIds(request);
 
         // then
-        assertEquals(Set.of(user), result);
+        assertEquals(List.of(UserProfile.from(savedUser), UserProfile.from(other)), response.users());
+        assertEquals(List.of(missingId), response.missingIds());
+        verify(userRepository, never()).findById(any());
     }
 
     @Test
-    void getUserFollowing_shouldReturnFollowing_whenTheyExist() {
+    void searchDirectory_shouldReturnPageWithFacets() {
         // given
-        savedUser.getFollowing().add(Subscription.builder()
-                .from(savedUser)
-                .to(user)
-                .build());
+        UserSummary first = toSummary(savedUser);
+        UserSummary second = new UserSummary(UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9814"),
+                "second", null, null, null);
+        DirectoryFacets facets = new DirectoryFacets(Map.of("Якутск", 2L), Map.of(Gender.MALE, 2L),
+                Map.of(AgeBucket.FROM_25_TO_34, 2L));
+        when(userRepository.findDirectoryPage(eq("Якутск"), eq(Gender.MALE), eq(AgeBucket.FROM_25_TO_34),
+                any(LocalDate.class), eq(null), eq(PageRequest.of(0, 2))))
+                .thenReturn(List.of(first, second));
+        when(directoryFacetCounter.facets("Якутск", Gender.MALE, AgeBucket.FROM_25_TO_34)).thenReturn(facets);
 
-        when(userRepository.findById(savedUserId)).thenReturn(Optional.of(savedUser));
+        // when
+        UserDirectoryPage result = userService.searchDirectory("Якутск", Gender.MALE, AgeBucket.FROM_25_TO_34, 1, null);
+
+        // then
+        assertEquals(List.of(first), result.items());
+        assertEquals(CursorUtils.encode(first.id()), result.nextCursor());
+        assertEquals(facets, result.facets());
+    }
+
+    @Test
+    void searchDirectory_shouldThrowException_whenLimitOutOfRange() {
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            userService.searchDirectory(null, null, null, 0, null);
+        });
+        verifyNoInteractions(directoryFacetCounter);
+    }
+
+    @Test
+    void searchUsers_shouldReturnSlimPageWithRankedCursor() {
+        // given
+        UserSearchHit first = new UserSearchHit(savedUser.getId(), savedUser.getUsername(), null, null, null, 0.6f);
+        UserSearchHit second = new UserSearchHit(UUID.fromString("4d5d6017-980a-45e1-be03-9df962af9814"),
+                "second", null, null, null, 0.3f);
+        when(userRepository.searchByText("иван петров", null, PageRequest.of(0, 2)))
+                .thenReturn(List.of(first, second));
+
+        // when
+        CursorPage<UserSummary> result = userService.searchUsers("  иван петров ", 1, null);
+
+        // then
+        assertEquals(List.of(first.toSummary()), result.items());
+        assertEquals(new CursorUtils.RankedKey(0.6f, first.id()), CursorUtils.decodeRanked(result.nextCursor()));
+    }
+
+    @Test
+    void searchUsers_shouldThrowException_whenQueryIsBlank() {
+        // then
+        assertThrows(CommonException.class, () -> {
+            // when
+            userService.searchUsers(" ", 20, null);
+        });
+        verify(userRepository, never()).searchByText(any(), any(), any());
+    }
+
+    @Test
+    void suggestUsers_shouldSearchByStrippedQuery() {
+        // given
+        UserSummary summary = toSummary(savedUser);
+        when(userRepository.findByUsernameSimilarTo("bor", 10)).thenReturn(List.of(summary));
 
         // when
-        Set<User> result = userService.getUserFollowing(savedUserId);
+        List<UserSummary> result = userService.suggestUsers(" bor ", 10);
+
+        // then
+        assertEquals(List.of(summary), result);
+    }
 
+    @Test
+    void suggestUsers_shouldThrowException_whenQueryIsTooShort() {
         // then
-        assertEquals(Set.of(user), result);
+        assertThrows(CommonException.class, () -> {
+            // when
+            userService.suggestUsers("bo", 10);
+        });
+        verify(userRepository, never()).findByUsernameSimilarTo(any(), anyInt());
+    }
+
+    // так Spring оборачивает нарушение ограничения, которое Hibernate разобрал из ответа Postgres
+    private static DataIntegrityViolationException uniqueViolation(String constraintName) {
+        String message = "duplicate key value violates unique constraint \"" + constraintName + "\"";
+        return new DataIntegrityViolationException(message,
+                new ConstraintViolationException(message, new SQLException(message, "23505"), constraintName));
     }
-}
\ No newline at end of file
+}